@@ -0,0 +1,92 @@
+package bench;
+
+import server.RoundAnalytics;
+import server.RoundJournal;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * AnalyticsLoadTest - Journals many matches in two runs, then checks RoundAnalytics both ways
+ *
+ * The first half of the matches is journaled, analysed and checkpointed; the second half is
+ * journaled by a new RoundJournal (a server restart) and added from the checkpoint. A fresh
+ * scan of the whole journal on every core must give the same report, with every match
+ * counted at its length. Exits with status 1 on any difference.
+ *
+ * Usage: java -cp bench/target/benchmarks.jar bench.AnalyticsLoadTest [matches] [rounds per match]
+ */
+public class AnalyticsLoadTest {
+    private static final int PLAYERS = 100_000;
+    private static final int SEGMENT_BYTES = 64 << 20;
+
+    public static void main(String[] args) throws Exception {
+        int matches = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Path directory = Files.createTempDirectory("round-journal");
+        Path checkpoint = directory.resolve("analytics.ckpt");
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        SplittableRandom random = new SplittableRandom(42);
+        boolean ok;
+        try {
+            journal(directory, 1, matches / 2, rounds, random);
+            RoundAnalytics incremental = RoundAnalytics.load(checkpoint);
+            incremental.update(directory, pool);
+            incremental.save(checkpoint);
+
+            journal(directory, matches / 2 + 1, matches, rounds, random);
+            incremental = RoundAnalytics.load(checkpoint);
+            incremental.update(directory, pool);
+
+            long start = System.nanoTime();
+            RoundAnalytics fresh = new RoundAnalytics();
+            long read = fresh.update(directory, pool);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            String report = fresh.report(10);
+            ok = report.equals(incremental.report(10)) && read == (long) matches * rounds
+                && fresh.getLength(rounds, RoundAnalytics.MATCHES) == matches && fresh.getOpenMatches() == 0;
+            System.out.printf("scanned %d rounds in %.2fs (%.0f rounds/sec) on %d threads; "
+                    + "resumed from checkpoint: %s%n",
+                read, seconds, read / seconds, pool.getParallelism(), ok ? "OK" : "FAILED");
+            if (!ok) {
+                System.out.println(report);
+                System.out.println(incremental.report(10));
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Journal matches first..last, one after the other, each ending after its rounds
+     */
+    private static void journal(Path directory, int first, int last, int rounds, SplittableRandom random)
+            throws Exception {
+        try (RoundJournal journal = new RoundJournal(directory, SEGMENT_BYTES, 1 << 16, 5)) {
+            for (int match = first; match <= last; match++) {
+                String name1 = "player-" + random.nextInt(PLAYERS);
+                String name2 = "player-" + random.nextInt(PLAYERS);
+                long player1 = RoundJournal.playerId(name1);
+                long player2 = RoundJournal.playerId(name2);
+                for (int round = 0; round < rounds; round++) {
+                    while (!journal.append(match, round, player1, name1, player2, name2,
+                            random.nextInt(3), random.nextInt(3), random.nextInt(3), 0, 0, 0)) {
+                        Thread.yield();  // writer is behind
+                    }
+                }
+                while (!journal.matchEnded(match, rounds, player1, name1, player2, name2)) {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package bench;
+
+import game.GameResult;
+import game.GameVariant;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BatchResolveBenchmark - Resolving many rounds at once with GameVariant
+ *
+ * perRound:   one GameVariant.resolve() call per round, returning GameResult objects
+ * resolveAll: the whole batch into a byte[] of result codes
+ * tally:      the whole batch straight into win/loss/draw counts
+ *
+ * Scores are per round.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchResolveBenchmark {
+    private static final int ROUNDS = 4096;
+
+    @Param({"CLASSIC", "RPSLS"})
+    public String variantName;
+
+    private GameVariant variant;
+    private final byte[] first = new byte[ROUNDS];
+    private final byte[] second = new byte[ROUNDS];
+    private final byte[] results = new byte[ROUNDS];
+    private final long[] tally = new long[GameResult.values().length];
+
+    @Setup
+    public void setup() {
+        variant = variantName.equals("RPSLS") ? GameVariant.RPSLS : GameVariant.CLASSIC;
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < ROUNDS; i++) {
+            first[i] = (byte) random.nextInt(variant.choiceCount());
+            second[i] = (byte) random.nextInt(variant.choiceCount());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROUNDS)
+    public int perRound() {
+        int player1Wins = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            if (variant.resolve(first[i], second[i]) == GameResult.PLAYER1_WINS) {
+                player1Wins++;
+            }
+        }
+        return player1Wins;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROUNDS)
+    public byte[] resolveAll() {
+        variant.resolveAll(first, second, results, ROUNDS);
+        return results;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROUNDS)
+    public long[] tally() {
+        variant.tally(first, second, ROUNDS, tally);
+        return tally;
+    }
+}
@@ -0,0 +1,72 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CompareWithBaseline - Prints how a JMH run differs from the checked-in baseline
+ *
+ * Both files are JMH CSV results (-rf csv). Benchmarks are matched by name and parameters;
+ * for the average-time scores used here a negative change is an improvement.
+ *
+ * Usage: java -cp bench/target/benchmarks.jar bench.CompareWithBaseline bench/baseline.csv results.csv
+ */
+public class CompareWithBaseline {
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: CompareWithBaseline <baseline.csv> <results.csv>");
+            System.exit(2);
+        }
+
+        Map<String, String[]> baseline = read(args[0]);
+        Map<String, String[]> current = read(args[1]);
+
+        System.out.printf("%-60s %14s %14s %9s%n", "Benchmark", "Baseline", "Current", "Change");
+        for (Map.Entry<String, String[]> entry : current.entrySet()) {
+            String[] now = entry.getValue();
+            String[] before = baseline.get(entry.getKey());
+            double score = Double.parseDouble(now[4]);
+            String unit = now[6];
+
+            if (before == null || !before[6].equals(unit)) {
+                System.out.printf("%-60s %14s %14s %9s%n", entry.getKey(), "-", format(score, unit), "new");
+                continue;
+            }
+            double baselineScore = Double.parseDouble(before[4]);
+            double change = (score - baselineScore) / baselineScore * 100;
+            System.out.printf("%-60s %14s %14s %+8.1f%%%n",
+                entry.getKey(), format(baselineScore, unit), format(score, unit), change);
+        }
+    }
+
+    /**
+     * Read a JMH CSV file, keyed by benchmark name plus any parameter values
+     */
+    private static Map<String, String[]> read(String path) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8);
+        Map<String, String[]> rows = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] columns = line.replace("\"", "").split(",", -1);
+            StringBuilder key = new StringBuilder(columns[0].replace("bench.", ""));
+            for (int i = 7; i < columns.length; i++) {
+                if (!columns[i].isEmpty()) {
+                    key.append(" [").append(columns[i]).append(']');
+                }
+            }
+            rows.put(key.toString(), columns);
+        }
+        return rows;
+    }
+
+    private static String format(double score, String unit) {
+        return String.format("%.3f %s", score, unit);
+    }
+}
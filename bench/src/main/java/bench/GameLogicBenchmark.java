@@ -0,0 +1,61 @@
+package bench;
+
+import game.GameLogic;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GameLogicBenchmark - Cost of deciding a round and validating a choice
+ *
+ * determineWinner:      all 9 choice pairs per invocation, scored per pair
+ * isValidChoice*:       the String check used by the clients (it used to throw and catch an
+ *                       IllegalArgumentException for invalid input, see the baseline)
+ * parseChoice*:         the byte-level check the server uses
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameLogicBenchmark {
+    private final GameLogic.Choice[] choices = GameLogic.Choice.values();
+
+    public String validInput = "rock";
+    public String invalidInput = "lizard";
+    private final byte[] validBytes = validInput.getBytes(StandardCharsets.US_ASCII);
+    private final byte[] invalidBytes = invalidInput.getBytes(StandardCharsets.US_ASCII);
+
+    @Benchmark
+    @OperationsPerInvocation(9)
+    public void determineWinner(Blackhole blackhole) {
+        for (GameLogic.Choice p1 : choices) {
+            for (GameLogic.Choice p2 : choices) {
+                blackhole.consume(GameLogic.determineWinner(p1, p2));
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean isValidChoiceValid() {
+        return GameLogic.isValidChoice(validInput);
+    }
+
+    @Benchmark
+    public boolean isValidChoiceInvalid() {
+        return GameLogic.isValidChoice(invalidInput);
+    }
+
+    @Benchmark
+    public GameLogic.Choice parseChoiceValid() {
+        return GameLogic.parseChoice(validBytes, 0, validBytes.length);
+    }
+
+    @Benchmark
+    public GameLogic.Choice parseChoiceInvalid() {
+        return GameLogic.parseChoice(invalidBytes, 0, invalidBytes.length);
+    }
+}
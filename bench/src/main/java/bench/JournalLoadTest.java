@@ -0,0 +1,132 @@
+package bench;
+
+import server.RoundJournal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * JournalLoadTest - Appends rounds to a RoundJournal from several threads, then reads it all back
+ *
+ * Each thread plays one "match" whose rounds carry choices derived from the round number.
+ * After closing the journal, every segment is read back and checked: round ids contiguous,
+ * each match's rounds in order with the right choices, and every player named by a PLAYER
+ * record earlier in the same segment. Exits with status 1 on any mismatch.
+ *
+ * Usage: java -cp bench/target/benchmarks.jar bench.JournalLoadTest [threads] [rounds per thread]
+ */
+public class JournalLoadTest {
+    private static final int PLAYERS = 10_000;
+    private static final int SEGMENT_BYTES = 16 << 20;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        Path directory = Files.createTempDirectory("round-journal");
+        LongAdder retries = new LongAdder();
+        boolean ok;
+        try {
+            long start = System.nanoTime();
+            try (RoundJournal journal = new RoundJournal(directory, SEGMENT_BYTES, 1 << 16, 5)) {
+                Thread[] writers = new Thread[threads];
+                for (int t = 0; t < threads; t++) {
+                    int match = t;
+                    writers[t] = new Thread(() -> play(journal, match, rounds, retries));
+                    writers[t].start();
+                }
+                for (Thread writer : writers) {
+                    writer.join();
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long total = (long) threads * rounds;
+            System.out.printf("%d rounds in %.2fs (%.0f rounds/sec), %d appends retried while the writer caught up%n",
+                total, seconds, total / seconds, retries.sum());
+
+            start = System.nanoTime();
+            long read = verify(directory, threads, rounds);
+            ok = read == total;
+            System.out.printf("read %d rounds back from %d segments in %.2fs: %s%n", read,
+                RoundJournal.segments(directory).size(), (System.nanoTime() - start) / 1e9, ok ? "OK" : "FAILED");
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static void play(RoundJournal journal, int match, int rounds, LongAdder retries) {
+        SplittableRandom random = new SplittableRandom(match);
+        for (int round = 0; round < rounds; round++) {
+            String first = name(random.nextInt(PLAYERS));
+            String second = name(random.nextInt(PLAYERS));
+            while (!journal.append(match, round, RoundJournal.playerId(first), first,
+                    RoundJournal.playerId(second), second, round % 3, round / 3 % 3, round % 3, 0, 0, 0)) {
+                retries.increment();
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * @return rounds read, or -1 at the first record that is wrong
+     */
+    private static long verify(Path directory, int threads, int rounds) throws IOException {
+        int[] nextRound = new int[threads];
+        long nextId = -1;
+        long read = 0;
+        for (Path segment : RoundJournal.segments(directory)) {
+            Set<Long> named = new HashSet<>();
+            try (RoundJournal.Cursor cursor = RoundJournal.Cursor.open(segment)) {
+                if (nextId >= 0 && cursor.getFirstRoundId() != nextId) {
+                    return fail(segment + " starts at round " + cursor.getFirstRoundId() + ", expected " + nextId);
+                }
+                while (cursor.next()) {
+                    if (cursor.getKind() == RoundJournal.PLAYER) {
+                        named.add(cursor.getPlayerId());
+                        continue;
+                    }
+                    int match = (int) cursor.getMatchId();
+                    int round = cursor.getMatchRound();
+                    if (nextId >= 0 && cursor.getRoundId() != nextId) {
+                        return fail("round id " + cursor.getRoundId() + ", expected " + nextId);
+                    }
+                    if (round != nextRound[match] || cursor.getChoice1() != round % 3
+                            || cursor.getChoice2() != round / 3 % 3) {
+                        return fail("match " + match + " round " + round + ", expected round " + nextRound[match]);
+                    }
+                    if (!named.contains(cursor.getPlayer1()) || !named.contains(cursor.getPlayer2())) {
+                        return fail("round " + cursor.getRoundId() + " has a player without a PLAYER record");
+                    }
+                    nextRound[match]++;
+                    nextId = cursor.getRoundId() + 1;
+                    read++;
+                }
+            }
+        }
+        for (int match = 0; match < threads; match++) {
+            if (nextRound[match] != rounds) {
+                return fail("match " + match + " has " + nextRound[match] + " rounds");
+            }
+        }
+        return read;
+    }
+
+    private static long fail(String message) {
+        System.out.println("mismatch: " + message);
+        return -1;
+    }
+
+    private static String name(int player) {
+        return "player-" + player;
+    }
+}
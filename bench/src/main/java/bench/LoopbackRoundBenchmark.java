@@ -0,0 +1,140 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import server.GameServer;
+import utils.Protocol;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LoopbackRoundBenchmark - Whole rounds through the real server over loopback
+ *
+ * The server runs in-process (thread mode, GameServer.acceptClients on an ephemeral port) and
+ * two text clients talk to it through real sockets, so the numbers include ClientHandler,
+ * the matchmaker, the outbound queues and the TCP stack.
+ *
+ * round:    CHOICE -> RESULT for an already paired couple
+ * match:    CONNECT -> pair -> CHOICE -> RESULT -> DISCONNECT with two fresh connections
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Drps.log.level=WARN", "-Drps.log.messages=0"})
+@State(Scope.Benchmark)
+public class LoopbackRoundBenchmark {
+    private ServerSocket serverSocket;
+    private ExecutorService clientExecutor;
+    private int port;
+
+    private TextClient alice;
+    private TextClient bob;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        port = serverSocket.getLocalPort();
+        clientExecutor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task);
+            thread.setDaemon(true);
+            return thread;
+        });
+        clientExecutor.execute(() -> GameServer.acceptClients(serverSocket, clientExecutor));
+
+        alice = new TextClient(port);
+        bob = new TextClient(port);
+        alice.connect("alice");
+        bob.connect("bob");
+        alice.awaitType(Protocol.OPPONENT_FOUND);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() throws IOException {
+        alice.close();
+        bob.close();
+        serverSocket.close();
+        // The handlers are still cleaning up, their daemon threads end with the fork
+    }
+
+    @Benchmark
+    public String round() throws IOException {
+        return playRound(alice, bob);
+    }
+
+    @Benchmark
+    public String match() throws IOException {
+        try (TextClient first = new TextClient(port); TextClient second = new TextClient(port)) {
+            first.connect("first");
+            second.connect("second");
+            first.awaitType(Protocol.OPPONENT_FOUND);
+            String result = playRound(first, second);
+            first.send(Protocol.DISCONNECT, "");
+            second.awaitType(Protocol.OPPONENT_LEFT);
+            return result;
+        }
+    }
+
+    /**
+     * One round; the first player's choice is acknowledged before the second player chooses,
+     * so the second player's handler always completes it
+     */
+    private static String playRound(TextClient first, TextClient second) throws IOException {
+        first.send(Protocol.CHOICE, Protocol.ROCK);
+        first.awaitType(Protocol.WAITING);
+        second.send(Protocol.CHOICE, Protocol.SCISSORS);
+        second.awaitType(Protocol.RESULT);
+        return first.awaitType(Protocol.RESULT);
+    }
+
+    /**
+     * Minimal blocking text client
+     */
+    static final class TextClient implements Closeable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final Writer out;
+
+        TextClient(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+        }
+
+        void connect(String name) throws IOException {
+            send(Protocol.CONNECT, name);
+            awaitType(Protocol.WELCOME);
+        }
+
+        void send(String type, String content) throws IOException {
+            out.write(Protocol.createMessage(type, content));
+            out.write('\n');
+            out.flush();
+        }
+
+        /**
+         * Read lines until one of the given type arrives and return it
+         */
+        String awaitType(String type) throws IOException {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(type + Protocol.DELIMITER)) {
+                    return line;
+                }
+            }
+            throw new EOFException("Server closed the connection while waiting for " + type);
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package bench;
+
+import game.GameLogic;
+import game.Match;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MatchStressTest - Checks that Match resolves every round exactly once under contention
+ *
+ * Each match gets two threads that submit a random choice for round r the moment round r
+ * starts, so both players race to complete almost every round. The listener counts how often
+ * each round is reported and checks the reported choices against what the players submitted.
+ * A round nobody resolves shows up as a stall. Exits with status 1 on any lost, doubled
+ * or mixed-up round.
+ *
+ * Usage: java -cp bench/target/benchmarks.jar bench.MatchStressTest [matches] [rounds]
+ */
+public class MatchStressTest {
+    private static final GameLogic.Choice[] CHOICES = GameLogic.Choice.values();
+    private static final long STALL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    public static void main(String[] args) throws InterruptedException {
+        int matches = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        Checker[] checkers = new Checker[matches];
+        Thread[] threads = new Thread[matches * 2];
+        for (int m = 0; m < matches; m++) {
+            Checker checker = new Checker(rounds);
+            Match<Integer> match = new Match<>(m, 0, 1, checker);
+            checkers[m] = checker;
+            threads[2 * m] = new Thread(() -> play(match, 0, checker, rounds), "match-" + m + "-first");
+            threads[2 * m + 1] = new Thread(() -> play(match, 1, checker, rounds), "match-" + m + "-second");
+            checker.match = match;
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        boolean ok = true;
+        for (Checker checker : checkers) {
+            ok &= checker.verify();
+        }
+        System.out.printf("%d matches x %d rounds in %.2fs (%.0f rounds/sec): %s%n",
+            matches, rounds, seconds, matches * (double) rounds / seconds, ok ? "OK" : "FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * One player: choose for round r as soon as it starts, then wait for it to be resolved
+     */
+    private static void play(Match<Integer> match, int seat, Checker checker, int rounds) {
+        Integer player = seat == 0 ? match.getFirst() : match.getSecond();
+        SplittableRandom random = new SplittableRandom(seat * 7919L + match.getId());
+        for (int round = 0; round < rounds; round++) {
+            byte choice = (byte) random.nextInt(CHOICES.length);
+            checker.submitted[seat][round] = choice;
+            if (!match.submit(player, CHOICES[choice])) {
+                checker.errors.incrementAndGet();
+                return;
+            }
+            long deadline = System.nanoTime() + STALL_NANOS;
+            while (match.getRound() <= round) {
+                if (System.nanoTime() > deadline) {
+                    // Both choices are in but the round was never resolved
+                    checker.errors.incrementAndGet();
+                    return;
+                }
+                Thread.yield();
+            }
+        }
+    }
+
+    private static final class Checker implements Match.RoundListener<Integer> {
+        final byte[][] submitted;
+        final AtomicIntegerArray reported;
+        final AtomicLong errors = new AtomicLong();
+        final int rounds;
+        Match<Integer> match;
+
+        Checker(int rounds) {
+            this.rounds = rounds;
+            this.submitted = new byte[2][rounds];
+            this.reported = new AtomicIntegerArray(rounds);
+        }
+
+        @Override
+        public void roundResolved(Match<Integer> match, long round, GameLogic.Choice first, GameLogic.Choice second) {
+            int r = (int) round;
+            if (reported.incrementAndGet(r) != 1
+                    || first.ordinal() != submitted[0][r]
+                    || second.ordinal() != submitted[1][r]) {
+                errors.incrementAndGet();
+            }
+        }
+
+        boolean verify() {
+            long lost = 0;
+            for (int r = 0; r < rounds; r++) {
+                if (reported.get(r) == 0) {
+                    lost++;
+                }
+            }
+            match.close();
+            boolean closedRejects = !match.submit(match.getFirst(), GameLogic.Choice.ROCK)
+                && match.getState() == Match.State.CLOSED;
+            boolean ok = lost == 0 && errors.get() == 0 && match.getRound() == rounds && closedRejects;
+            if (!ok) {
+                System.out.println("match " + match.getId() + ": lost=" + lost + " errors=" + errors.get()
+                    + " round=" + match.getRound() + " closedRejects=" + closedRejects);
+            }
+            return ok;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package bench;
+
+import server.Matchmaker;
+import utils.LatencyHistogram;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MatchmakerLoadTest - Times the Matchmaker under bursts of joins of growing size
+ *
+ * For each burst size, that many players with normally distributed ratings (mean 1500,
+ * standard deviation 300) join from several threads at once. Reports the matchmaker's cost
+ * per join, which should stay flat as bursts grow, and the time-to-pair and rating-gap
+ * distributions. The cost is timed up to the point where only the players a sweep must
+ * pair with a widened window are left: at most one per rating bucket. The window widens
+ * faster than the server's default so outliers pair within seconds. Exits with status 1
+ * if any player is not paired exactly once.
+ *
+ * Usage: java -cp bench/target/benchmarks.jar bench.MatchmakerLoadTest [bursts...]
+ */
+public class MatchmakerLoadTest {
+    private static final int THREADS = 4;
+    private static final double BUCKET_WIDTH = 25;
+    private static final int BUCKETS = (int) Math.ceil(4000 / BUCKET_WIDTH);
+    private static final double WIDEN_PER_SECOND = 1000;
+    private static final long TIMEOUT_SECONDS = 30;
+
+    public static void main(String[] args) throws InterruptedException {
+        int[] bursts = args.length > 0 ? new int[args.length] : new int[] {1_000, 10_000, 100_000};
+        for (int i = 0; i < args.length; i++) {
+            bursts[i] = Integer.parseInt(args[i]);
+        }
+
+        boolean ok = true;
+        for (int players : bursts) {
+            ok &= burst(players & ~1, new SplittableRandom(players));
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static boolean burst(int players, SplittableRandom random) throws InterruptedException {
+        double[] ratings = new double[players];
+        for (int i = 0; i < players; i++) {
+            ratings[i] = 1500 + 300 * gaussian(random);
+        }
+        long[] joinedAt = new long[players];
+        AtomicIntegerArray timesPaired = new AtomicIntegerArray(players);
+        LatencyHistogram timeToPair = new LatencyHistogram();
+        LatencyHistogram ratingGap = new LatencyHistogram();
+        CountDownLatch done = new CountDownLatch(players / 2);
+        AtomicInteger pairs = new AtomicInteger();
+        int bulk = Math.max(1, players / 2 - BUCKETS / 2);
+        AtomicLong bulkDone = new AtomicLong();
+
+        Matchmaker<Integer> matchmaker = new Matchmaker<>((first, firstRating, second, secondRating) -> {
+            long now = System.nanoTime();
+            timesPaired.incrementAndGet(first);
+            timesPaired.incrementAndGet(second);
+            timeToPair.recordNanos(now - joinedAt[first]);
+            timeToPair.recordNanos(now - joinedAt[second]);
+            ratingGap.record(Math.round(Math.abs(firstRating - secondRating)));
+            if (pairs.incrementAndGet() == bulk) {
+                bulkDone.set(now);
+            }
+            done.countDown();
+        }, BUCKET_WIDTH, 100, WIDEN_PER_SECOND, 0);
+
+        long start = System.nanoTime();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int from = t;
+            threads[t] = new Thread(() -> {
+                for (int player = from; player < players; player += THREADS) {
+                    joinedAt[player] = System.nanoTime();
+                    matchmaker.enqueue(player, ratings[player]);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        boolean finished = done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        long nanos = bulkDone.get() - start;
+
+        int wrong = 0;
+        for (int player = 0; player < players; player++) {
+            if (timesPaired.get(player) != 1) {
+                wrong++;
+            }
+        }
+        boolean ok = finished && wrong == 0;
+        System.out.printf("%,d joins: %,d paired in %.3fs (%.0f ns/join), %d players not paired once: %s%n",
+            players, 2 * bulk, nanos / 1e9, nanos / (2.0 * bulk), wrong, ok ? "OK" : "FAILED");
+        System.out.println("  time to pair " + timeToPair.summary());
+        System.out.printf("  rating gap p50=%d p90=%d p99=%d max=%d%n", ratingGap.getPercentile(50),
+            ratingGap.getPercentile(90), ratingGap.getPercentile(99), ratingGap.getMax());
+        return ok;
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        // Box-Muller; SplittableRandom has no nextGaussian() before Java 17
+        double u = 1 - random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+}
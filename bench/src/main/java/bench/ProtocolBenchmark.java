@@ -0,0 +1,37 @@
+package bench;
+
+import org.openjdk.jmh.annotations.*;
+import utils.Protocol;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProtocolBenchmark - The String helpers in utils.Protocol that the clients still use
+ * See ProtocolParserBenchmark for the server's byte-level parser
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtocolBenchmark {
+    public String type = Protocol.RESULT;
+    public String content = "WIN:You chose ROCK, Opponent chose SCISSORS";
+    public String message = Protocol.createMessage(type, content);
+
+    @Benchmark
+    public String createMessage() {
+        return Protocol.createMessage(type, content);
+    }
+
+    @Benchmark
+    public String parseType() {
+        return Protocol.parseType(message);
+    }
+
+    @Benchmark
+    public String parseContent() {
+        return Protocol.parseContent(message);
+    }
+}
@@ -0,0 +1,94 @@
+package bench;
+
+import game.GameLogic;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import utils.MessageType;
+import utils.Protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProtocolParserBenchmark - Parsing one inbound line, old way vs new way
+ *
+ * splitBased:    the original Protocol.parseType/parseContent (contains + String.split) plus a string switch
+ * stringIndexOf: the current Protocol.parseType/parseContent (indexOf + substring)
+ * zeroAlloc:     MessageType.parse over the raw bytes plus GameLogic.parseChoice, as the server does now
+ *
+ * Run with -prof gc to see the allocation rate of each.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtocolParserBenchmark {
+    @Param({"CHOICE:ROCK", "CONNECT:alice", "DISCONNECT"})
+    public String line;
+
+    private byte[] lineBytes;
+
+    @Setup
+    public void setup() {
+        lineBytes = line.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void splitBased(Blackhole blackhole) {
+        String type = LegacyParser.parseType(line);
+        String content = LegacyParser.parseContent(line);
+        switch (type) {
+            case Protocol.CHOICE:
+                blackhole.consume(GameLogic.isValidChoice(content) ? GameLogic.Choice.valueOf(content.toUpperCase()) : null);
+                break;
+            default:
+                blackhole.consume(content);
+        }
+    }
+
+    @Benchmark
+    public void stringIndexOf(Blackhole blackhole) {
+        String type = Protocol.parseType(line);
+        String content = Protocol.parseContent(line);
+        switch (type) {
+            case Protocol.CHOICE:
+                blackhole.consume(GameLogic.isValidChoice(content) ? GameLogic.Choice.valueOf(content.toUpperCase()) : null);
+                break;
+            default:
+                blackhole.consume(content);
+        }
+    }
+
+    @Benchmark
+    public void zeroAlloc(Blackhole blackhole) {
+        MessageType type = MessageType.parse(lineBytes, 0, lineBytes.length);
+        int start = type.contentStart(0, lineBytes.length);
+        if (type == MessageType.CHOICE) {
+            blackhole.consume(GameLogic.parseChoice(lineBytes, start, lineBytes.length - start));
+        } else {
+            blackhole.consume(start);
+        }
+    }
+
+    /**
+     * The split-based parser Protocol used before MessageType existed, kept as the baseline
+     */
+    static final class LegacyParser {
+        static String parseType(String message) {
+            if (message == null || !message.contains(Protocol.DELIMITER)) {
+                return message;
+            }
+            return message.split(Protocol.DELIMITER)[0];
+        }
+
+        static String parseContent(String message) {
+            if (message == null || !message.contains(Protocol.DELIMITER)) {
+                return "";
+            }
+            String[] parts = message.split(Protocol.DELIMITER, 2);
+            return parts.length > 1 ? parts[1] : "";
+        }
+    }
+}
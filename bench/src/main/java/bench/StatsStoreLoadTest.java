@@ -0,0 +1,92 @@
+package bench;
+
+import game.GameResult;
+import server.PlayerStatsStore;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * StatsStoreLoadTest - Fills a PlayerStatsStore with many players, then times reopening it
+ *
+ * Plays the given number of rounds between random pairs of players, closes the store
+ * (compacting along the way whenever superseded records pile up), reopens the file and
+ * checks a sample of players against counts kept on the side. Exits with status 1 on any
+ * mismatch.
+ *
+ * Usage: java -cp bench/target/benchmarks.jar bench.StatsStoreLoadTest [players] [rounds]
+ */
+public class StatsStoreLoadTest {
+    private static final GameResult[] RESULTS = GameResult.values();
+    private static final int SAMPLES = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long rounds = args.length > 1 ? Long.parseLong(args[1]) : 3L * players;
+
+        Path file = Files.createTempFile("player-stats", ".dat");
+        long[] expected = new long[players * 3];  // wins, losses, draws
+        SplittableRandom random = new SplittableRandom(42);
+
+        long start = System.nanoTime();
+        try (PlayerStatsStore store = new PlayerStatsStore(file)) {
+            for (long r = 0; r < rounds; r++) {
+                int first = random.nextInt(players);
+                int second = (first + 1 + random.nextInt(players - 1)) % players;
+                GameResult result = RESULTS[random.nextInt(RESULTS.length)];
+                while (!store.recordRound(name(first), name(second), result)) {
+                    Thread.yield();  // writer is behind
+                }
+                count(expected, first, second, result);
+            }
+        }
+        double writeSeconds = (System.nanoTime() - start) / 1e9;
+        long fileBytes = Files.size(file);
+
+        start = System.nanoTime();
+        boolean ok;
+        try (PlayerStatsStore store = new PlayerStatsStore(file)) {
+            double loadSeconds = (System.nanoTime() - start) / 1e9;
+            int mismatches = 0;
+            for (int i = 0; i < SAMPLES; i++) {
+                int player = random.nextInt(players);
+                long[] actual = store.lookup(name(player)).get();
+                for (int column = 0; column < 3; column++) {
+                    if (actual[column] != expected[player * 3 + column]) {
+                        mismatches++;
+                        break;
+                    }
+                }
+            }
+            ok = mismatches == 0 && store.getPlayerCount() <= players;
+            System.out.printf("%d rounds in %.2fs (%.0f rounds/sec), file %.1f MB%n",
+                rounds, writeSeconds, rounds / writeSeconds, fileBytes / 1e6);
+            System.out.printf("reopened %d players in %.2fs, %d/%d sampled players wrong: %s%n",
+                store.getPlayerCount(), loadSeconds, mismatches, SAMPLES, ok ? "OK" : "FAILED");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static String name(int player) {
+        return "player-" + player;
+    }
+
+    private static void count(long[] expected, int first, int second, GameResult result) {
+        switch (result) {
+            case PLAYER1_WINS:
+                expected[first * 3]++;
+                expected[second * 3 + 1]++;
+                break;
+            case PLAYER2_WINS:
+                expected[first * 3 + 1]++;
+                expected[second * 3]++;
+                break;
+            default:
+                expected[first * 3 + 2]++;
+                expected[second * 3 + 2]++;
+        }
+    }
+}
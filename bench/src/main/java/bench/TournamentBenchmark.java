@@ -0,0 +1,57 @@
+package bench;
+
+import game.GameVariant;
+import game.Strategies;
+import game.Tournament;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TournamentBenchmark - Rounds played by the offline Tournament, all built-in strategies
+ *
+ * roundRobin:       every pairing of the seven strategies, on the common fork/join pool
+ * roundRobinSingle: the same on a one-thread pool, the cost per round without parallelism
+ *
+ * Scores are per round.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TournamentBenchmark {
+    private static final int MATCHES = 100;
+    private static final int ROUNDS = 100;
+    private static final int PAIRINGS = 21;  // 7 strategies
+
+    private Tournament parallel;
+    private Tournament single;
+    private ForkJoinPool singlePool;
+
+    @Setup
+    public void setup() {
+        singlePool = new ForkJoinPool(1);
+        parallel = new Tournament(GameVariant.CLASSIC, Strategies.all(), MATCHES, ROUNDS, 42, ForkJoinPool.commonPool());
+        single = new Tournament(GameVariant.CLASSIC, Strategies.all(), MATCHES, ROUNDS, 42, singlePool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        singlePool.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRINGS * MATCHES * ROUNDS)
+    public Tournament.Result roundRobin() {
+        return parallel.run(Tournament.Format.ROUND_ROBIN);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRINGS * MATCHES * ROUNDS)
+    public Tournament.Result roundRobinSingle() {
+        return single.run(Tournament.Format.ROUND_ROBIN);
+    }
+}
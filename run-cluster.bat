@@ -0,0 +1,34 @@
+@echo off
+REM Run script for a local cluster: one broker plus several game server nodes (Windows)
+REM Usage: run-cluster.bat [nodes]   (default 3; node i listens on port 12345+i)
+REM Each process gets its own window; close them to stop the cluster
+
+setlocal enabledelayedexpansion
+set NODES=%1
+if "%NODES%"=="" set NODES=3
+set BROKER_PORT=12400
+
+echo =========================================
+echo   Starting Rock-Paper-Scissors Cluster
+echo =========================================
+echo.
+
+REM Check if compiled classes exist
+if not exist "out" (
+    echo ❌ Error: 'out' directory not found!
+    echo Please compile the project first: compile.bat
+    exit /b 1
+)
+
+if not exist "cluster" mkdir cluster
+start "rps-broker" java -Drps.broker.port=%BROKER_PORT% -cp out server.ClusterBroker
+timeout /t 1 > nul
+
+set /a LAST=%NODES% - 1
+for /l %%i in (0,1,%LAST%) do (
+    set /a PORT=12345 + %%i
+    set /a METRICS=9464 + %%i
+    start "rps-node-!PORT!" java -Drps.port=!PORT! -Drps.cluster.broker=127.0.0.1:%BROKER_PORT% -Drps.stats.file=cluster/player-stats-!PORT!.dat -Drps.metrics.port=!METRICS! -cp out server.GameServer
+)
+
+echo Connect clients to any of ports 12345 and up
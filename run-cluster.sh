@@ -0,0 +1,43 @@
+#!/bin/bash
+# Run script for a local cluster: one broker plus several game server nodes
+# Usage: ./run-cluster.sh [nodes]   (default 3; node i listens on port 12345+i)
+# Extra java options for every node can be given in RPS_OPTS, e.g.:
+#   RPS_OPTS="-Drps.mode=nio" ./run-cluster.sh 4
+
+NODES=${1:-3}
+BROKER_PORT=12400
+
+echo "========================================="
+echo "  Starting Rock-Paper-Scissors Cluster"
+echo "========================================="
+echo ""
+
+# Check if compiled classes exist
+if [ ! -d "out" ]; then
+    echo "❌ Error: 'out' directory not found!"
+    echo "Please compile the project first: ./compile.sh"
+    exit 1
+fi
+
+# Stop everything on Ctrl+C
+trap 'kill $(jobs -p) 2>/dev/null; exit 0' INT TERM
+
+mkdir -p cluster
+echo "Starting broker on port $BROKER_PORT (log: cluster/broker.log)"
+java -Drps.broker.port=$BROKER_PORT -cp out server.ClusterBroker > cluster/broker.log 2>&1 &
+sleep 1
+
+for ((i = 0; i < NODES; i++)); do
+    PORT=$((12345 + i))
+    echo "Starting node on port $PORT (log: cluster/node-$PORT.log)"
+    java -Drps.port=$PORT \
+         -Drps.cluster.broker=127.0.0.1:$BROKER_PORT \
+         -Drps.stats.file=cluster/player-stats-$PORT.dat \
+         -Drps.metrics.port=$((9464 + i)) \
+         $RPS_OPTS -cp out server.GameServer > cluster/node-$PORT.log 2>&1 &
+done
+
+echo ""
+echo "Connect clients to any of ports 12345-$((12345 + NODES - 1))"
+echo "Press Ctrl+C to stop the cluster"
+wait
@@ -0,0 +1,19 @@
+@echo off
+REM Run script for the headless load generator (Windows)
+REM Extra arguments are passed to java, e.g.:
+REM   run-load-test.bat -Drps.load.players=10000 -Drps.load.rounds=20
+
+echo =========================================
+echo   Starting Load Generator
+echo =========================================
+echo.
+
+REM Check if compiled classes exist
+if not exist "out" (
+    echo ❌ Error: 'out' directory not found!
+    echo Please compile the project first: compile.bat
+    exit /b 1
+)
+
+REM Run the load generator against localhost:12345 unless told otherwise
+java %* -cp out client.LoadGenerator
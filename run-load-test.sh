@@ -0,0 +1,19 @@
+#!/bin/bash
+# Run script for the headless load generator
+# Extra arguments are passed to java, e.g.:
+#   ./run-load-test.sh -Drps.load.players=10000 -Drps.load.rounds=20
+
+echo "========================================="
+echo "  Starting Load Generator"
+echo "========================================="
+echo ""
+
+# Check if compiled classes exist
+if [ ! -d "out" ]; then
+    echo "❌ Error: 'out' directory not found!"
+    echo "Please compile the project first: ./compile.sh"
+    exit 1
+fi
+
+# Run the load generator against localhost:12345 unless told otherwise
+java "$@" -cp out client.LoadGenerator
@@ -24,6 +24,7 @@ public class GameClientUI extends JFrame {
     // UI Components
     private JTextField nameField;
     private JButton joinBtn;
+    private JButton leaderboardBtn;
     private JLabel statusLabel;
     private JButton rockBtn, paperBtn, scissorsBtn;
     private JLabel resultLabel;
@@ -130,9 +131,15 @@ public class GameClientUI extends JFrame {
         // Allow pressing Enter in name field to join
         nameField.addActionListener(e -> handleJoinButton());
 
+        leaderboardBtn = new JButton("Leaderboard");
+        leaderboardBtn.setFont(new Font("Arial", Font.PLAIN, 14));
+        leaderboardBtn.setFocusPainted(false);
+        leaderboardBtn.addActionListener(e -> handleLeaderboardButton());
+
         panel.add(nameLabel);
         panel.add(nameField);
         panel.add(joinBtn);
+        panel.add(leaderboardBtn);
 
         return panel;
     }
@@ -252,6 +259,49 @@ public class GameClientUI extends JFrame {
         disableGameButtons();
     }
 
+    /**
+     * Handle leaderboard button click - Ask the server for the top players by wins
+     */
+    private void handleLeaderboardButton() {
+        if (!isConnected) {
+            JOptionPane.showMessageDialog(
+                this,
+                "Join a game first to see the leaderboard",
+                "Leaderboard",
+                JOptionPane.INFORMATION_MESSAGE
+            );
+            return;
+        }
+        sendMessage(Protocol.createMessage(Protocol.LEADERBOARD, Protocol.BY_WINS));
+    }
+
+    /**
+     * Show a leaderboard received from the server
+     * Format: "WINS:wins,losses,draws,streak,name|wins,losses,draws,streak,name|..."
+     */
+    private void showLeaderboard(String content) {
+        String[] parts = content.split(Protocol.DELIMITER, 2);
+        StringBuilder text = new StringBuilder("Top players by " + parts[0] + "\n\n");
+        if (parts.length < 2 || parts[1].isEmpty()) {
+            text.append("No games played yet");
+        } else {
+            int place = 0;
+            for (String entry : parts[1].split("\\" + Protocol.ENTRY_DELIMITER)) {
+                String[] fields = entry.split(Protocol.FIELD_DELIMITER, 5);
+                if (fields.length < 5) {
+                    // Not an entry this client understands, skip it rather than the whole list
+                    continue;
+                }
+                text.append(++place).append(". ").append(fields[4])
+                    .append("  W ").append(fields[0])
+                    .append("  L ").append(fields[1])
+                    .append("  D ").append(fields[2])
+                    .append("  streak ").append(fields[3]).append('\n');
+            }
+        }
+        JOptionPane.showMessageDialog(this, text.toString(), "Leaderboard", JOptionPane.INFORMATION_MESSAGE);
+    }
+
     /**
      * Enable game buttons
      */
@@ -358,7 +408,8 @@ public class GameClientUI extends JFrame {
 
         switch (type) {
             case Protocol.WELCOME:
-                updateStatus(content);
+                // "token:Welcome alice!" - this client does not resume sessions
+                updateStatus(Protocol.parseContent(content));
                 break;
 
             case Protocol.WAITING:
@@ -382,6 +433,10 @@ public class GameClientUI extends JFrame {
                 disableGameButtons();
                 break;
 
+            case Protocol.LEADERBOARD:
+                showLeaderboard(content);
+                break;
+
             case Protocol.ERROR:
                 updateStatus("Error: " + content);
                 JOptionPane.showMessageDialog(
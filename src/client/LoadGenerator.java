@@ -0,0 +1,565 @@
+package client;
+
+import utils.BinaryProtocol;
+import utils.LatencyHistogram;
+import utils.MessageType;
+import utils.Protocol;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * LoadGenerator - Headless client that plays many simulated players against a GameServer
+ *
+ * Each player connects, waits to be paired, plays a number of rounds and disconnects,
+ * on its own virtual thread (Java 21, platform threads otherwise). At the end it reports
+ * connect time (TCP connect to WELCOME), time-to-pair (WELCOME to OPPONENT_FOUND) and
+ * CHOICE -> RESULT latency percentiles, plus rounds per second.
+ * CHOICE -> RESULT includes waiting for the opponent's choice; both players answer at once.
+ * With rps.load.resumeEvery set, players also drop their connection every few rounds and
+ * RESUME their session on a new one, reporting resume time (TCP connect to the replayed
+ * OPPONENT_FOUND) next to the connect time it replaces.
+ * With rps.load.muxSessions set, players share connections instead: each CONNECT_MUX
+ * connection carries that many of them as binary sessions, read by one thread that hands
+ * every player the frames of its own session.
+ *
+ * Settings are system properties:
+ *   rps.host               server host (localhost)
+ *   rps.port               server port (12345)
+ *   rps.load.players       simulated players, should be even (1000)
+ *   rps.load.rounds        rounds per player (10)
+ *   rps.load.choices       "random", or a script cycled by every player, e.g. ROCK,ROCK,PAPER
+ *   rps.load.binary        use CONNECT_BINARY framing (false)
+ *   rps.load.threads       virtual or platform (virtual)
+ *   rps.load.rampMillis    spread the connects over this long (1000)
+ *   rps.load.timeoutMillis give up on a player that hears nothing for this long (30000)
+ *   rps.load.seed          seed for random choices (fixed, so runs are repeatable)
+ *   rps.load.resumeEvery   drop and RESUME the connection before every Nth round, 0 = never (0)
+ *   rps.load.muxSessions   players per multiplexed connection, 0 = a connection each (0);
+ *                          multiplexed players are binary and never RESUME
+ *
+ * Example: java -Drps.load.players=10000 -Drps.load.rounds=20 -cp out client.LoadGenerator
+ */
+public class LoadGenerator {
+    private static final String HOST = System.getProperty("rps.host", "localhost");
+    private static final int PORT = Integer.getInteger("rps.port", 12345);
+    private static final int PLAYERS = Integer.getInteger("rps.load.players", 1000);
+    private static final int ROUNDS = Integer.getInteger("rps.load.rounds", 10);
+    private static final String CHOICES = System.getProperty("rps.load.choices", "random");
+    private static final boolean BINARY = Boolean.getBoolean("rps.load.binary");
+    private static final String THREADS = System.getProperty("rps.load.threads", "virtual");
+    private static final long RAMP_MILLIS = Long.getLong("rps.load.rampMillis", 1000);
+    private static final int TIMEOUT_MILLIS = Integer.getInteger("rps.load.timeoutMillis", 30000);
+    private static final long SEED = Long.getLong("rps.load.seed", 42);
+    private static final int MUX_SESSIONS = Integer.getInteger("rps.load.muxSessions", 0);
+    private static final int RESUME_EVERY = MUX_SESSIONS > 0 ? 0 : Integer.getInteger("rps.load.resumeEvery", 0);
+
+    private static final int MAX_LINE_LENGTH = 4096;
+    private static final String[] CHOICE_NAMES = {Protocol.ROCK, Protocol.PAPER, Protocol.SCISSORS};
+
+    private final LatencyHistogram connectTime = new LatencyHistogram();
+    private final LatencyHistogram timeToPair = new LatencyHistogram();
+    private final LatencyHistogram roundLatency = new LatencyHistogram();
+    private final LatencyHistogram resumeTime = new LatencyHistogram();
+
+    private final LongAdder connected = new LongAdder();
+    private final LongAdder paired = new LongAdder();
+    private final LongAdder results = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder opponentsLeft = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder resumes = new LongAdder();
+
+    private final int[] script;
+    private final CountDownLatch finished = new CountDownLatch(PLAYERS);
+    private final Multiplexed[] muxes = new Multiplexed[MUX_SESSIONS > 0 ? (PLAYERS + MUX_SESSIONS - 1) / MUX_SESSIONS : 0];
+
+    public static void main(String[] args) throws InterruptedException {
+        new LoadGenerator().run();
+    }
+
+    private LoadGenerator() {
+        script = parseScript(CHOICES);
+    }
+
+    /**
+     * Choice indexes to cycle through, or null for random choices
+     */
+    private static int[] parseScript(String choices) {
+        if (choices.equalsIgnoreCase("random")) {
+            return null;
+        }
+        String[] names = choices.split(",");
+        int[] script = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            script[i] = indexOf(names[i].trim().toUpperCase());
+        }
+        return script;
+    }
+
+    private static int indexOf(String choice) {
+        for (int i = 0; i < CHOICE_NAMES.length; i++) {
+            if (CHOICE_NAMES[i].equals(choice)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown choice in rps.load.choices: " + choice);
+    }
+
+    private void run() throws InterruptedException {
+        System.out.println("=== Rock Paper Scissors Load Generator ===");
+        System.out.println(PLAYERS + " players x " + ROUNDS + " rounds against " + HOST + ":" + PORT
+            + " (" + (MUX_SESSIONS > 0 ? MUX_SESSIONS + " per multiplexed connection" : BINARY ? "binary" : "text")
+            + ", choices " + CHOICES + ")");
+
+        ExecutorService executor = createExecutor();
+        long start = System.nanoTime();
+
+        // Start players evenly over the ramp so the server's accept queue is not flooded
+        for (int i = 0; i < PLAYERS; i++) {
+            long due = start + TimeUnit.MILLISECONDS.toNanos(RAMP_MILLIS) * i / PLAYERS;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            int player = i;
+            executor.execute(() -> play(player));
+        }
+
+        // Progress every few seconds until everyone is done
+        while (!finished.await(5, TimeUnit.SECONDS)) {
+            System.out.println(progress(start));
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        report(elapsed);
+    }
+
+    private ExecutorService createExecutor() {
+        if (THREADS.equalsIgnoreCase("virtual")) {
+            try {
+                return (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.println("Virtual threads are not available on this JDK, using platform threads");
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+    /**
+     * One simulated player, from connect to disconnect
+     */
+    private void play(int player) {
+        SplittableRandom random = new SplittableRandom(SEED + player);
+        long connectStart = System.nanoTime();
+        PlayerConnection connection = null;
+        try {
+            String name = "load-" + player;
+            if (MUX_SESSIONS > 0) {
+                connection = new PlayerConnection(muxFor(player), player);
+                connection.mux.open(player, name);
+            } else {
+                connection = new PlayerConnection(open());
+                connection.sendLine((BINARY ? Protocol.CONNECT_BINARY : Protocol.CONNECT) + Protocol.DELIMITER + name);
+                if (BINARY) {
+                    connection.binary = true;
+                }
+            }
+            if (connection.await(MessageType.WELCOME) != MessageType.WELCOME) {
+                failures.increment();
+                return;
+            }
+            long welcomed = System.nanoTime();
+            connectTime.recordNanos(welcomed - connectStart);
+            connected.increment();
+
+            if (connection.await(MessageType.OPPONENT_FOUND) != MessageType.OPPONENT_FOUND) {
+                failures.increment();
+                return;
+            }
+            timeToPair.recordNanos(System.nanoTime() - welcomed);
+            paired.increment();
+
+            for (int round = 0; round < ROUNDS; round++) {
+                if (RESUME_EVERY > 0 && round > 0 && round % RESUME_EVERY == 0) {
+                    connection = resume(connection);
+                    if (connection == null) {
+                        failures.increment();
+                        return;
+                    }
+                }
+                int choice = script != null ? script[round % script.length] : random.nextInt(CHOICE_NAMES.length);
+                long sent = System.nanoTime();
+                connection.sendChoice(choice);
+
+                MessageType reply = connection.await(MessageType.RESULT);
+                if (reply == MessageType.RESULT) {
+                    roundLatency.recordNanos(System.nanoTime() - sent);
+                    results.increment();
+                } else if (reply == MessageType.OPPONENT_LEFT) {
+                    // Opponent finished or failed first, this player cannot play on
+                    opponentsLeft.increment();
+                    break;
+                } else {
+                    errors.increment();
+                    break;
+                }
+            }
+
+            connection.sendDisconnect();
+
+        } catch (IOException e) {
+            failures.increment();
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            finished.countDown();
+        }
+    }
+
+    private static Socket open() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(TIMEOUT_MILLIS);
+            socket.connect(new InetSocketAddress(HOST, PORT), TIMEOUT_MILLIS);
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The shared connection of a player's group, opened by the group's first player
+     */
+    private synchronized Multiplexed muxFor(int player) throws IOException {
+        int group = player / MUX_SESSIONS;
+        if (muxes[group] == null) {
+            muxes[group] = new Multiplexed(Math.min(MUX_SESSIONS, PLAYERS - group * MUX_SESSIONS));
+        }
+        return muxes[group];
+    }
+
+    /**
+     * Drop the connection without DISCONNECT and take the session back on a new one
+     * @return the new connection, or null if the server did not resume the session
+     */
+    private PlayerConnection resume(PlayerConnection dropped) throws IOException {
+        dropped.close();
+        long start = System.nanoTime();
+        PlayerConnection connection = new PlayerConnection(open());
+        connection.sendLine(Protocol.createMessage(Protocol.RESUME, dropped.token));
+        connection.binary = dropped.binary;
+        // The server replays WELCOME, then OPPONENT_FOUND since the match is still on
+        if (connection.await(MessageType.WELCOME) != MessageType.WELCOME
+                || connection.await(MessageType.OPPONENT_FOUND) != MessageType.OPPONENT_FOUND) {
+            connection.close();
+            return null;
+        }
+        resumeTime.recordNanos(System.nanoTime() - start);
+        resumes.increment();
+        return connection;
+    }
+
+    private String progress(long start) {
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+        return String.format("[%3ds] connected=%d paired=%d rounds=%d failed=%d",
+            seconds, connected.sum(), paired.sum(), results.sum() / 2, failures.sum());
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long rounds = results.sum() / 2;  // both players see every RESULT
+
+        System.out.println();
+        System.out.println("=== Results ===");
+        System.out.printf("Elapsed:        %.2fs%n", seconds);
+        System.out.println("Players:        " + PLAYERS + " (connected " + connected.sum()
+            + ", paired " + paired.sum() + ", failed " + failures.sum() + ")");
+        System.out.println("Rounds:         " + rounds + " (errors " + errors.sum()
+            + ", opponent left " + opponentsLeft.sum() + ")");
+        System.out.printf("Rounds/sec:     %.0f%n", rounds / seconds);
+        System.out.println("Connect:        " + connectTime.summary());
+        if (RESUME_EVERY > 0) {
+            System.out.println("Resume:         " + resumeTime.summary() + " (" + resumes.sum() + " resumes)");
+        }
+        System.out.println("Time to pair:   " + timeToPair.summary());
+        System.out.println("CHOICE->RESULT: " + roundLatency.summary());
+    }
+
+    /**
+     * Blocking reader/writer for one player, text lines or binary frames, on its own socket or multiplexed
+     */
+    private static final class PlayerConnection {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final Multiplexed mux;  // null unless the player is a session of a shared connection
+        private final int session;
+        private final byte[] buffer = new byte[MAX_LINE_LENGTH];
+        private boolean binary;
+        private String token;  // from the last WELCOME
+
+        PlayerConnection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = socket.getOutputStream();
+            this.mux = null;
+            this.session = 0;
+        }
+
+        PlayerConnection(Multiplexed mux, int session) {
+            this.socket = null;
+            this.in = null;
+            this.out = null;
+            this.mux = mux;
+            this.session = session;
+            this.binary = true;
+        }
+
+        private void write(byte[] frame) throws IOException {
+            if (mux != null) {
+                mux.send(session, frame);
+            } else {
+                out.write(frame);
+            }
+        }
+
+        void sendLine(String line) throws IOException {
+            out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+
+        void sendChoice(int choice) throws IOException {
+            if (binary) {
+                write(BinaryProtocol.createChoice((byte) choice));
+            } else {
+                sendLine(Protocol.createMessage(Protocol.CHOICE, CHOICE_NAMES[choice]));
+            }
+        }
+
+        void sendDisconnect() throws IOException {
+            if (binary) {
+                write(BinaryProtocol.createDisconnect());
+            } else {
+                sendLine(Protocol.createMessage(Protocol.DISCONNECT, ""));
+            }
+        }
+
+        void close() {
+            if (mux != null) {
+                mux.release(session);
+                return;
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+
+        /**
+         * Skip WAITING messages until the expected type arrives
+         * @return the expected type, or whatever ended the wait (ERROR, OPPONENT_LEFT, ...)
+         */
+        MessageType await(MessageType expected) throws IOException {
+            while (true) {
+                MessageType type = binary ? readFrame() : readLine();
+                if (type == expected || type != MessageType.WAITING) {
+                    return type;
+                }
+            }
+        }
+
+        private MessageType readLine() throws IOException {
+            int length = 0;
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b == -1) {
+                    throw new EOFException("Server closed the connection");
+                }
+                if (length < buffer.length) {
+                    buffer[length++] = (byte) b;
+                }
+            }
+            MessageType type = MessageType.parse(buffer, 0, length);
+            if (type == MessageType.WELCOME) {
+                // "WELCOME:token:Welcome alice!"
+                String content = new String(buffer, 0, length, StandardCharsets.UTF_8);
+                token = Protocol.parseType(Protocol.parseContent(content));
+            }
+            return type;
+        }
+
+        private MessageType readFrame() throws IOException {
+            if (mux != null) {
+                byte[] frame = mux.take(session);
+                System.arraycopy(frame, 0, buffer, 0, frame.length);
+            } else {
+                Multiplexed.readFrame(in, buffer);
+            }
+            switch (buffer[0]) {
+                case BinaryProtocol.WELCOME:
+                    token = Protocol.parseType(BinaryProtocol.readString(buffer, 0));
+                    return MessageType.WELCOME;
+                case BinaryProtocol.WAITING:
+                    return MessageType.WAITING;
+                case BinaryProtocol.OPPONENT_FOUND:
+                    return MessageType.OPPONENT_FOUND;
+                case BinaryProtocol.RESULT:
+                    return MessageType.RESULT;
+                case BinaryProtocol.ERROR:
+                    return MessageType.ERROR;
+                case BinaryProtocol.OPPONENT_LEFT:
+                    return MessageType.OPPONENT_LEFT;
+                case BinaryProtocol.CLOSED:
+                    throw new EOFException("Server closed the session");
+                default:
+                    return MessageType.UNKNOWN;
+            }
+        }
+    }
+
+    /**
+     * One CONNECT_MUX connection carrying the sessions of several players
+     * Players write their frames themselves; one reader thread queues every incoming frame for its session.
+     */
+    private static final class Multiplexed {
+        private static final byte[] END = new byte[0];  // queued for every player when the connection ends
+
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final Map<Integer, BlockingQueue<byte[]>> inboxes = new ConcurrentHashMap<>();
+        private final AtomicInteger players;  // still to release() the connection
+
+        Multiplexed(int players) throws IOException {
+            this.socket = LoadGenerator.open();
+            this.players = new AtomicInteger(players);
+            try {
+                // Players may be quiet for longer than the read timeout while others play
+                socket.setSoTimeout(0);
+                this.in = new BufferedInputStream(socket.getInputStream());
+                this.out = socket.getOutputStream();
+                out.write((Protocol.CONNECT_MUX + "\n").getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            Thread reader = new Thread(this::read, "mux-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        void open(int session, String name) throws IOException {
+            inboxes.put(session, new LinkedBlockingQueue<>());
+            send(session, BinaryProtocol.createString(BinaryProtocol.OPEN, name));
+        }
+
+        void send(int session, byte[] frame) throws IOException {
+            byte[] muxed = BinaryProtocol.createMuxFrame(session, frame);
+            synchronized (out) {
+                out.write(muxed);
+            }
+        }
+
+        /**
+         * Wait for the next frame of a session, its session id taken off
+         */
+        byte[] take(int session) throws IOException {
+            byte[] frame;
+            try {
+                frame = inboxes.get(session).poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (frame == null) {
+                throw new SocketTimeoutException("Read timed out");
+            }
+            if (frame == END) {
+                throw new EOFException("Server closed the connection");
+            }
+            return frame;
+        }
+
+        /**
+         * A player is done with its session; the last one closes the connection
+         */
+        void release(int session) {
+            inboxes.remove(session);
+            if (players.decrementAndGet() == 0) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            }
+        }
+
+        private void read() {
+            byte[] header = new byte[BinaryProtocol.SESSION_BYTES];
+            byte[] buffer = new byte[MAX_LINE_LENGTH];
+            try {
+                while (true) {
+                    for (int i = 0; i < header.length; i++) {
+                        header[i] = (byte) readByte(in);
+                    }
+                    int length = readFrame(in, buffer);
+                    BlockingQueue<byte[]> inbox = inboxes.get(BinaryProtocol.readSession(header, 0));
+                    if (inbox != null) {
+                        inbox.add(Arrays.copyOf(buffer, length));
+                    }
+                }
+            } catch (IOException e) {
+                for (BlockingQueue<byte[]> inbox : inboxes.values()) {
+                    inbox.add(END);
+                }
+            }
+        }
+
+        /**
+         * Read one binary frame into buffer
+         * @return the frame length
+         */
+        static int readFrame(InputStream in, byte[] buffer) throws IOException {
+            int length = 0;
+            int total;
+            do {
+                buffer[length++] = (byte) readByte(in);
+            } while ((total = BinaryProtocol.frameLength(buffer, 0, length)) == 0);
+            if (total < 0) {
+                throw new IOException("Unknown frame type " + buffer[0]);
+            }
+            return total;
+        }
+
+        private static int readByte(InputStream in) throws IOException {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Server closed the connection");
+            }
+            return b;
+        }
+    }
+}
@@ -75,7 +75,7 @@ public class TestClient {
 
         switch (type) {
             case Protocol.WELCOME:
-                System.out.println("Successfully joined! " + content);
+                System.out.println("Successfully joined! " + Protocol.parseContent(content));
                 break;
 
             case Protocol.WAITING:
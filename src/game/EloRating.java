@@ -0,0 +1,42 @@
+package game;
+
+/**
+ * EloRating - Elo ratings for two-player games
+ *
+ * Every player starts at INITIAL. After a round the winner takes points from the loser,
+ * more when the loser was the favourite: the change is K * (score - expected score), where
+ * score is 1 for a win, 0.5 for a draw and 0 for a loss. Both players change by the same
+ * amount in opposite directions, so the average rating stays put.
+ */
+public final class EloRating {
+    public static final double INITIAL = 1500;
+    public static final double K = 32;
+
+    private EloRating() {
+    }
+
+    /**
+     * Chance (0..1) that a player rated rating beats one rated opponent, counting a draw as half
+     */
+    public static double expectedScore(double rating, double opponent) {
+        return 1 / (1 + Math.pow(10, (opponent - rating) / 400));
+    }
+
+    /**
+     * Rating change of the first player after one round; the second player changes by the negation
+     */
+    public static double change(double first, double second, GameResult result) {
+        double score;
+        switch (result) {
+            case PLAYER1_WINS:
+                score = 1;
+                break;
+            case PLAYER2_WINS:
+                score = 0;
+                break;
+            default:
+                score = 0.5;
+        }
+        return K * (score - expectedScore(first, second));
+    }
+}
@@ -3,22 +3,56 @@ package game;
 public class GameLogic {
     public enum Choice {ROCK, PAPER, SCISSORS}
 
-    public static String determineWinner(Choice p1, Choice p2) {
-        if (p1 == p2) return "DRAW";
-        if ((p1 == Choice.ROCK && p2 == Choice.SCISSORS)
-                || (p1 == Choice.PAPER && p2 == Choice.ROCK)
-                || (p1 == Choice.SCISSORS && p2 == Choice.PAPER)) {
-            return "PLAYER1_WINS";
+    private static final Choice[] CHOICES = Choice.values();
+
+    // Outcome table indexed by [p1.ordinal()][p2.ordinal()], built from the classic rules
+    private static final GameResult[][] OUTCOMES = new GameResult[CHOICES.length][CHOICES.length];
+
+    static {
+        for (Choice p1 : CHOICES) {
+            for (Choice p2 : CHOICES) {
+                OUTCOMES[p1.ordinal()][p2.ordinal()] = GameVariant.CLASSIC.resolve(p1.ordinal(), p2.ordinal());
+            }
         }
-        return "PLAYER2_WINS";
     }
 
-    public static boolean isValidChoice(String input) {
-        try {
-            Choice.valueOf(input.toUpperCase());
-            return true;
-        } catch (IllegalArgumentException e) {
-            return false;
+    public static GameResult determineWinner(Choice p1, Choice p2) {
+        return OUTCOMES[p1.ordinal()][p2.ordinal()];
+    }
+
+    /**
+     * Parse a choice from ASCII bytes, ignoring case, without allocating
+     * Returns null if the bytes are not ROCK, PAPER or SCISSORS
+     */
+    public static Choice parseChoice(byte[] bytes, int offset, int length) {
+        for (Choice choice : CHOICES) {
+            String name = choice.name();
+            if (name.length() != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && (bytes[offset + i] & 0xDF) == name.charAt(i)) {
+                i++;
+            }
+            if (i == length) {
+                return choice;
+            }
         }
+        return null;
+    }
+
+    /**
+     * Parse a choice, ignoring case, or return null if input is not ROCK, PAPER or SCISSORS
+     */
+    public static Choice parseChoice(String input) {
+        if (input == null) {
+            return null;
+        }
+        int choice = GameVariant.CLASSIC.parseChoice(input);
+        return choice >= 0 ? CHOICES[choice] : null;
+    }
+
+    public static boolean isValidChoice(String input) {
+        return parseChoice(input) != null;
     }
 }
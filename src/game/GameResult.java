@@ -1,4 +1,35 @@
 package game;
 
-public class GameResult {
+/**
+ * GameResult - Outcome of one round, from player 1's point of view
+ * code() is the compact form used by the bulk APIs in GameVariant
+ */
+public enum GameResult {
+    PLAYER1_WINS,
+    PLAYER2_WINS,
+    DRAW;
+
+    private static final GameResult[] BY_CODE = values();
+
+    /**
+     * The same result seen from player 2's side
+     */
+    public GameResult swapped() {
+        switch (this) {
+            case PLAYER1_WINS:
+                return PLAYER2_WINS;
+            case PLAYER2_WINS:
+                return PLAYER1_WINS;
+            default:
+                return DRAW;
+        }
+    }
+
+    public byte code() {
+        return (byte) ordinal();
+    }
+
+    public static GameResult fromCode(int code) {
+        return BY_CODE[code];
+    }
 }
@@ -0,0 +1,123 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * GameVariant - Rules of an N-choice Rock-Paper-Scissors game as an outcome table
+ *
+ * Choices are numbered 0..N-1 and every pair is looked up in a flat byte table of
+ * GameResult codes, so resolving a round is one array read. The bulk methods work on
+ * primitive arrays of choice codes for simulations that play millions of rounds.
+ *
+ * cyclic() builds the balanced games where every choice beats exactly half of the others:
+ * choice i beats choice j when (i - j) mod N is odd.
+ *   CLASSIC: ROCK, PAPER, SCISSORS (same order as GameLogic.Choice)
+ *   RPSLS:   ROCK, PAPER, SCISSORS, SPOCK, LIZARD
+ */
+public final class GameVariant {
+    public static final GameVariant CLASSIC = cyclic("ROCK", "PAPER", "SCISSORS");
+    public static final GameVariant RPSLS = cyclic("ROCK", "PAPER", "SCISSORS", "SPOCK", "LIZARD");
+
+    private final String[] names;
+    private final byte[] outcomes;  // [first * N + second] -> GameResult code
+
+    private GameVariant(String[] names, byte[] outcomes) {
+        this.names = names;
+        this.outcomes = outcomes;
+    }
+
+    /**
+     * A balanced game over an odd number of choices, listed so that each beats its predecessor
+     */
+    public static GameVariant cyclic(String... names) {
+        int n = names.length;
+        if (n < 3 || n % 2 == 0) {
+            throw new IllegalArgumentException("A balanced game needs an odd number of choices (at least 3), got " + n);
+        }
+        byte[] outcomes = new byte[n * n];
+        for (int first = 0; first < n; first++) {
+            for (int second = 0; second < n; second++) {
+                GameResult result;
+                if (first == second) {
+                    result = GameResult.DRAW;
+                } else if (Math.floorMod(first - second, n) % 2 == 1) {
+                    result = GameResult.PLAYER1_WINS;
+                } else {
+                    result = GameResult.PLAYER2_WINS;
+                }
+                outcomes[first * n + second] = result.code();
+            }
+        }
+        return new GameVariant(names.clone(), outcomes);
+    }
+
+    public int choiceCount() {
+        return names.length;
+    }
+
+    public String choiceName(int choice) {
+        return names[choice];
+    }
+
+    /**
+     * Choice code for a name, ignoring case, or -1 if this variant has no such choice
+     */
+    public int parseChoice(CharSequence name) {
+        for (int i = 0; i < names.length; i++) {
+            if (equalsIgnoreCase(names[i], name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean equalsIgnoreCase(String upperCase, CharSequence input) {
+        if (upperCase.length() != input.length()) {
+            return false;
+        }
+        for (int i = 0; i < upperCase.length(); i++) {
+            if (Character.toUpperCase(input.charAt(i)) != upperCase.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * GameResult code of one round
+     */
+    public byte outcome(int first, int second) {
+        return outcomes[first * names.length + second];
+    }
+
+    public GameResult resolve(int first, int second) {
+        return GameResult.fromCode(outcome(first, second));
+    }
+
+    /**
+     * Resolve count rounds at once: results[i] = outcome(first[i], second[i])
+     */
+    public void resolveAll(byte[] first, byte[] second, byte[] results, int count) {
+        int n = names.length;
+        for (int i = 0; i < count; i++) {
+            results[i] = outcomes[first[i] * n + second[i]];
+        }
+    }
+
+    /**
+     * Resolve count rounds and add them up: tally[code] += rounds with that GameResult code
+     * tally needs room for every code (GameResult.values().length)
+     */
+    public void tally(byte[] first, byte[] second, int count, long[] tally) {
+        int n = names.length;
+        for (int i = 0; i < count; i++) {
+            // Index by code instead of comparing - random outcomes would defeat the branch predictor
+            tally[outcomes[first[i] * n + second[i]]]++;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(names);
+    }
+}
@@ -0,0 +1,145 @@
+package game;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Match - Two paired players and the round they are playing, resolved without locks
+ *
+ * The whole round lives in one AtomicLong: each player's pending choice, the round number
+ * and a closed flag. Every transition is a single compare-and-set:
+ *
+ *   WAITING_BOTH  --first choice-->   ONE_SUBMITTED
+ *   ONE_SUBMITTED --second choice-->  resolved: both choices cleared, round + 1, back to WAITING_BOTH
+ *   any           --close()-->        CLOSED, later choices are rejected
+ *
+ * Only the thread whose CAS resolves a round reports it to the RoundListener, so each
+ * round is reported exactly once, even when both players submit at the same moment.
+ * A player may change their choice until the opponent has chosen.
+ */
+public final class Match<P> {
+    /**
+     * Told about every resolved round, on the thread of the player who completed it
+     */
+    public interface RoundListener<P> {
+        void roundResolved(Match<P> match, long round, GameLogic.Choice first, GameLogic.Choice second);
+    }
+
+    public enum State {WAITING_BOTH, ONE_SUBMITTED, CLOSED}
+
+    private static final GameLogic.Choice[] CHOICES = GameLogic.Choice.values();
+
+    // State layout: [round:55][closed:1][second choice + 1:4][first choice + 1:4]
+    private static final int CHOICE_BITS = 4;
+    private static final long CHOICE_MASK = (1L << CHOICE_BITS) - 1;
+    private static final int SECOND_SHIFT = CHOICE_BITS;
+    private static final long SLOTS = (1L << (2 * CHOICE_BITS)) - 1;
+    private static final long CLOSED = 1L << (2 * CHOICE_BITS);
+    private static final int ROUND_SHIFT = 2 * CHOICE_BITS + 1;
+
+    private final long id;
+    private final P first;
+    private final P second;
+    private final RoundListener<P> listener;
+    private final AtomicLong state = new AtomicLong();
+
+    public Match(long id, P first, P second, RoundListener<P> listener) {
+        this.id = id;
+        this.first = first;
+        this.second = second;
+        this.listener = listener;
+    }
+
+    /**
+     * Record a player's choice for the current round, resolving the round if the opponent
+     * has already chosen
+     * @return false if the match is closed
+     */
+    public boolean submit(P player, GameLogic.Choice choice) {
+        int shift = player == first ? 0 : SECOND_SHIFT;
+        int otherShift = SECOND_SHIFT - shift;
+        long code = choice.ordinal() + 1;
+
+        while (true) {
+            long current = state.get();
+            if ((current & CLOSED) != 0) {
+                return false;
+            }
+
+            long other = (current >>> otherShift) & CHOICE_MASK;
+            if (other == 0) {
+                // Opponent has not chosen yet: store (or replace) this player's choice
+                long next = (current & ~(CHOICE_MASK << shift)) | (code << shift);
+                if (state.compareAndSet(current, next)) {
+                    return true;
+                }
+            } else {
+                // Both chosen: clear the slots and move to the next round in one step
+                long next = (current & ~SLOTS) + (1L << ROUND_SHIFT);
+                if (state.compareAndSet(current, next)) {
+                    GameLogic.Choice otherChoice = CHOICES[(int) other - 1];
+                    long round = current >>> ROUND_SHIFT;
+                    if (player == first) {
+                        listener.roundResolved(this, round, choice, otherChoice);
+                    } else {
+                        listener.roundResolved(this, round, otherChoice, choice);
+                    }
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * End the match, e.g. when a player leaves; a pending choice is discarded
+     * @return true for the one call that closed it, false if it was already closed
+     */
+    public boolean close() {
+        long current;
+        do {
+            current = state.get();
+            if ((current & CLOSED) != 0) {
+                return false;
+            }
+        } while (!state.compareAndSet(current, (current & ~SLOTS) | CLOSED));
+        return true;
+    }
+
+    /**
+     * Whether this player has already chosen in the current round
+     */
+    public boolean hasChosen(P player) {
+        int shift = player == first ? 0 : SECOND_SHIFT;
+        return ((state.get() >>> shift) & CHOICE_MASK) != 0;
+    }
+
+    public State getState() {
+        long current = state.get();
+        if ((current & CLOSED) != 0) {
+            return State.CLOSED;
+        }
+        return (current & SLOTS) == 0 ? State.WAITING_BOTH : State.ONE_SUBMITTED;
+    }
+
+    /**
+     * Number of rounds resolved so far, which is also the number of the round being played
+     */
+    public long getRound() {
+        return state.get() >>> ROUND_SHIFT;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public P getFirst() {
+        return first;
+    }
+
+    public P getSecond() {
+        return second;
+    }
+
+    public P opponentOf(P player) {
+        return player == first ? second : first;
+    }
+}
@@ -0,0 +1,282 @@
+package game;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Strategies - The built-in Strategy implementations
+ *
+ *   RANDOM     uniformly random, the unexploitable baseline
+ *   ROCK       always the first choice
+ *   CYCLE      every choice in turn
+ *   COPY       the opponent's last choice (tit-for-tat)
+ *   BEAT_LAST  whatever beats the opponent's last choice
+ *   FREQUENCY  whatever beats the opponent's most frequent choice so far
+ *   MARKOV     whatever beats the choice the opponent most often made after its last one
+ *
+ * Adaptive strategies play randomly until they have something to go on. Each player is one
+ * small final class, so a tournament's inner loop makes a single call per player and round.
+ */
+public final class Strategies {
+    public static final Strategy RANDOM = new Named("RANDOM") {
+        @Override
+        public Strategy.Player newPlayer(GameVariant variant) {
+            return new Random(variant);
+        }
+    };
+
+    public static final Strategy ROCK = new Named("ROCK") {
+        @Override
+        public Strategy.Player newPlayer(GameVariant variant) {
+            return new Constant();
+        }
+    };
+
+    public static final Strategy CYCLE = new Named("CYCLE") {
+        @Override
+        public Strategy.Player newPlayer(GameVariant variant) {
+            return new Cycle(variant);
+        }
+    };
+
+    public static final Strategy COPY = new Named("COPY") {
+        @Override
+        public Strategy.Player newPlayer(GameVariant variant) {
+            return new Copy(variant);
+        }
+    };
+
+    public static final Strategy BEAT_LAST = new Named("BEAT_LAST") {
+        @Override
+        public Strategy.Player newPlayer(GameVariant variant) {
+            return new BeatLast(variant);
+        }
+    };
+
+    public static final Strategy FREQUENCY = new Named("FREQUENCY") {
+        @Override
+        public Strategy.Player newPlayer(GameVariant variant) {
+            return new Frequency(variant);
+        }
+    };
+
+    public static final Strategy MARKOV = new Named("MARKOV") {
+        @Override
+        public Strategy.Player newPlayer(GameVariant variant) {
+            return new Markov(variant);
+        }
+    };
+
+    private static final List<Strategy> ALL = Collections.unmodifiableList(
+        Arrays.asList(RANDOM, ROCK, CYCLE, COPY, BEAT_LAST, FREQUENCY, MARKOV));
+
+    private Strategies() {
+    }
+
+    public static List<Strategy> all() {
+        return ALL;
+    }
+
+    /**
+     * The built-in strategy with this name, ignoring case
+     * @throws IllegalArgumentException if there is none
+     */
+    public static Strategy byName(String name) {
+        for (Strategy strategy : ALL) {
+            if (strategy.getName().equalsIgnoreCase(name.trim())) {
+                return strategy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown strategy: " + name + " (one of " + ALL + ")");
+    }
+
+    /**
+     * For each choice, a choice that beats it
+     */
+    static int[] counters(GameVariant variant) {
+        int choices = variant.choiceCount();
+        int[] beats = new int[choices];
+        for (int choice = 0; choice < choices; choice++) {
+            for (int answer = 0; answer < choices; answer++) {
+                if (variant.outcome(answer, choice) == GameResult.PLAYER1_WINS.code()) {
+                    beats[choice] = answer;
+                    break;
+                }
+            }
+        }
+        return beats;
+    }
+
+    private static int mostFrequent(int[] counts, int from, int length) {
+        int best = 0;
+        for (int i = 1; i < length; i++) {
+            if (counts[from + i] > counts[from + best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private abstract static class Named implements Strategy {
+        private final String name;
+
+        Named(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final class Random implements Strategy.Player {
+        private final int choices;
+
+        Random(GameVariant variant) {
+            this.choices = variant.choiceCount();
+        }
+
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public int next(int theirLast, SplittableRandom random) {
+            return random.nextInt(choices);
+        }
+    }
+
+    private static final class Constant implements Strategy.Player {
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public int next(int theirLast, SplittableRandom random) {
+            return 0;
+        }
+    }
+
+    private static final class Cycle implements Strategy.Player {
+        private final int choices;
+        private int mine = -1;
+
+        Cycle(GameVariant variant) {
+            this.choices = variant.choiceCount();
+        }
+
+        @Override
+        public void reset() {
+            mine = -1;
+        }
+
+        @Override
+        public int next(int theirLast, SplittableRandom random) {
+            mine = mine + 1 < choices ? mine + 1 : 0;
+            return mine;
+        }
+    }
+
+    private static final class Copy implements Strategy.Player {
+        private final int choices;
+
+        Copy(GameVariant variant) {
+            this.choices = variant.choiceCount();
+        }
+
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public int next(int theirLast, SplittableRandom random) {
+            return theirLast >= 0 ? theirLast : random.nextInt(choices);
+        }
+    }
+
+    private static final class BeatLast implements Strategy.Player {
+        private final int choices;
+        private final int[] beats;
+
+        BeatLast(GameVariant variant) {
+            this.choices = variant.choiceCount();
+            this.beats = counters(variant);
+        }
+
+        @Override
+        public void reset() {
+        }
+
+        @Override
+        public int next(int theirLast, SplittableRandom random) {
+            return theirLast >= 0 ? beats[theirLast] : random.nextInt(choices);
+        }
+    }
+
+    private static final class Frequency implements Strategy.Player {
+        private final int choices;
+        private final int[] beats;
+        private final int[] counts;
+
+        Frequency(GameVariant variant) {
+            this.choices = variant.choiceCount();
+            this.beats = counters(variant);
+            this.counts = new int[choices];
+        }
+
+        @Override
+        public void reset() {
+            Arrays.fill(counts, 0);
+        }
+
+        @Override
+        public int next(int theirLast, SplittableRandom random) {
+            if (theirLast < 0) {
+                return random.nextInt(choices);
+            }
+            counts[theirLast]++;
+            return beats[mostFrequent(counts, 0, choices)];
+        }
+    }
+
+    private static final class Markov implements Strategy.Player {
+        private final int choices;
+        private final int[] beats;
+        private final int[] transitions;  // [previous * N + next] -> times the opponent followed previous with next
+        private int previous = -1;
+
+        Markov(GameVariant variant) {
+            this.choices = variant.choiceCount();
+            this.beats = counters(variant);
+            this.transitions = new int[choices * choices];
+        }
+
+        @Override
+        public void reset() {
+            Arrays.fill(transitions, 0);
+            previous = -1;
+        }
+
+        @Override
+        public int next(int theirLast, SplittableRandom random) {
+            if (theirLast < 0) {
+                return random.nextInt(choices);
+            }
+            if (previous >= 0) {
+                transitions[previous * choices + theirLast]++;
+            }
+            previous = theirLast;
+            int from = theirLast * choices;
+            int predicted = mostFrequent(transitions, from, choices);
+            return transitions[from + predicted] > 0 ? beats[predicted] : random.nextInt(choices);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package game;
+
+import java.util.SplittableRandom;
+
+/**
+ * Strategy - A way of playing, for bots and the offline Tournament
+ *
+ * A Strategy holds no state of its own; each player using it gets a Player, which is
+ * reset() before every match and asked for one choice per round. Choices are GameVariant
+ * choice codes, so the same strategies play any variant.
+ */
+public interface Strategy {
+    String getName();
+
+    /**
+     * A player for matches of variant, reusable from one match to the next
+     */
+    Player newPlayer(GameVariant variant);
+
+    /**
+     * One player's memory of the current match; used by one thread at a time
+     */
+    interface Player {
+        /**
+         * Forget the last match
+         */
+        void reset();
+
+        /**
+         * Choice for the next round, told what the opponent played in the last one (-1 before the first)
+         * random is the match's, for strategies that need one
+         */
+        int next(int theirLast, SplittableRandom random);
+    }
+}
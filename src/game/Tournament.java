@@ -0,0 +1,426 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Tournament - Offline leagues of Strategies, played in-process on all cores
+ *
+ * ROUND_ROBIN: every pair of strategies plays matchesPerPairing matches of roundsPerMatch rounds.
+ * BRACKET:     single elimination in a bracket drawn from the seed; each pairing plays
+ *              matchesPerPairing matches and the side that wins more goes through (then more
+ *              rounds won, then the higher draw position).
+ *
+ * The matches of a stage are split across a ForkJoinPool. Each leaf task gets its own
+ * Players and one flat long[] of tallies (see the column constants), and the tallies of
+ * two halves are summed when they join. Every match seeds its own SplittableRandom from the
+ * tournament seed and the match's position, so the results are the same however the work
+ * was split and on however many threads it ran.
+ *
+ * Rounds are resolved with the GameVariant outcome table that GameLogic is built on.
+ *
+ * Usage: java -Drps.tournament.format=roundrobin -Drps.tournament.matches=1000 -cp out game.Tournament
+ */
+public final class Tournament {
+    public enum Format {ROUND_ROBIN, BRACKET}
+
+    // Columns of the tally row kept for each strategy
+    public static final int ROUND_WINS = 0;
+    public static final int ROUND_LOSSES = 1;
+    public static final int ROUND_DRAWS = 2;
+    public static final int MATCH_WINS = 3;
+    public static final int MATCH_LOSSES = 4;
+    public static final int MATCH_DRAWS = 5;
+    private static final int COLUMNS = 6;
+
+    // Leaf tasks play about this many rounds before splitting stops paying off
+    private static final int ROUNDS_PER_LEAF = 1 << 16;
+
+    private final GameVariant variant;
+    private final List<Strategy> strategies;
+    private final int matchesPerPairing;
+    private final int roundsPerMatch;
+    private final long seed;
+    private final ForkJoinPool pool;
+
+    public Tournament(GameVariant variant, List<Strategy> strategies, int matchesPerPairing, int roundsPerMatch,
+                      long seed, ForkJoinPool pool) {
+        if (strategies.size() < 2) {
+            throw new IllegalArgumentException("A tournament needs at least two strategies");
+        }
+        if (matchesPerPairing < 1 || roundsPerMatch < 1) {
+            throw new IllegalArgumentException("Matches per pairing and rounds per match must be positive");
+        }
+        this.variant = variant;
+        this.strategies = Collections.unmodifiableList(new ArrayList<>(strategies));
+        this.matchesPerPairing = matchesPerPairing;
+        this.roundsPerMatch = roundsPerMatch;
+        this.seed = seed;
+        this.pool = pool;
+    }
+
+    public static void main(String[] args) {
+        Format format = System.getProperty("rps.tournament.format", "roundrobin").equalsIgnoreCase("bracket")
+            ? Format.BRACKET : Format.ROUND_ROBIN;
+        String names = System.getProperty("rps.tournament.strategies", "all");
+        List<Strategy> strategies = new ArrayList<>();
+        if (names.equalsIgnoreCase("all")) {
+            strategies.addAll(Strategies.all());
+        } else {
+            for (String name : names.split(",")) {
+                strategies.add(Strategies.byName(name));
+            }
+        }
+        GameVariant variant = System.getProperty("rps.tournament.variant", "classic").equalsIgnoreCase("rpsls")
+            ? GameVariant.RPSLS : GameVariant.CLASSIC;
+        int matches = Integer.getInteger("rps.tournament.matches", 10_000);
+        int rounds = Integer.getInteger("rps.tournament.rounds", 100);
+        long seed = Long.getLong("rps.tournament.seed", 42);
+        int parallelism = Integer.getInteger("rps.tournament.parallelism", Runtime.getRuntime().availableProcessors());
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        Tournament tournament = new Tournament(variant, strategies, matches, rounds, seed, pool);
+        System.out.println("=== " + format + " of " + strategies.size() + " strategies, " + variant + " ===");
+        System.out.println(matches + " matches per pairing x " + rounds + " rounds, seed " + seed
+            + ", " + parallelism + " threads");
+
+        long start = System.nanoTime();
+        Result result = tournament.run(format);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        System.out.println();
+        System.out.print(result.table());
+        System.out.printf("%n%,d rounds in %.2fs (%,.0f rounds/sec)%n", result.getRounds(), seconds,
+            result.getRounds() / seconds);
+    }
+
+    public Result run(Format format) {
+        return format == Format.BRACKET ? bracket() : roundRobin();
+    }
+
+    private Result roundRobin() {
+        int n = strategies.size();
+        int pairings = n * (n - 1) / 2;
+        int[] first = new int[pairings];
+        int[] second = new int[pairings];
+        int pairing = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                first[pairing] = i;
+                second[pairing] = j;
+                pairing++;
+            }
+        }
+        long[] tallies = play(first, second, 0);
+        return new Result(Format.ROUND_ROBIN, strategies, tallies, null);
+    }
+
+    private Result bracket() {
+        int n = strategies.size();
+        int size = Integer.highestOneBit(n - 1) << 1;
+
+        // Draw shuffled from the seed. More than half the places are taken, so pairing place p
+        // with place size / 2 + p gives every bye (-1) a real opponent
+        int[] draw = new int[n];
+        for (int i = 0; i < n; i++) {
+            draw[i] = i;
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = draw[i];
+            draw[i] = draw[j];
+            draw[j] = swap;
+        }
+        int[] bracket = new int[size];
+        for (int p = 0; p < size / 2; p++) {
+            bracket[2 * p] = draw[p];
+            bracket[2 * p + 1] = size / 2 + p < n ? draw[size / 2 + p] : -1;
+        }
+
+        long[] tallies = new long[n * COLUMNS];
+        int[] reached = new int[n];  // bracket stage each strategy went out in (stages + 1 for the winner)
+        int stage = 0;
+        int[] alive = bracket;
+        while (alive.length > 1) {
+            stage++;
+            int pairs = alive.length / 2;
+            int[] first = new int[pairs];
+            int[] second = new int[pairs];
+            int played = 0;
+            int[] next = new int[pairs];
+            for (int p = 0; p < pairs; p++) {
+                int a = alive[2 * p];
+                int b = alive[2 * p + 1];
+                if (a >= 0 && b >= 0) {
+                    first[played] = a;
+                    second[played] = b;
+                    played++;
+                }
+                next[p] = a >= 0 ? a : b;  // a bye goes straight through; real pairings are decided below
+            }
+            long[] stageTallies = play(Arrays.copyOf(first, played), Arrays.copyOf(second, played), stage);
+            for (int i = 0; i < tallies.length; i++) {
+                tallies[i] += stageTallies[i];
+            }
+            for (int p = 0; p < pairs; p++) {
+                int a = alive[2 * p];
+                int b = alive[2 * p + 1];
+                if (a < 0 || b < 0) {
+                    continue;
+                }
+                // Each plays one pairing per stage, so its stage tallies are that series
+                boolean firstThrough = compare(stageTallies, a, b) >= 0;
+                next[p] = firstThrough ? a : b;
+                reached[firstThrough ? b : a] = stage;
+            }
+            alive = next;
+        }
+        if (alive[0] >= 0) {
+            reached[alive[0]] = stage + 1;
+        }
+        return new Result(Format.BRACKET, strategies, tallies, reached);
+    }
+
+    private static int compare(long[] tallies, int a, int b) {
+        int byMatches = Long.compare(tallies[a * COLUMNS + MATCH_WINS], tallies[b * COLUMNS + MATCH_WINS]);
+        if (byMatches != 0) {
+            return byMatches;
+        }
+        return Long.compare(tallies[a * COLUMNS + ROUND_WINS], tallies[b * COLUMNS + ROUND_WINS]);
+    }
+
+    /**
+     * Play matchesPerPairing matches of every pairing first[i] vs second[i]
+     * @param stage part of every match's seed, so each stage of a bracket plays different matches
+     */
+    private long[] play(int[] first, int[] second, int stage) {
+        long matches = (long) first.length * matchesPerPairing;
+        long matchesPerLeaf = Math.max(1, ROUNDS_PER_LEAF / roundsPerMatch);
+        return pool.invoke(new Stage(first, second, stage, 0, matches, matchesPerLeaf));
+    }
+
+    /**
+     * Matches [from, to) of one stage; match m is game m % matchesPerPairing of pairing m / matchesPerPairing
+     */
+    private final class Stage extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] first;
+        private final int[] second;
+        private final int stage;
+        private final long from;
+        private final long to;
+        private final long matchesPerLeaf;
+
+        Stage(int[] first, int[] second, int stage, long from, long to, long matchesPerLeaf) {
+            this.first = first;
+            this.second = second;
+            this.stage = stage;
+            this.from = from;
+            this.to = to;
+            this.matchesPerLeaf = matchesPerLeaf;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from > matchesPerLeaf) {
+                long middle = (from + to) >>> 1;
+                Stage left = new Stage(first, second, stage, from, middle, matchesPerLeaf);
+                Stage right = new Stage(first, second, stage, middle, to, matchesPerLeaf);
+                left.fork();
+                long[] tallies = right.compute();
+                long[] leftTallies = left.join();
+                for (int i = 0; i < tallies.length; i++) {
+                    tallies[i] += leftTallies[i];
+                }
+                return tallies;
+            }
+            return playLeaf();
+        }
+
+        private long[] playLeaf() {
+            long[] tallies = new long[strategies.size() * COLUMNS];
+            Strategy.Player[] players = new Strategy.Player[strategies.size()];
+            int[] outcomes = new int[GameResult.values().length];
+            int firstWins = GameResult.PLAYER1_WINS.code();
+            int secondWins = GameResult.PLAYER2_WINS.code();
+            int draws = GameResult.DRAW.code();
+
+            for (long match = from; match < to; match++) {
+                int pairing = (int) (match / matchesPerPairing);
+                int a = first[pairing];
+                int b = second[pairing];
+                Strategy.Player playerA = player(players, a);
+                Strategy.Player playerB = player(players, b);
+                playerA.reset();
+                playerB.reset();
+                SplittableRandom random = new SplittableRandom(matchSeed(stage, match));
+                Arrays.fill(outcomes, 0);
+
+                int choiceA = -1;
+                int choiceB = -1;
+                for (int round = 0; round < roundsPerMatch; round++) {
+                    int nextA = playerA.next(choiceB, random);
+                    choiceB = playerB.next(choiceA, random);
+                    choiceA = nextA;
+                    outcomes[variant.outcome(choiceA, choiceB)]++;
+                }
+
+                int rowA = a * COLUMNS;
+                int rowB = b * COLUMNS;
+                tallies[rowA + ROUND_WINS] += outcomes[firstWins];
+                tallies[rowA + ROUND_LOSSES] += outcomes[secondWins];
+                tallies[rowA + ROUND_DRAWS] += outcomes[draws];
+                tallies[rowB + ROUND_WINS] += outcomes[secondWins];
+                tallies[rowB + ROUND_LOSSES] += outcomes[firstWins];
+                tallies[rowB + ROUND_DRAWS] += outcomes[draws];
+                if (outcomes[firstWins] > outcomes[secondWins]) {
+                    tallies[rowA + MATCH_WINS]++;
+                    tallies[rowB + MATCH_LOSSES]++;
+                } else if (outcomes[firstWins] < outcomes[secondWins]) {
+                    tallies[rowB + MATCH_WINS]++;
+                    tallies[rowA + MATCH_LOSSES]++;
+                } else {
+                    tallies[rowA + MATCH_DRAWS]++;
+                    tallies[rowB + MATCH_DRAWS]++;
+                }
+            }
+            return tallies;
+        }
+
+        private Strategy.Player player(Strategy.Player[] players, int strategy) {
+            Strategy.Player player = players[strategy];
+            if (player == null) {
+                player = strategies.get(strategy).newPlayer(variant);
+                players[strategy] = player;
+            }
+            return player;
+        }
+    }
+
+    /**
+     * Seed of one match, from the tournament seed and where the match sits (SplitMix64 finalizer)
+     */
+    private long matchSeed(int stage, long match) {
+        long z = seed + 0x9E3779B97F4A7C15L * (((long) stage << 40) ^ match) + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Final tallies: one row of COLUMNS counts per strategy, in the order they were given
+     */
+    public static final class Result {
+        private final Format format;
+        private final List<Strategy> strategies;
+        private final long[] tallies;
+        private final int[] reached;
+
+        Result(Format format, List<Strategy> strategies, long[] tallies, int[] reached) {
+            this.format = format;
+            this.strategies = strategies;
+            this.tallies = tallies;
+            this.reached = reached;
+        }
+
+        public long get(int strategy, int column) {
+            return tallies[strategy * COLUMNS + column];
+        }
+
+        /**
+         * Rounds played in the whole tournament
+         */
+        public long getRounds() {
+            long rounds = 0;
+            for (int strategy = 0; strategy < strategies.size(); strategy++) {
+                rounds += get(strategy, ROUND_WINS) + get(strategy, ROUND_LOSSES) + get(strategy, ROUND_DRAWS);
+            }
+            return rounds / 2;
+        }
+
+        /**
+         * Bracket stage the strategy went out in, one more than the last stage for the winner
+         * @throws IllegalStateException for a round robin
+         */
+        public int getReached(int strategy) {
+            if (reached == null) {
+                throw new IllegalStateException("Only a bracket has stages");
+            }
+            return reached[strategy];
+        }
+
+        /**
+         * Strategies best first: furthest bracket stage, then match points (2 per win, 1 per draw),
+         * then round wins minus losses, then the order they were given in
+         */
+        public int[] ranking() {
+            Integer[] order = new Integer[strategies.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> {
+                if (reached != null && reached[a] != reached[b]) {
+                    return Integer.compare(reached[b], reached[a]);
+                }
+                int byPoints = Long.compare(points(b), points(a));
+                if (byPoints != 0) {
+                    return byPoints;
+                }
+                return Long.compare(roundMargin(b), roundMargin(a));
+            });
+            int[] ranking = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                ranking[i] = order[i];
+            }
+            return ranking;
+        }
+
+        private long points(int strategy) {
+            return 2 * get(strategy, MATCH_WINS) + get(strategy, MATCH_DRAWS);
+        }
+
+        private long roundMargin(int strategy) {
+            return get(strategy, ROUND_WINS) - get(strategy, ROUND_LOSSES);
+        }
+
+        /**
+         * The standings as a text table
+         */
+        public String table() {
+            StringBuilder out = new StringBuilder();
+            out.append(String.format("%-4s %-10s %10s %10s %10s %8s %14s%s%n", "#", "Strategy", "Won", "Lost",
+                "Drawn", "Points", "Round margin", reached != null ? "  Reached" : ""));
+            int place = 1;
+            for (int strategy : ranking()) {
+                out.append(String.format("%-4d %-10s %10d %10d %10d %8d %+14d%s%n", place++,
+                    strategies.get(strategy).getName(), get(strategy, MATCH_WINS), get(strategy, MATCH_LOSSES),
+                    get(strategy, MATCH_DRAWS), points(strategy), roundMargin(strategy),
+                    reached != null ? "  " + stageName(reached[strategy]) : ""));
+            }
+            return out.toString();
+        }
+
+        private String stageName(int stage) {
+            int last = 0;
+            for (int value : reached) {
+                last = Math.max(last, value);
+            }
+            if (stage == last) {
+                return "winner";
+            }
+            return stage == last - 1 ? "final" : "stage " + stage;
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AdmissionControl - Decides which connections the server takes on, before any handler exists
+ *
+ * A connection is refused while rps.admit.maxSessions connections are open, or when its
+ * address has opened connections faster than its connect TokenBucket allows; it is sent a
+ * text ERROR and closed straight away on the accepting thread, so a flood never gets a
+ * thread or a reactor slot. Once in, every line or frame takes a token from the address's
+ * message bucket, and a connection that finds it empty is shed (ERROR, then closed) - one
+ * noisy address cannot take the latency of everyone else down with it.
+ *
+ * Every session on a multiplexed connection holds a slot of its own (see Multiplexer) and
+ * takes its frames' tokens from a message bucket of its own, so a connection carrying
+ * hundreds of players is not held to the rate of one. Frames no session answers for (a
+ * repeated or refused OPEN, frames for ended sessions) draw on the address's bucket, and
+ * are dropped rather than shedding the connection once it is empty.
+ *
+ * Loopback addresses only count towards the session limit unless rps.admit.limitLoopback
+ * is set, so local load generators and benchmarks are not throttled.
+ */
+final class AdmissionControl {
+    private static final long SWEEP_INTERVAL = TimeUnit.SECONDS.toNanos(30);
+    private static final byte[] BUSY = WireFormat.TEXT.error(WireFormat.SERVER_BUSY);
+
+    /**
+     * Why a connection was refused
+     */
+    enum Refusal {MAX_SESSIONS, CONNECT_RATE}
+
+    private static final AtomicInteger sessions = new AtomicInteger();
+    private static final Map<InetAddress, Source> sources = new ConcurrentHashMap<>();
+
+    // Shared by every address the per-address limits do not apply to
+    private static final Source UNLIMITED = new Source(null, null);
+
+    static {
+        TimerWheel timers = GameServer.timers();
+        timers.schedule(new Sweeper(), timers.now() + SWEEP_INTERVAL);
+    }
+
+    private AdmissionControl() {
+    }
+
+    /**
+     * The limits and open connections of one remote address
+     */
+    static final class Source {
+        private static final int SWEPT = Integer.MIN_VALUE;  // open count once the Sweeper has taken it
+
+        private final TokenBucket connects;
+        private final TokenBucket messages;
+        private final AtomicInteger open = new AtomicInteger();
+
+        private Source(TokenBucket connects, TokenBucket messages) {
+            this.connects = connects;
+            this.messages = messages;
+        }
+
+        private Source(long now) {
+            this(limit(ServerConfig.ADMIT_CONNECTS_PER_SECOND, ServerConfig.ADMIT_CONNECT_BURST, now),
+                limit(ServerConfig.ADMIT_MESSAGES_PER_SECOND, ServerConfig.ADMIT_MESSAGE_BURST, now));
+        }
+
+        private static TokenBucket limit(double ratePerSecond, int burst, long now) {
+            return ratePerSecond > 0 ? new TokenBucket(ratePerSecond, burst, now) : null;
+        }
+
+        /**
+         * @return false if this address is sending faster than allowed and the message should be shed
+         */
+        boolean allowMessage() {
+            return messages == null || messages.tryTake(GameServer.timers().now());
+        }
+
+        /**
+         * Count one more connection open here
+         * @return false if the Sweeper took this Source meanwhile; look the address up again
+         */
+        private boolean enter() {
+            while (true) {
+                int current = open.get();
+                if (current == SWEPT) {
+                    return false;
+                }
+                if (open.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return true if nothing is open and the buckets have filled up again; the Source can
+         * then no longer be entered and must be removed
+         */
+        private boolean sweep(long now) {
+            return (connects == null || connects.isFull(now)) && (messages == null || messages.isFull(now))
+                && open.compareAndSet(0, SWEPT);
+        }
+    }
+
+    /**
+     * Take on a connection from address, counting it as an open session
+     * @return its Source, to be handed back with release(), or null if it must be refused
+     */
+    static Source admit(InetAddress address) {
+        int max = ServerConfig.ADMIT_MAX_SESSIONS;
+        if (sessions.incrementAndGet() > max && max > 0) {
+            sessions.decrementAndGet();
+            return refuse(Refusal.MAX_SESSIONS, address);
+        }
+
+        if (address == null || !ServerConfig.ADMIT_LIMIT_LOOPBACK && address.isLoopbackAddress()) {
+            UNLIMITED.open.incrementAndGet();
+            return UNLIMITED;
+        }
+        long now = System.nanoTime();
+        Source source = enter(address, now);
+        if (source.connects != null && !source.connects.tryTake(now)) {
+            source.open.decrementAndGet();
+            sessions.decrementAndGet();
+            return refuse(Refusal.CONNECT_RATE, address);
+        }
+        return source;
+    }
+
+    /**
+     * The Source of address, with one more connection counted open on it
+     * A Source the Sweeper takes in the meantime is never used: the next lookup starts a fresh one
+     */
+    private static Source enter(InetAddress address, long now) {
+        while (true) {
+            Source source = sources.computeIfAbsent(address, key -> new Source(now));
+            if (source.enter()) {
+                return source;
+            }
+            sources.remove(address, source);
+        }
+    }
+
+    /**
+     * Take on one more session on a connection that is already in, held until releaseSession()
+     * @return false if rps.admit.maxSessions sessions are open
+     */
+    static boolean admitSession() {
+        int max = ServerConfig.ADMIT_MAX_SESSIONS;
+        if (sessions.incrementAndGet() > max && max > 0) {
+            sessions.decrementAndGet();
+            ServerMetrics.refused(Refusal.MAX_SESSIONS);
+            return false;
+        }
+        return true;
+    }
+
+    static void releaseSession() {
+        sessions.decrementAndGet();
+    }
+
+    /**
+     * The message bucket of one session on a multiplexed connection admitted with source
+     * @return null if source's messages are not limited
+     */
+    static TokenBucket sessionMessages(Source source) {
+        if (source == null || source.messages == null) {
+            return null;
+        }
+        return new TokenBucket(ServerConfig.ADMIT_MESSAGES_PER_SECOND, ServerConfig.ADMIT_MESSAGE_BURST,
+            GameServer.timers().now());
+    }
+
+    private static Source refuse(Refusal refusal, InetAddress address) {
+        ServerMetrics.refused(refusal);
+        ServerLog.log(ServerLog.Level.DEBUG, "connection-refused", null, ServerLog.NO_MATCH,
+            refusal.name(), String.valueOf(address));
+        return null;
+    }
+
+    /**
+     * A connection admitted with source has closed
+     */
+    static void release(Source source) {
+        if (source != null) {
+            source.open.decrementAndGet();
+            sessions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Tell a refused client the server is busy and close it, without waiting on it
+     */
+    static void turnAway(Socket socket) {
+        try (Socket closing = socket) {
+            closing.getOutputStream().write(BUSY);
+            closing.shutdownOutput();
+            // Unread input would turn the close into a reset that can overtake the ERROR
+            InputStream in = closing.getInputStream();
+            in.skip(in.available());
+        } catch (IOException e) {
+            // Gone already, nothing to tell
+        }
+    }
+
+    static void turnAway(SocketChannel channel) {
+        try (SocketChannel closing = channel) {
+            closing.write(ByteBuffer.wrap(BUSY));
+            closing.shutdownOutput();
+            ByteBuffer unread = ByteBuffer.allocate(256);
+            closing.configureBlocking(false);
+            while (closing.read(unread) > 0) {
+                unread.clear();
+            }
+        } catch (IOException e) {
+            // Gone already, nothing to tell
+        }
+    }
+
+    static int getSessionCount() {
+        return sessions.get();
+    }
+
+    /**
+     * Forgets addresses with nothing open whose buckets have filled up again
+     */
+    private static final class Sweeper extends TimerWheel.Timeout {
+        @Override
+        protected long expired(long now) {
+            for (Map.Entry<InetAddress, Source> entry : sources.entrySet()) {
+                if (entry.getValue().sweep(now)) {
+                    sources.remove(entry.getKey(), entry.getValue());
+                }
+            }
+            return now + SWEEP_INTERVAL;
+        }
+    }
+}
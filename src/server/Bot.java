@@ -0,0 +1,87 @@
+package server;
+
+import game.Strategies;
+import game.Strategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bot - In-process opponents for players nobody else has been paired with
+ *
+ * GameServer makes this the Matchmaker's SpillListener when it runs without a cluster: a
+ * player still waiting after rps.bot.delayMillis is taken out of the lobby and paired with
+ * a bot, one of rps.bot.strategies picked at random. The bot is an ordinary ClientHandler
+ * whose connection goes nowhere; it submits its next choice as soon as a round resolves,
+ * from its Strategy.Player's fixed-size state, so a bot round allocates nothing. Rounds
+ * against bots are not rated and do not count towards the leaderboard.
+ */
+final class Bot implements Connection {
+    private static final List<Strategy> STRATEGIES = parse(ServerConfig.BOT_STRATEGIES);
+
+    private final AtomicBoolean open = new AtomicBoolean(true);
+
+    private Bot() {
+    }
+
+    private static List<Strategy> parse(String names) {
+        List<Strategy> strategies = new ArrayList<>();
+        for (String name : names.split(",")) {
+            if (!name.trim().isEmpty()) {
+                strategies.add(Strategies.byName(name));
+            }
+        }
+        if (strategies.isEmpty()) {
+            strategies.add(Strategies.RANDOM);
+        }
+        return strategies;
+    }
+
+    /**
+     * Matchmaker.SpillListener: pair a player who waited too long with a new bot, on the matchmaker thread
+     */
+    static void spilled(ClientHandler player, double rating, long waitedNanos) {
+        if (player.isCleanedUp()) {
+            return;
+        }
+        SplittableRandom random = new SplittableRandom(ThreadLocalRandom.current().nextLong());
+        Strategy strategy = STRATEGIES.get(random.nextInt(STRATEGIES.size()));
+        // Dated from the player's arrival, so the time-to-pair histogram sees the player's wait, not zero
+        ClientHandler bot = ClientHandler.bot(new Bot(), strategy, random, player.getWaitingSince());
+
+        if (GameServer.startMatch(player, rating, bot, rating)) {
+            ServerMetrics.botMatchStarted();
+            bot.playBot(-1);
+        } else if (!player.isCleanedUp()) {
+            GameServer.enqueue(player, rating);
+        }
+    }
+
+    @Override
+    public void send(byte[] frame) {
+        // The bot follows its match, not the frames
+    }
+
+    @Override
+    public void close() {
+        open.set(false);
+    }
+
+    @Override
+    public void closeAfterFlush() {
+        close();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open.get();
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return "bot";
+    }
+}
@@ -1,75 +1,367 @@
 package server;
 
 import game.GameLogic;
+import game.GameResult;
+import game.GameVariant;
+import game.Match;
+import game.Strategy;
+import utils.BinaryProtocol;
+import utils.MessageType;
 import utils.Protocol;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * ClientHandler - Handles one client connection in a separate thread
- * Each client gets their own ClientHandler instance running in its own thread
+ * ClientHandler - Handles one client connection
+ * In thread mode each client gets their own ClientHandler running in its own thread,
+ * in NIO mode a Reactor feeds it lines through handleMessage()
+ *
+ * A session outlives its connection: when the connection drops, the handler stays in its
+ * match or the lobby for rps.session.graceMillis, and a client that reconnects with
+ * "RESUME:token" gets it back. The new connection's own handler then only forwards to it.
+ * A connection that sent CONNECT_MUX forwards the same way, to many sessions (see Multiplexer);
+ * those end with it and get no token, so no other connection can take them over.
  */
 public class ClientHandler implements Runnable {
-    private Socket socket;
-    private BufferedReader in;
-    private PrintWriter out;
-    private String playerName;
-    private String choice;
-    private ClientHandler opponent;
-    private boolean isReady = false;
-
-    public ClientHandler(Socket socket) {
-        this.socket = socket;
+    private static final GameLogic.Choice[] CHOICES = GameLogic.Choice.values();
+
+    // Timeouts in System.nanoTime() units, 0 when switched off
+    private static final long CHOICE_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(ServerConfig.CHOICE_TIMEOUT_MILLIS);
+    private static final long LOBBY_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(ServerConfig.LOBBY_TIMEOUT_MILLIS);
+    private static final long SILENT_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(ServerConfig.SILENT_TIMEOUT_MILLIS);
+    private static final long RESUME_GRACE = TimeUnit.MILLISECONDS.toNanos(ServerConfig.RESUME_GRACE_MILLIS);
+
+    /**
+     * What to do with one text message; its content is bytes[start, end)
+     */
+    private interface MessageAction {
+        void handle(ClientHandler handler, byte[] bytes, int start, int end);
+    }
+
+    // Dispatch table indexed by MessageType.ordinal()
+    private static final MessageAction[] DISPATCH = new MessageAction[MessageType.values().length];
+
+    static {
+        Arrays.fill(DISPATCH, (MessageAction) (handler, bytes, start, end) ->
+            handler.reject(ServerMetrics.ErrorType.UNKNOWN_COMMAND, WireFormat.UNKNOWN_COMMAND));
+        DISPATCH[MessageType.CONNECT.ordinal()] = (handler, bytes, start, end) ->
+            handler.handleConnect(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+        DISPATCH[MessageType.CONNECT_BINARY.ordinal()] = (handler, bytes, start, end) -> {
+            // Everything after this line is binary, in both directions
+            handler.format = WireFormat.BINARY;
+            handler.handleConnect(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+        };
+        DISPATCH[MessageType.CONNECT_MUX.ordinal()] = (handler, bytes, start, end) -> handler.handleConnectMux();
+        DISPATCH[MessageType.CHOICE.ordinal()] = (handler, bytes, start, end) ->
+            handler.handleChoice(GameLogic.parseChoice(bytes, start, end - start));
+        DISPATCH[MessageType.DISCONNECT.ordinal()] = (handler, bytes, start, end) -> handler.cleanup();
+        DISPATCH[MessageType.RESUME.ordinal()] = (handler, bytes, start, end) ->
+            handler.handleResume(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+        DISPATCH[MessageType.LEADERBOARD.ordinal()] = (handler, bytes, start, end) ->
+            handler.handleLeaderboard(Leaderboard.Ranking.parse(new String(bytes, start, end - start, StandardCharsets.UTF_8)));
+    }
+
+    private volatile Connection connection;  // replaced when the session is resumed
+    private SocketConnection socketConnection;
+    private final AtomicBoolean cleanedUp = new AtomicBoolean();
+    private volatile String playerName;
+    private volatile long playerId;            // RoundJournal.playerId(playerName)
+    private volatile Match<ClientHandler> match;  // owns the round while paired
+    private volatile long matchId = ServerLog.NO_MATCH;
+    private volatile WireFormat format = WireFormat.TEXT;
+    private volatile ClusterNode.Relay relay;  // set while playing a match hosted by another node
+    private Strategy.Player bot;               // set for an in-process bot (see Bot), which has no client
+    private SplittableRandom botRandom;
+    private AdmissionControl.Source source;    // rate limits of the client's address, null if not admitted
+    private volatile boolean shed;             // over its message rate, input is ignored until it closes
+
+    // Session state
+    private volatile String token;              // what the client RESUMEs with, null until CONNECT
+    private volatile ClientHandler resumed;     // the session this connection was resumed into
+    private volatile Multiplexer mux;           // the sessions this connection carries, after CONNECT_MUX
+    private boolean muxSession;                 // one of a Multiplexer's sessions: no token, never resumed
+    private volatile boolean detached;          // the connection dropped, the session waits for a RESUME
+    private volatile long detachedAt;
+    private volatile boolean ending;            // closing for good, no RESUME
+    private volatile boolean opponentLeft;      // told OPPONENT_LEFT and not paired since
+    private byte[] missedResult;                // RESULT resolved while detached, guarded by this
+
+    // Timeout state: one reusable wheel entry, re-armed from these timestamps when it fires
+    private final SessionTimeout timeout = new SessionTimeout();
+    private volatile long lastInbound;  // when the client last sent anything
+    private volatile long stateSince;   // when the client started waiting in the lobby or for its turn
+    private volatile long stateRound;   // match round stateSince belongs to
+
+    // Metrics timestamps (System.nanoTime())
+    private volatile long waitingSince;  // asked for an opponent
+    private volatile long choiceAt;      // last choice arrived
+
+    /**
+     * Create a handler for a blocking socket; its outbound frames are written by tasks on writerExecutor
+     */
+    public ClientHandler(Socket socket, Executor writerExecutor) {
         try {
-            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            this.out = new PrintWriter(socket.getOutputStream(), true);
+            this.socketConnection = new SocketConnection(socket, writerExecutor);
+            this.connection = socketConnection;
         } catch (IOException e) {
-            System.err.println("Error setting up client handler: " + e.getMessage());
+            ServerLog.error("handler-setup-failed", e.getMessage());
         }
     }
 
+    /**
+     * Create a handler driven by an event-based transport (NIO mode)
+     */
+    ClientHandler(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Create the stand-in for a player on another cluster node, whose frames connection relays
+     */
+    static ClientHandler relayed(Connection connection, String name, boolean binary, long waitingSince) {
+        ClientHandler handler = new ClientHandler(connection);
+        handler.setPlayerName(name);
+        handler.format = binary ? WireFormat.BINARY : WireFormat.TEXT;
+        handler.waitingSince = waitingSince;
+        handler.onConnected();
+        return handler;
+    }
+
+    /**
+     * Create the handler of one session on a multiplexed connection; it joins the game with join()
+     */
+    static ClientHandler multiplexed(Connection session) {
+        ClientHandler handler = new ClientHandler(session);
+        handler.format = WireFormat.BINARY;
+        handler.muxSession = true;
+        handler.onConnected();
+        return handler;
+    }
+
+    /**
+     * Join a multiplexed session as name, as CONNECT_BINARY does for a connection of its own
+     */
+    void join(String name) {
+        handleConnect(name);
+    }
+
+    /**
+     * End a multiplexed session for good, its connection is gone
+     */
+    void endSession() {
+        ending = true;
+        cleanup();
+    }
+
+    /**
+     * Create an in-process bot playing strategy; it chooses through playBot(), never through messages
+     */
+    static ClientHandler bot(Connection connection, Strategy strategy, SplittableRandom random, long waitingSince) {
+        ClientHandler handler = new ClientHandler(connection);
+        handler.setPlayerName(strategy.getName() + " bot");
+        handler.bot = strategy.newPlayer(GameVariant.CLASSIC);
+        handler.botRandom = random;
+        handler.waitingSince = waitingSince;
+        handler.lastInbound = GameServer.timers().now();
+        return handler;
+    }
+
+    /**
+     * Submit a bot's choice for the next round, given the opponent's last choice (-1 for the first round)
+     * Runs on whichever thread resolved the last round, one round at a time
+     */
+    void playBot(int opponentLast) {
+        Match<ClientHandler> match = this.match;
+        if (bot != null && match != null) {
+            choiceAt = System.nanoTime();
+            match.submit(this, CHOICES[bot.next(opponentLast, botRandom)]);
+        }
+    }
+
+    private void setPlayerName(String name) {
+        playerName = name;
+        playerId = RoundJournal.playerId(name);
+    }
+
+    boolean isBot() {
+        return bot != null;
+    }
+
+    /**
+     * Hold the admission slot AdmissionControl gave this connection, given back when it closes
+     */
+    void admitted(AdmissionControl.Source source) {
+        this.source = source;
+    }
+
+    /**
+     * Blocking read loop, only used in thread mode
+     */
     @Override
     public void run() {
+        if (socketConnection == null) {
+            connectionClosed(null);
+            return;
+        }
         try {
-            System.out.println("New client connected from: " + socket.getInetAddress());
-
-            // Handle client communication
-            String message;
-            while ((message = in.readLine()) != null) {
-                System.out.println("Received from " + playerName + ": " + message);
-                handleMessage(message);
+            onConnected();
+
+            // Handle client communication - text lines, then binary frames if negotiated
+            byte[] frame = new byte[2];
+            byte[] muxFrame = new byte[BinaryProtocol.SESSION_BYTES + 2 + BinaryProtocol.MAX_STRING_BYTES];
+            while (isConnected()) {
+                if (mux != null) {
+                    int length = socketConnection.readMuxFrame(muxFrame);
+                    if (length < 0) {
+                        break;
+                    }
+                    handleMuxFrame(muxFrame, 0, length);
+                } else if (isBinary()) {
+                    if (socketConnection.readFrame(frame) < 0) {
+                        break;
+                    }
+                    handleFrame(frame[0], frame[1]);
+                } else {
+                    int length = socketConnection.readLine();
+                    if (length < 0) {
+                        break;
+                    }
+                    handleMessage(socketConnection.getLineBuffer(), 0, length);
+                }
             }
 
         } catch (IOException e) {
-            System.out.println("Client disconnected: " + playerName);
+            ServerLog.info("client-disconnected", playerName, e.getMessage());
         } finally {
-            cleanup();
+            connectionClosed(socketConnection);
         }
     }
 
+    void onConnected() {
+        ServerLog.info("client-connected", null, connection.getRemoteAddress());
+        lastInbound = GameServer.timers().now();
+        restartClock(0);
+    }
+
     /**
-     * Handle incoming messages from the client
+     * Handle one incoming text line held in bytes[offset, offset + length)
+     * The bytes are only valid during the call
      */
-    private void handleMessage(String message) {
-        String type = Protocol.parseType(message);
-        String content = Protocol.parseContent(message);
+    void handleMessage(byte[] bytes, int offset, int length) {
+        if (!admitMessage()) {
+            return;
+        }
+        ClientHandler resumed = this.resumed;
+        if (resumed != null) {
+            resumed.handleMessage(bytes, offset, length);
+            return;
+        }
+        lastInbound = GameServer.timers().now();
+        ClusterNode.Relay relay = this.relay;
+        if (relay != null) {
+            relay.input(bytes, offset, length);
+            return;
+        }
+        MessageType type = MessageType.parse(bytes, offset, length);
+        ServerLog.message("recv", playerName, matchId, type.wireName(), null);
+
+        DISPATCH[type.ordinal()].handle(this, bytes, type.contentStart(offset, length), offset + length);
+    }
+
+    /**
+     * Handle one incoming BinaryProtocol frame (after CONNECT_BINARY)
+     */
+    void handleFrame(byte type, byte value) {
+        if (!admitMessage()) {
+            return;
+        }
+        ClientHandler resumed = this.resumed;
+        if (resumed != null) {
+            resumed.handleFrame(type, value);
+            return;
+        }
+        lastInbound = GameServer.timers().now();
+        ClusterNode.Relay relay = this.relay;
+        if (relay != null) {
+            relay.input(new byte[] {type, value}, 0, 2);
+            return;
+        }
+        ServerLog.message("recv", playerName, matchId, "binary", null);
 
         switch (type) {
-            case Protocol.CONNECT:
-                handleConnect(content);
+            case BinaryProtocol.CHOICE:
+                handleChoice(value >= 0 && value < CHOICES.length ? CHOICES[value] : null);
                 break;
 
-            case Protocol.CHOICE:
-                handleChoice(content);
+            case BinaryProtocol.DISCONNECT:
+                cleanup();
                 break;
 
-            case Protocol.DISCONNECT:
-                cleanup();
+            case BinaryProtocol.LEADERBOARD:
+                handleLeaderboard(Leaderboard.Ranking.fromCode(value));
                 break;
 
             default:
-                sendMessage(Protocol.createMessage(Protocol.ERROR, "Unknown command"));
+                reject(ServerMetrics.ErrorType.UNKNOWN_COMMAND, WireFormat.UNKNOWN_COMMAND);
+        }
+    }
+
+    /**
+     * Handle one incoming multiplexed frame held in bytes[offset, offset + length) (after CONNECT_MUX)
+     * The bytes are only valid during the call
+     */
+    void handleMuxFrame(byte[] bytes, int offset, int length) {
+        // A frame for an open session is rate-limited by that session (see Multiplexer)
+        if (!mux.isSessionFrame(bytes, offset) && source != null && !source.allowMessage()) {
+            // Nobody to shed but the whole connection: drop it, the sessions carry on
+            ServerMetrics.error(ServerMetrics.ErrorType.SHED);
+            return;
+        }
+        lastInbound = GameServer.timers().now();
+        mux.dispatch(bytes, offset, length);
+    }
+
+    /**
+     * Take a token for one incoming message, shedding the connection if its address is over its rate
+     * Checked on the connection's own handler, before handing the message to a resumed session
+     */
+    private boolean admitMessage() {
+        if (shed) {
+            return false;
+        }
+        if (source == null || source.allowMessage()) {
+            return true;
+        }
+        shed = true;
+        (resumed != null ? resumed : this).shed();
+        return false;
+    }
+
+    /**
+     * Over its message rate: tell the client the server is busy and close once that is written
+     */
+    void shed() {
+        ServerLog.warn("connection-shed", playerName + " " + connection.getRemoteAddress());
+        reject(ServerMetrics.ErrorType.SHED, WireFormat.SERVER_BUSY);
+        closeAfterFlush();
+    }
+
+    /**
+     * Handle a line or frame relayed from the player's own node (stand-in handlers only)
+     */
+    void handleRelayedInput(byte[] input) {
+        if (!isBinary()) {
+            handleMessage(input, 0, input.length);
+        } else if (input.length == 2) {
+            handleFrame(input[0], input[1]);
         }
     }
 
@@ -77,126 +369,468 @@ public class ClientHandler implements Runnable {
      * Handle CONNECT message - player sends their name
      */
     private void handleConnect(String name) {
-        this.playerName = name;
-        sendMessage(Protocol.createMessage(Protocol.WELCOME, "Welcome " + name + "!"));
-        System.out.println("Player connected: " + name);
+        setPlayerName(name);
+        if (token == null && !muxSession) {
+            token = GameServer.openSession(this);
+        }
+        send(Protocol.WELCOME, name, format.welcome(name, token != null ? token : ""));
+        ServerLog.info("player-joined", name, null);
 
         // Add to waiting list and try to find an opponent
+        waitingSince = System.nanoTime();
         GameServer.addToWaitingList(this);
     }
 
     /**
-     * Handle CHOICE message - player makes their game choice
+     * Handle CONNECT_MUX message - carry many sessions from now on, each opened with a mux OPEN frame
      */
-    private void handleChoice(String choiceStr) {
-        if (!GameLogic.isValidChoice(choiceStr)) {
-            sendMessage(Protocol.createMessage(Protocol.ERROR, "Invalid choice. Use ROCK, PAPER, or SCISSORS"));
+    private void handleConnectMux() {
+        if (playerName != null || ServerConfig.MUX_MAX_SESSIONS <= 0) {
+            reject(ServerMetrics.ErrorType.UNKNOWN_COMMAND, WireFormat.NO_MULTIPLEXING);
             return;
         }
+        mux = new Multiplexer(connection, source);
+        ServerLog.info("multiplexed", null, connection.getRemoteAddress());
+    }
 
-        this.choice = choiceStr.toUpperCase();
-        this.isReady = true;
+    /**
+     * Handle RESUME message - hand this connection to the session the token names
+     * No handshake and no matchmaking: the client is back in its match or lobby place
+     */
+    private void handleResume(String token) {
+        ClientHandler session = GameServer.findSession(token);
+        if (playerName != null || session == null || !session.reattach(this)) {
+            reject(ServerMetrics.ErrorType.SESSION_EXPIRED, WireFormat.SESSION_EXPIRED);
+        }
+    }
 
-        System.out.println(playerName + " chose: " + choice);
-        sendMessage(Protocol.createMessage(Protocol.WAITING, "Waiting for opponent's choice..."));
+    /**
+     * Take over transport's connection and tell the client where it stands
+     * @return false if this session already ended
+     */
+    private boolean reattach(ClientHandler transport) {
+        Connection previous;
+        synchronized (this) {
+            if (ending || cleanedUp.get()) {
+                return false;
+            }
+            previous = connection;
+            connection = transport.connection;
+            detached = false;
+            lastInbound = GameServer.timers().now();
+            transport.format = format;
+            transport.playerName = playerName;
+            transport.resumed = this;
+            replay();
+        }
+        GameServer.timers().cancel(transport.timeout);
+        GameServer.removeClient(transport);
+        if (previous != connection) {
+            // A client that reconnects before its old connection is noticed closing
+            previous.close();
+        }
+        GameServer.timers().schedule(timeout, lastInbound);
+        ServerMetrics.resumed();
+        ServerLog.info("resumed", playerName, matchId, connection.getRemoteAddress());
+        return true;
+    }
 
-        // Check if both players are ready
-        checkGameReady();
+    /**
+     * Bring a resumed client up to date, starting over from WELCOME
+     * Holds the lock sendResult() takes, so a round resolving meanwhile cannot jump the queue;
+     * a relayed match is replayed by the host node as it goes
+     */
+    private void replay() {
+        send(Protocol.WELCOME, playerName, format.welcome(playerName, token));
+        Match<ClientHandler> match = this.match;
+        boolean open = match != null && match.getState() != Match.State.CLOSED;
+        if (open) {
+            sendOpponentFound();
+        }
+        if (missedResult != null) {
+            send(Protocol.RESULT, "missed", missedResult);
+            missedResult = null;
+        }
+        if (open) {
+            if (match.hasChosen(this)) {
+                send(Protocol.WAITING, null, format.waitingForChoice());
+            }
+        } else if (match == null && relay == null) {
+            if (opponentLeft) {
+                sendOpponentLeft();
+            } else {
+                sendWaitingForOpponent();
+            }
+        }
     }
 
     /**
-     * Check if both players have made their choices and calculate result
+     * Handle CHOICE message - player makes their game choice (null if it was not valid)
      */
-    private synchronized void checkGameReady() {
-        if (opponent == null) {
-            sendMessage(Protocol.createMessage(Protocol.ERROR, "No opponent paired yet"));
+    private void handleChoice(GameLogic.Choice choice) {
+        choiceAt = System.nanoTime();
+        if (choice == null) {
+            reject(ServerMetrics.ErrorType.INVALID_CHOICE, WireFormat.INVALID_CHOICE);
             return;
         }
 
-        if (this.isReady && opponent.isReady) {
-            // Both players ready - calculate result
-            playGame();
+        ServerLog.log(ServerLog.Level.DEBUG, "choice", playerName, matchId, Protocol.CHOICE, choice.name());
+        send(Protocol.WAITING, null, format.waitingForChoice());
+
+        // The match resolves the round (exactly once) if the opponent has already chosen
+        Match<ClientHandler> match = this.match;
+        if (match == null || !match.submit(this, choice)) {
+            reject(ServerMetrics.ErrorType.NO_OPPONENT, WireFormat.NO_OPPONENT);
         }
     }
 
     /**
-     * Play the game - both players have made their choices
+     * Handle LEADERBOARD message - send the latest published snapshot (null ranking if it was not valid)
+     * Never touches the stats writer, however many clients ask
      */
-    private void playGame() {
-        GameLogic.Choice myChoice = GameLogic.Choice.valueOf(this.choice);
-        GameLogic.Choice opponentChoice = GameLogic.Choice.valueOf(opponent.choice);
+    private void handleLeaderboard(Leaderboard.Ranking ranking) {
+        if (ranking == null) {
+            reject(ServerMetrics.ErrorType.UNKNOWN_COMMAND, WireFormat.UNKNOWN_RANKING);
+            return;
+        }
+        PlayerStatsStore stats = GameServer.getStats();
+        if (stats == null) {
+            reject(ServerMetrics.ErrorType.UNKNOWN_COMMAND, WireFormat.NO_LEADERBOARD);
+            return;
+        }
+        send(Protocol.LEADERBOARD, ranking.wireName, stats.getLeaderboard().frame(format, ranking));
+    }
 
-        String result = GameLogic.determineWinner(myChoice, opponentChoice);
+    /**
+     * Match.RoundListener: both players have chosen - send each the result from their point of view
+     * Runs on the thread of whichever player completed the round
+     */
+    static void roundResolved(Match<ClientHandler> match, long round, GameLogic.Choice first, GameLogic.Choice second) {
+        ClientHandler player1 = match.getFirst();
+        ClientHandler player2 = match.getSecond();
+
+        // Send the pre-encoded result frame to each player
+        player1.sendResult(first.name(), player1.format.result(first, second));
+        player2.sendResult(second.name(), player2.format.result(second, first));
+        long resolvedAt = System.nanoTime();
+        ServerMetrics.roundResolved(resolvedAt - Math.max(player1.choiceAt, player2.choiceAt));
+        GameResult result = GameLogic.determineWinner(first, second);
+
+        // Handed to the stats writer thread, the round does not wait for the file; bot rounds are not rated
+        PlayerStatsStore stats = GameServer.getStats();
+        if (stats != null && player1.bot == null && player2.bot == null
+                && !stats.recordRound(player1.getPlayerName(), player2.getPlayerName(), result)) {
+            ServerLog.warn("stats-dropped", player1.playerName + " vs " + player2.playerName);
+        }
 
-        // Send results to both players
-        String myResult;
-        String opponentResult;
+        // Copied into the journal's ring; its writer commits it to disk later
+        RoundJournal journal = GameServer.getJournal();
+        if (journal != null && !journal.append(match.getId(), round,
+                player1.playerId, player1.playerName, player2.playerId, player2.playerName,
+                first.ordinal(), second.ordinal(), result.code(), botFlags(player1, player2),
+                resolvedAt - player1.choiceAt, resolvedAt - player2.choiceAt)) {
+            ServerLog.warn("journal-dropped", player1.playerName + " vs " + player2.playerName);
+        }
 
-        if (result.equals("DRAW")) {
-            myResult = Protocol.DRAW;
-            opponentResult = Protocol.DRAW;
-        } else if (result.equals("PLAYER1_WINS")) {
-            myResult = Protocol.WIN;
-            opponentResult = Protocol.LOSE;
+        ServerLog.info("round-completed", player1.playerName, match.getId(), player2.playerName);
+
+        // Both players' turn clocks start again for the next round
+        player1.restartClock(round + 1);
+        player2.restartClock(round + 1);
+
+        // A bot chooses straight away, before it could see the player's choice
+        if (player1.bot != null) {
+            player1.playBot(second.ordinal());
+        } else if (player2.bot != null) {
+            player2.playBot(first.ordinal());
+        }
+    }
+
+    private static void journalEnd(Match<ClientHandler> match) {
+        RoundJournal journal = GameServer.getJournal();
+        ClientHandler player1 = match.getFirst();
+        ClientHandler player2 = match.getSecond();
+        if (journal != null && !journal.matchEnded(match.getId(), match.getRound(),
+                player1.playerId, player1.playerName, player2.playerId, player2.playerName)) {
+            ServerLog.warn("journal-dropped", player1.playerName + " vs " + player2.playerName);
+        }
+    }
+
+    private static int botFlags(ClientHandler player1, ClientHandler player2) {
+        return (player1.bot != null ? RoundJournal.FIRST_IS_BOT : 0) | (player2.bot != null ? RoundJournal.SECOND_IS_BOT : 0);
+    }
+
+    /**
+     * Send a RESULT, or keep it for the RESUME if the connection dropped
+     * A detached player cannot choose, so there is at most one to keep
+     */
+    private synchronized void sendResult(String detail, byte[] frame) {
+        if (detached) {
+            missedResult = frame;
         } else {
-            myResult = Protocol.LOSE;
-            opponentResult = Protocol.WIN;
+            send(Protocol.RESULT, detail, frame);
         }
+    }
 
-        // Send detailed result
-        sendMessage(Protocol.createMessage(Protocol.RESULT,
-            myResult + ":You chose " + choice + ", Opponent chose " + opponent.choice));
-        opponent.sendMessage(Protocol.createMessage(Protocol.RESULT,
-            opponentResult + ":You chose " + opponent.choice + ", Opponent chose " + choice));
+    /**
+     * Tell this client it is waiting for an opponent to be found
+     */
+    public void sendWaitingForOpponent() {
+        send(Protocol.WAITING, null, format.waitingForOpponent());
+    }
 
-        // Reset for next round
-        this.isReady = false;
-        this.choice = null;
-        opponent.isReady = false;
-        opponent.choice = null;
+    /**
+     * Tell this client its opponent has gone
+     */
+    public void sendOpponentLeft() {
+        opponentLeft = true;
+        send(Protocol.OPPONENT_LEFT, null, format.opponentLeft());
+    }
+
+    public void sendError(String message) {
+        send(Protocol.ERROR, message, format.error(message));
+    }
+
+    /**
+     * Send one of the fixed ERROR messages and count it
+     */
+    private void reject(ServerMetrics.ErrorType type, String message) {
+        ServerMetrics.error(type);
+        sendError(message);
+    }
+
+    /**
+     * Send a frame already encoded in this client's format
+     */
+    private void send(String type, String detail, byte[] frame) {
+        if (connection != null) {
+            connection.send(frame);
+            ServerLog.message("sent", playerName, matchId, type, detail);
+        }
+    }
+
+    /**
+     * Pass on a frame the hosting node encoded for this client
+     */
+    void sendRelayed(byte[] frame) {
+        send("relayed", null, frame);
+    }
+
+    /**
+     * Hand this client's input to a match on another node, or take it back with (null)
+     */
+    void setRelay(ClusterNode.Relay relay) {
+        this.relay = relay;
+        if (relay == null) {
+            restartClock(0);
+        }
+    }
 
-        System.out.println("Game completed: " + playerName + " vs " + opponent.playerName);
+    /**
+     * @return true for the one caller that ends the current relay
+     */
+    boolean endRelay() {
+        ClusterNode.Relay relay = this.relay;
+        return relay != null && relay.end();
     }
 
     /**
-     * Send a message to this client
+     * Close once the frames already sent are written; the session ends with the connection
      */
-    public void sendMessage(String message) {
-        if (out != null) {
-            out.println(message);
-            System.out.println("Sent to " + playerName + ": " + message);
+    void closeAfterFlush() {
+        ending = true;
+        if (connection != null) {
+            connection.closeAfterFlush();
         }
     }
 
     /**
-     * Pair this client with an opponent
+     * The transport (lost) closed: keep the session for a RESUME, or clean it up
      */
-    public void setOpponent(ClientHandler opponent) {
-        this.opponent = opponent;
-        if (opponent != null) {
-            sendMessage(Protocol.createMessage(Protocol.OPPONENT_FOUND,
-                "Matched with opponent: " + opponent.getPlayerName()));
+    void connectionClosed(Connection lost) {
+        AdmissionControl.release(source);
+        source = null;
+        ClientHandler resumed = this.resumed;
+        (resumed != null ? resumed : this).detach(lost);
+    }
+
+    private void detach(Connection lost) {
+        synchronized (this) {
+            if (lost != connection || cleanedUp.get()) {
+                // Already replaced by a resumed connection, or gone
+                return;
+            }
+            if (token != null && !ending && RESUME_GRACE > 0) {
+                detached = true;
+                detachedAt = GameServer.timers().now();
+                GameServer.timers().schedule(timeout, detachedAt + RESUME_GRACE);
+                ServerLog.info("detached", playerName, matchId, lost.getRemoteAddress());
+                return;
+            }
+        }
+        cleanup();
+    }
+
+    /**
+     * Pair this client with the opponent in a match, or unpair it with (null)
+     */
+    public void setMatch(Match<ClientHandler> match) {
+        this.match = match;
+        this.matchId = match != null ? match.getId() : ServerLog.NO_MATCH;
+        if (match != null) {
+            opponentLeft = false;
+        } else if (bot != null) {
+            // A bot has nothing to do without its match
+            cleanup();
+            return;
+        }
+        restartClock(match != null ? match.getRound() : 0);
+    }
+
+    /**
+     * Tell the client who they were paired with, once both sides have the match
+     */
+    void sendOpponentFound() {
+        Match<ClientHandler> match = this.match;
+        if (match != null) {
+            String opponentName = match.opponentOf(this).getPlayerName();
+            send(Protocol.OPPONENT_FOUND, opponentName, format.opponentFound(opponentName));
         }
     }
 
     /**
      * Clean up when client disconnects
+     * Runs once, whether triggered by DISCONNECT or by the transport closing
      */
-    private void cleanup() {
-        try {
-            if (opponent != null) {
-                opponent.sendMessage(Protocol.createMessage(Protocol.OPPONENT_LEFT,
-                    "Your opponent has left"));
-                opponent.setOpponent(null);
+    void cleanup() {
+        if (!cleanedUp.compareAndSet(false, true)) {
+            return;
+        }
+        GameServer.timers().cancel(timeout);
+        Match<ClientHandler> match = this.match;
+        // Closing rejects any choice the opponent sends from now on; whoever closes it tells the opponent
+        if (match != null && match.close()) {
+            journalEnd(match);
+            ClientHandler opponent = match.opponentOf(this);
+            opponent.sendOpponentLeft();
+            opponent.setMatch(null);
+        }
+        ClusterNode.Relay relay = this.relay;
+        if (relay != null) {
+            relay.left();
+        }
+        Multiplexer mux = this.mux;
+        if (mux != null) {
+            mux.closeAll();
+        }
+        if (connection != null) {
+            connection.close();
+        }
+        // Remove from server's waiting list
+        GameServer.removeFromWaitingList(this);
+        if (token != null) {
+            GameServer.closeSession(token, this);
+        }
+        ServerLog.info("cleaned-up", playerName, null);
+    }
+
+    /**
+     * Start timing a new lobby wait or turn (the given match round), firing no later than its deadline
+     */
+    private void restartClock(long round) {
+        long now = GameServer.timers().now();
+        stateSince = now;
+        stateRound = round;
+        if (bot != null) {
+            // Never late, never silent
+            return;
+        }
+        GameServer.timers().schedule(timeout, match != null ? after(now, CHOICE_TIMEOUT) : after(now, LOBBY_TIMEOUT));
+    }
+
+    private static long after(long since, long timeout) {
+        return timeout > 0 ? since + timeout : TimerWheel.NONE;
+    }
+
+    /**
+     * Turn, lobby and idle timeouts of this client, checked on the timer thread
+     */
+    private final class SessionTimeout extends TimerWheel.Timeout {
+        @Override
+        protected long expired(long now) {
+            if (detached) {
+                long resumeBy = detachedAt + RESUME_GRACE;
+                if (now < resumeBy) {
+                    return resumeBy;
+                }
+                synchronized (ClientHandler.this) {
+                    if (!detached) {
+                        // Resumed just now
+                        return now;
+                    }
+                    ending = true;
+                }
+                ServerLog.info("session-expired", playerName, matchId, null);
+                cleanup();
+                return TimerWheel.NONE;
             }
-            if (socket != null && !socket.isClosed()) {
-                socket.close();
+            if (!isConnected()) {
+                return TimerWheel.NONE;
             }
-            // Remove from server's waiting list
-            GameServer.removeFromWaitingList(this);
-            System.out.println("Cleaned up connection for: " + playerName);
-        } catch (IOException e) {
-            System.err.println("Error during cleanup: " + e.getMessage());
+
+            // A peer that vanished without closing (or just went quiet) is dropped
+            long silentAt = after(lastInbound, SILENT_TIMEOUT);
+            if (now >= silentAt) {
+                ServerLog.info("silent-reaped", playerName, connection.getRemoteAddress());
+                ServerMetrics.error(ServerMetrics.ErrorType.SILENT_TIMEOUT);
+                ending = true;
+                connection.close();
+                cleanup();
+                return TimerWheel.NONE;
+            }
+
+            if (relay != null || mux != null) {
+                // The hosting node, or each multiplexed session, keeps the turn and lobby clocks
+                return silentAt;
+            }
+            Match<ClientHandler> match = ClientHandler.this.match;
+            if (match == null) {
+                long lobbyAt = after(stateSince, LOBBY_TIMEOUT);
+                if (now >= lobbyAt) {
+                    ServerLog.info("lobby-timeout", playerName, null);
+                    reject(ServerMetrics.ErrorType.LOBBY_TIMEOUT, WireFormat.LOBBY_TIMEOUT);
+                    closeAfterFlush();
+                    return TimerWheel.NONE;
+                }
+                return Math.min(silentAt, lobbyAt);
+            }
+
+            long round = match.getRound();
+            if (round != stateRound || match.getState() == Match.State.CLOSED) {
+                // Just resolved or just ended, the clock restart is on its way
+                return Math.min(silentAt, after(now, CHOICE_TIMEOUT));
+            }
+            if (match.hasChosen(ClientHandler.this)) {
+                // Waiting for the opponent, whose own clock is running
+                return silentAt;
+            }
+            long turnDeadline = after(stateSince, CHOICE_TIMEOUT);
+            if (now < turnDeadline) {
+                return Math.min(silentAt, turnDeadline);
+            }
+
+            if (ServerConfig.TURN_TIMEOUT_POLICY == ServerConfig.TurnTimeoutPolicy.AUTOPICK) {
+                GameLogic.Choice choice = CHOICES[ThreadLocalRandom.current().nextInt(CHOICES.length)];
+                ServerLog.info("turn-timeout", playerName, matchId, "autopick " + choice.name());
+                // If this completes the round, roundResolved() re-arms the clock for the next one
+                ClientHandler.this.choiceAt = System.nanoTime();
+                match.submit(ClientHandler.this, choice);
+                return silentAt;
+            }
+            ServerLog.info("turn-timeout", playerName, matchId, "forfeit");
+            reject(ServerMetrics.ErrorType.TURN_TIMEOUT, WireFormat.TURN_TIMEOUT);
+            closeAfterFlush();
+            return TimerWheel.NONE;
         }
     }
 
@@ -205,11 +839,30 @@ public class ClientHandler implements Runnable {
         return playerName != null ? playerName : "Unknown";
     }
 
+    /**
+     * When this client asked for an opponent (System.nanoTime())
+     */
+    long getWaitingSince() {
+        return waitingSince;
+    }
+
+    boolean isCleanedUp() {
+        return cleanedUp.get();
+    }
+
     public boolean hasOpponent() {
-        return opponent != null;
+        return match != null;
+    }
+
+    boolean isMultiplexed() {
+        return mux != null;
+    }
+
+    boolean isBinary() {
+        return format == WireFormat.BINARY;
     }
 
     public boolean isConnected() {
-        return socket != null && !socket.isClosed();
+        return connection != null && connection.isOpen();
     }
 }
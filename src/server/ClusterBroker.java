@@ -0,0 +1,157 @@
+package server;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ClusterBroker - The shared lobby of a GameServer cluster
+ *
+ * Nodes connect and offer the players they could not pair themselves (see ClusterNode). The
+ * broker pairs offers by rating with the same Matchmaker the nodes use, then tells the node
+ * of the longer waiting player to host the match; players never connect to the broker, and
+ * it never sees a round. Offers of a node that disconnects are dropped - the node puts its
+ * players back into its own lobby.
+ *
+ * Usage: java -Drps.broker.port=12400 -cp out server.ClusterBroker
+ */
+public final class ClusterBroker {
+    /**
+     * A player offered by a node
+     */
+    private static final class Offer {
+        final Node node;
+        final long ticket;
+        final String name;
+        final boolean binary;
+        final double rating;
+        final long since = System.nanoTime();
+
+        Offer(Node node, long ticket, String name, boolean binary, double rating) {
+            this.node = node;
+            this.ticket = ticket;
+            this.name = name;
+            this.binary = binary;
+            this.rating = rating;
+        }
+    }
+
+    private static final Matchmaker<Offer> matchmaker = new Matchmaker<>(ClusterBroker::paired,
+        ServerConfig.MATCH_BUCKET_WIDTH, ServerConfig.MATCH_WINDOW, ServerConfig.MATCH_WIDEN_PER_SECOND,
+        ServerConfig.MATCH_MAX_WINDOW);
+
+    private ClusterBroker() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(ServerConfig.BROKER_PORT)) {
+            System.out.println("Cluster broker listening on port " + ServerConfig.BROKER_PORT);
+            while (true) {
+                ClusterLink link = new ClusterLink(serverSocket.accept());
+                link.start(new Node(link), "broker-node-" + link.getRemoteAddress());
+            }
+        }
+    }
+
+    /**
+     * Matchmaker.PairListener: the older offer's node hosts, unless both are on the same node
+     */
+    private static void paired(Offer first, double firstRating, Offer second, double secondRating) {
+        boolean firstOpen = first.node.offers.remove(first.ticket) != null;
+        boolean secondOpen = second.node.offers.remove(second.ticket) != null;
+        if (!firstOpen || !secondOpen) {
+            // Cancelled after the matchmaker saw it; whichever is left waits on
+            if (firstOpen) {
+                requeue(first);
+            }
+            if (secondOpen) {
+                requeue(second);
+            }
+            return;
+        }
+
+        boolean sent;
+        if (first.node == second.node) {
+            sent = first.node.link.send(ClusterLink.PAIR_LOCAL, first.ticket, out -> out.writeLong(second.ticket));
+        } else {
+            sent = first.node.link.send(ClusterLink.HOST, first.ticket, out -> {
+                out.writeUTF(second.node.relayAddress);
+                out.writeLong(second.ticket);
+                out.writeUTF(second.name);
+                out.writeBoolean(second.binary);
+                out.writeDouble(second.rating);
+                out.writeLong(System.nanoTime() - second.since);
+            });
+        }
+        if (!sent) {
+            // The hosting node is gone
+            requeue(second);
+            return;
+        }
+        ServerLog.info("broker-paired", first.name + "@" + first.node.name, second.name + "@" + second.node.name);
+    }
+
+    private static void requeue(Offer offer) {
+        if (offer.node.link.isOpen() && offer.node.offers.putIfAbsent(offer.ticket, offer) == null) {
+            matchmaker.enqueue(offer, offer.rating);
+        }
+    }
+
+    /**
+     * One connected node and its open offers
+     */
+    private static final class Node implements ClusterLink.Handler {
+        final Map<Long, Offer> offers = new ConcurrentHashMap<>();
+        final ClusterLink link;
+        volatile String name = "?";
+        volatile String relayAddress;
+
+        Node(ClusterLink link) {
+            this.link = link;
+        }
+
+        @Override
+        public void received(ClusterLink link, byte type, long ticket, byte[] payload) throws IOException {
+            DataInputStream in = ClusterLink.fields(payload);
+            switch (type) {
+                case ClusterLink.HELLO:
+                    this.name = in.readUTF();
+                    this.relayAddress = in.readUTF();
+                    ServerLog.info("node-joined", null, name + " relay " + relayAddress);
+                    break;
+
+                case ClusterLink.OFFER: {
+                    double rating = in.readDouble();
+                    Offer offer = new Offer(this, ticket, in.readUTF(), in.readBoolean(), rating);
+                    offers.put(ticket, offer);
+                    matchmaker.enqueue(offer, rating);
+                    break;
+                }
+
+                case ClusterLink.CANCEL: {
+                    Offer offer = offers.remove(ticket);
+                    if (offer != null) {
+                        matchmaker.cancel(offer);
+                    }
+                    break;
+                }
+
+                default:
+                    ServerLog.warn("cluster-unknown-message", name + " sent type " + type);
+            }
+        }
+
+        @Override
+        public void closed(ClusterLink link) {
+            ServerLog.info("node-left", null, name);
+            for (Long ticket : offers.keySet()) {
+                Offer offer = offers.remove(ticket);
+                if (offer != null) {
+                    matchmaker.cancel(offer);
+                }
+            }
+        }
+    }
+}
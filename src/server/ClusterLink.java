@@ -0,0 +1,171 @@
+package server;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ClusterLink - One framed connection between cluster processes (node to broker, node to node)
+ *
+ * Every message is [type:1][id:8][length:4][payload]; the id names the ticket or relayed
+ * session the message is about. Sends are serialized on the link and written straight to the
+ * socket; one reader thread per link hands every message to the Handler.
+ */
+final class ClusterLink {
+    // Node -> broker
+    static final byte HELLO = 1;       // payload: node name, relay address ("host:port")
+    static final byte OFFER = 2;       // id: ticket; payload: rating, player name, binary
+    static final byte CANCEL = 3;      // id: ticket
+
+    // Broker -> node
+    static final byte PAIR_LOCAL = 10; // id: ticket; payload: the other ticket, same node
+    static final byte HOST = 11;       // id: ticket; payload: guest relay address, guest ticket, name, binary, rating, wait
+
+    // Hosting node -> guest node (id: guest ticket)
+    static final byte CLAIM = 20;
+    static final byte FRAME = 21;      // payload: an encoded frame for the client
+    static final byte CLOSE = 22;      // close the client once its frames are written
+    static final byte RELEASE = 23;    // the match never started, the client goes back to waiting
+
+    // Guest node -> hosting node (id: guest ticket)
+    static final byte CLAIMED = 30;
+    static final byte GONE = 31;       // the client left or was paired before the claim
+    static final byte INPUT = 32;      // payload: one text line or binary frame from the client
+    static final byte LEFT = 33;       // the client disconnected
+
+    private static final int MAX_PAYLOAD = 1 << 20;
+
+    /**
+     * Receives everything arriving on a link, on its reader thread
+     */
+    interface Handler {
+        void received(ClusterLink link, byte type, long id, byte[] payload) throws IOException;
+
+        /**
+         * The link is gone, whichever side closed it; called once
+         */
+        void closed(ClusterLink link);
+    }
+
+    /**
+     * Writes a message's payload fields
+     */
+    interface Fields {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream fieldBuffer = new ByteArrayOutputStream();
+    private final DataOutputStream fieldWriter = new DataOutputStream(fieldBuffer);
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final String remoteAddress;
+
+    ClusterLink(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        socket.setKeepAlive(true);
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.remoteAddress = String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    /**
+     * Read messages until the link closes, on the calling thread
+     */
+    void run(Handler handler) {
+        try {
+            while (true) {
+                byte type = in.readByte();
+                long id = in.readLong();
+                int length = in.readInt();
+                if (length < 0 || length > MAX_PAYLOAD) {
+                    throw new IOException("bad cluster frame length " + length);
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                handler.received(this, type, id, payload);
+            }
+        } catch (IOException e) {
+            if (!closed.get()) {
+                ServerLog.info("cluster-link-closed", null, remoteAddress + " " + e.getMessage());
+            }
+        } finally {
+            close();
+            handler.closed(this);
+        }
+    }
+
+    /**
+     * Read messages on a new daemon thread
+     */
+    void start(Handler handler, String threadName) {
+        Thread reader = new Thread(() -> run(handler), threadName);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * @return false if the link is closed or the write failed (which closes it)
+     */
+    boolean send(byte type, long id, byte[] payload) {
+        synchronized (out) {
+            if (closed.get()) {
+                return false;
+            }
+            try {
+                out.writeByte(type);
+                out.writeLong(id);
+                out.writeInt(payload.length);
+                out.write(payload);
+                out.flush();
+                return true;
+            } catch (IOException e) {
+                close();
+                return false;
+            }
+        }
+    }
+
+    boolean send(byte type, long id) {
+        return send(type, id, new byte[0]);
+    }
+
+    boolean send(byte type, long id, Fields fields) {
+        synchronized (out) {
+            fieldBuffer.reset();
+            try {
+                fields.write(fieldWriter);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);  // cannot happen writing to memory
+            }
+            return send(type, id, fieldBuffer.toByteArray());
+        }
+    }
+
+    /**
+     * Read a payload written with send(type, id, fields)
+     */
+    static DataInputStream fields(byte[] payload) {
+        return new DataInputStream(new ByteArrayInputStream(payload));
+    }
+
+    void close() {
+        if (closed.compareAndSet(false, true)) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already gone
+            }
+        }
+    }
+
+    boolean isOpen() {
+        return !closed.get();
+    }
+
+    String getRemoteAddress() {
+        return remoteAddress;
+    }
+}
@@ -0,0 +1,536 @@
+package server;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ClusterNode - Lets this server share one lobby with other nodes through a ClusterBroker
+ *
+ * Players are first matched locally. Whoever is still waiting after rps.cluster.spillMillis
+ * is offered to the broker, which pairs offers from all nodes by rating. Two players of the
+ * same node are sent back to be paired here as usual. For two players on different nodes,
+ * the node of the longer waiting one hosts the match:
+ *
+ *   host  -- CLAIM -->    guest   the guest takes its player out of the lobby
+ *   host  <-- CLAIMED --  guest   (or GONE if they left meanwhile)
+ *   host  -- FRAME -->    guest   every frame for the remote player, already encoded
+ *   host  <-- INPUT --    guest   every line or frame the remote player sends
+ *
+ * On the host the remote player is an ordinary ClientHandler whose Connection forwards to the
+ * guest, so the Match, the timeouts and the stats all run there unchanged. The guest only
+ * passes bytes back and forth. Node-to-node links are opened by the host on demand and kept.
+ */
+final class ClusterNode {
+    private static final long RECONNECT_MILLIS = 1000;
+
+    /**
+     * A player offered to the broker
+     */
+    private static final class Offer {
+        final ClientHandler client;
+        final double rating;
+
+        Offer(ClientHandler client, double rating) {
+            this.client = client;
+            this.rating = rating;
+        }
+    }
+
+    /**
+     * Where a guest node sends what its relayed client does
+     */
+    static final class Relay {
+        private final Peer peer;
+        private final long session;
+        private final AtomicBoolean ended = new AtomicBoolean();
+
+        private Relay(Peer peer, long session) {
+            this.peer = peer;
+            this.session = session;
+        }
+
+        /**
+         * Forward one text line or binary frame from the client to the hosting node
+         */
+        void input(byte[] bytes, int offset, int length) {
+            byte[] copy = new byte[length];
+            System.arraycopy(bytes, offset, copy, 0, length);
+            peer.link.send(ClusterLink.INPUT, session, copy);
+        }
+
+        /**
+         * The client disconnected
+         */
+        void left() {
+            if (end()) {
+                peer.sessions.remove(session);
+                peer.link.send(ClusterLink.LEFT, session);
+            }
+        }
+
+        /**
+         * @return true for the one caller that ends the relay
+         */
+        boolean end() {
+            return ended.compareAndSet(false, true);
+        }
+    }
+
+    private final String name;
+    private final String brokerHost;
+    private final int brokerPort;
+    private final String relayAddress;
+    private final ServerSocket relaySocket;
+
+    private final AtomicLong nextTicket = new AtomicLong();
+    private final Map<Long, Offer> offers = new ConcurrentHashMap<>();
+    private final Map<ClientHandler, Long> tickets = new ConcurrentHashMap<>();
+    private final Map<String, Peer> hostLinks = new ConcurrentHashMap<>();  // by guest relay address
+    private volatile ClusterLink broker;
+
+    /**
+     * @param broker "host:port" of the ClusterBroker
+     */
+    ClusterNode(String name, String broker, String relayHost, int relayPort) throws IOException {
+        this.name = name;
+        int colon = broker.lastIndexOf(':');
+        this.brokerHost = broker.substring(0, colon);
+        this.brokerPort = Integer.parseInt(broker.substring(colon + 1));
+        this.relaySocket = new ServerSocket(relayPort);
+        this.relayAddress = relayHost + ":" + relaySocket.getLocalPort();
+    }
+
+    void start() {
+        daemon(this::acceptPeers, "cluster-relay-accept");
+        daemon(this::brokerLoop, "cluster-broker");
+    }
+
+    private static void daemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Matchmaker.SpillListener: nobody here for this player yet, try the other nodes
+     */
+    void spilled(ClientHandler client, double rating, long waitedNanos) {
+        ClusterLink broker = this.broker;
+        if (broker == null) {
+            // No broker right now: keep waiting here, the next spill tries again
+            GameServer.enqueue(client, rating);
+            return;
+        }
+        long ticket = nextTicket.incrementAndGet();
+        offers.put(ticket, new Offer(client, rating));
+        tickets.put(client, ticket);
+        broker.send(ClusterLink.OFFER, ticket, out -> {
+            out.writeDouble(rating);
+            out.writeUTF(client.getPlayerName());
+            out.writeBoolean(client.isBinary());
+        });
+        // cleanup() may have cancelled just before the offer was recorded
+        if (client.isCleanedUp()) {
+            cancel(client);
+        }
+        ServerLog.info("offered", client.getPlayerName(), "ticket " + ticket);
+    }
+
+    /**
+     * Withdraw a client's offer, if any (e.g. it disconnected)
+     */
+    void cancel(ClientHandler client) {
+        Long ticket = tickets.remove(client);
+        if (ticket != null && offers.remove(ticket) != null) {
+            ClusterLink broker = this.broker;
+            if (broker != null) {
+                broker.send(ClusterLink.CANCEL, ticket);
+            }
+        }
+    }
+
+    private Offer take(long ticket) {
+        Offer offer = offers.remove(ticket);
+        if (offer != null) {
+            tickets.remove(offer.client);
+        }
+        return offer;
+    }
+
+    // ---- Broker link ----
+
+    /**
+     * Stay connected to the broker, reconnecting after it goes away
+     */
+    private void brokerLoop() {
+        while (true) {
+            try (Socket socket = new Socket(brokerHost, brokerPort)) {
+                ClusterLink link = new ClusterLink(socket);
+                link.send(ClusterLink.HELLO, 0, out -> {
+                    out.writeUTF(name);
+                    out.writeUTF(relayAddress);
+                });
+                broker = link;
+                ServerLog.info("broker-connected", null, link.getRemoteAddress());
+                link.run(new ClusterLink.Handler() {
+                    @Override
+                    public void received(ClusterLink link, byte type, long id, byte[] payload) throws IOException {
+                        brokerMessage(type, id, payload);
+                    }
+
+                    @Override
+                    public void closed(ClusterLink link) {
+                        brokerLost();
+                    }
+                });
+            } catch (IOException e) {
+                ServerLog.warn("broker-unreachable", brokerHost + ":" + brokerPort + " " + e.getMessage());
+            }
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Everyone offered to a broker that is gone waits here again
+     */
+    private void brokerLost() {
+        broker = null;
+        for (Long ticket : offers.keySet()) {
+            Offer offer = take(ticket);
+            if (offer != null) {
+                GameServer.enqueue(offer.client, offer.rating);
+            }
+        }
+    }
+
+    private void brokerMessage(byte type, long ticket, byte[] payload) throws IOException {
+        DataInputStream in = ClusterLink.fields(payload);
+        switch (type) {
+            case ClusterLink.PAIR_LOCAL: {
+                Offer first = take(ticket);
+                Offer second = take(in.readLong());
+                if (first != null && second != null) {
+                    GameServer.paired(first.client, first.rating, second.client, second.rating);
+                } else if (first != null || second != null) {
+                    Offer survivor = first != null ? first : second;
+                    GameServer.enqueue(survivor.client, survivor.rating);
+                }
+                break;
+            }
+
+            case ClusterLink.HOST:
+                host(ticket, in.readUTF(), in.readLong(), in.readUTF(), in.readBoolean(), in.readDouble(), in.readLong());
+                break;
+
+            default:
+                ServerLog.warn("cluster-unknown-message", "broker sent type " + type);
+        }
+    }
+
+    /**
+     * Host a match between a local player and one on another node: claim the remote player
+     */
+    private void host(long ticket, String guestAddress, long guestTicket, String guestName, boolean guestBinary,
+                      double guestRating, long guestWaitNanos) {
+        Offer offer = take(ticket);
+        Peer peer;
+        try {
+            peer = hostLink(guestAddress);
+        } catch (IOException e) {
+            // The guest's player waits there until their lobby timeout
+            ServerLog.warn("relay-unreachable", guestAddress + " " + e.getMessage());
+            if (offer != null) {
+                GameServer.enqueue(offer.client, offer.rating);
+            }
+            return;
+        }
+        if (offer == null) {
+            // Our player left before the broker paired them
+            peer.link.send(ClusterLink.RELEASE, guestTicket);
+            return;
+        }
+        peer.claims.put(guestTicket, new Claim(offer, guestName, guestBinary, guestRating,
+            System.nanoTime() - guestWaitNanos));
+        if (!peer.link.send(ClusterLink.CLAIM, guestTicket)) {
+            peer.claims.remove(guestTicket);
+            GameServer.enqueue(offer.client, offer.rating);
+        }
+    }
+
+    /**
+     * A claim sent to a guest node, waiting for CLAIMED or GONE
+     */
+    private static final class Claim {
+        final Offer offer;
+        final String guestName;
+        final boolean guestBinary;
+        final double guestRating;
+        final long guestWaitingSince;
+
+        Claim(Offer offer, String guestName, boolean guestBinary, double guestRating, long guestWaitingSince) {
+            this.offer = offer;
+            this.guestName = guestName;
+            this.guestBinary = guestBinary;
+            this.guestRating = guestRating;
+            this.guestWaitingSince = guestWaitingSince;
+        }
+    }
+
+    // ---- Node-to-node links ----
+
+    private Peer hostLink(String guestAddress) throws IOException {
+        Peer peer = hostLinks.get(guestAddress);
+        if (peer != null && peer.link.isOpen()) {
+            return peer;
+        }
+        synchronized (hostLinks) {
+            peer = hostLinks.get(guestAddress);
+            if (peer == null || !peer.link.isOpen()) {
+                int colon = guestAddress.lastIndexOf(':');
+                Socket socket = new Socket();
+                socket.connect(new InetSocketAddress(guestAddress.substring(0, colon),
+                    Integer.parseInt(guestAddress.substring(colon + 1))));
+                peer = new Peer(new ClusterLink(socket));
+                hostLinks.put(guestAddress, peer);
+                peer.link.start(peer, "cluster-host-" + guestAddress);
+            }
+            return peer;
+        }
+    }
+
+    private void acceptPeers() {
+        while (!relaySocket.isClosed()) {
+            try {
+                Peer peer = new Peer(new ClusterLink(relaySocket.accept()));
+                peer.link.start(peer, "cluster-guest-" + peer.link.getRemoteAddress());
+                ServerLog.info("peer-connected", null, peer.link.getRemoteAddress());
+            } catch (IOException e) {
+                if (!relaySocket.isClosed()) {
+                    ServerLog.warn("relay-accept-failed", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * One link to another node; which messages arrive tells which side of it we are on, the
+     * side that opened it hosts
+     */
+    private final class Peer implements ClusterLink.Handler {
+        final ClusterLink link;
+        // Guest side: our clients playing on the other node, by ticket
+        final Map<Long, ClientHandler> sessions = new ConcurrentHashMap<>();
+        // Host side: remote players as local handlers, by guest ticket
+        final Map<Long, ClientHandler> hosted = new ConcurrentHashMap<>();
+        final Map<Long, Claim> claims = new ConcurrentHashMap<>();
+
+        Peer(ClusterLink link) {
+            this.link = link;
+        }
+
+        @Override
+        public void received(ClusterLink link, byte type, long session, byte[] payload) {
+            switch (type) {
+                // Guest side
+                case ClusterLink.CLAIM:
+                    claimed(session);
+                    break;
+                case ClusterLink.FRAME: {
+                    ClientHandler client = sessions.get(session);
+                    if (client != null) {
+                        client.sendRelayed(payload);
+                    }
+                    break;
+                }
+                case ClusterLink.CLOSE: {
+                    ClientHandler client = sessions.remove(session);
+                    if (client != null && client.endRelay()) {
+                        client.closeAfterFlush();
+                    }
+                    break;
+                }
+                case ClusterLink.RELEASE:
+                    released(session);
+                    break;
+
+                // Host side
+                case ClusterLink.CLAIMED:
+                    startRemoteMatch(session);
+                    break;
+                case ClusterLink.GONE: {
+                    Claim claim = claims.remove(session);
+                    if (claim != null) {
+                        GameServer.enqueue(claim.offer.client, claim.offer.rating);
+                    }
+                    break;
+                }
+                case ClusterLink.INPUT: {
+                    ClientHandler remote = hosted.get(session);
+                    if (remote != null) {
+                        remote.handleRelayedInput(payload);
+                    }
+                    break;
+                }
+                case ClusterLink.LEFT: {
+                    ClientHandler remote = hosted.remove(session);
+                    if (remote != null) {
+                        remote.cleanup();
+                    }
+                    break;
+                }
+
+                default:
+                    ServerLog.warn("cluster-unknown-message", link.getRemoteAddress() + " sent type " + type);
+            }
+        }
+
+        /**
+         * Guest side: a host wants one of our offered players
+         */
+        private void claimed(long ticket) {
+            Offer offer = take(ticket);
+            if (offer == null) {
+                link.send(ClusterLink.GONE, ticket);
+                return;
+            }
+            ClientHandler client = offer.client;
+            Relay relay = new Relay(this, ticket);
+            sessions.put(ticket, client);
+            client.setRelay(relay);
+            // A cleanup() that ran before setRelay() did not tell the host
+            if (client.isCleanedUp() && relay.end()) {
+                sessions.remove(ticket);
+                link.send(ClusterLink.GONE, ticket);
+                return;
+            }
+            link.send(ClusterLink.CLAIMED, ticket);
+            ServerLog.info("relayed", client.getPlayerName(), "to " + link.getRemoteAddress());
+        }
+
+        /**
+         * Guest side: the host's player left before the match started, ours waits again
+         */
+        private void released(long ticket) {
+            ClientHandler client = sessions.remove(ticket);
+            if (client == null) {
+                // Released before it was even claimed
+                Offer offer = take(ticket);
+                if (offer != null) {
+                    GameServer.enqueue(offer.client, offer.rating);
+                }
+                return;
+            }
+            if (client.endRelay()) {
+                client.setRelay(null);
+                GameServer.requeue(client);
+            }
+        }
+
+        /**
+         * Host side: the guest's player is ours, start the match with a stand-in handler
+         */
+        private void startRemoteMatch(long session) {
+            Claim claim = claims.remove(session);
+            if (claim == null) {
+                return;
+            }
+            ClientHandler local = claim.offer.client;
+            RelayConnection connection = new RelayConnection(this, session);
+            ClientHandler remote = ClientHandler.relayed(connection, claim.guestName, claim.guestBinary,
+                claim.guestWaitingSince);
+            hosted.put(session, remote);
+            if (!GameServer.startMatch(local, claim.offer.rating, remote, claim.guestRating)) {
+                // Our player left meanwhile; the guest's player goes back to waiting there
+                hosted.remove(session);
+                connection.open.set(false);
+                remote.cleanup();
+                link.send(ClusterLink.RELEASE, session);
+                if (!local.isCleanedUp()) {
+                    GameServer.enqueue(local, claim.offer.rating);
+                }
+            }
+        }
+
+        @Override
+        public void closed(ClusterLink link) {
+            hostLinks.values().remove(this);
+            // Host side: remote players are gone, their opponents are told as usual
+            for (Long session : hosted.keySet()) {
+                ClientHandler remote = hosted.remove(session);
+                if (remote != null) {
+                    remote.cleanup();
+                }
+            }
+            for (Long session : claims.keySet()) {
+                Claim claim = claims.remove(session);
+                if (claim != null) {
+                    GameServer.enqueue(claim.offer.client, claim.offer.rating);
+                }
+            }
+            // Guest side: our players' matches are gone with the host
+            for (Long session : sessions.keySet()) {
+                ClientHandler client = sessions.remove(session);
+                if (client != null && client.endRelay()) {
+                    client.setRelay(null);
+                    client.sendOpponentLeft();
+                }
+            }
+        }
+    }
+
+    /**
+     * The Connection of a remote player's stand-in handler on the host: frames go to the guest
+     */
+    private static final class RelayConnection implements Connection {
+        private final Peer peer;
+        private final long session;
+        private final AtomicBoolean open = new AtomicBoolean(true);
+
+        RelayConnection(Peer peer, long session) {
+            this.peer = peer;
+            this.session = session;
+        }
+
+        @Override
+        public void send(byte[] frame) {
+            if (open.get()) {
+                peer.link.send(ClusterLink.FRAME, session, frame);
+            }
+        }
+
+        @Override
+        public void close() {
+            // The guest closes its client after the frames already relayed, so both are the same here
+            if (open.compareAndSet(true, false)) {
+                peer.hosted.remove(session);
+                peer.link.send(ClusterLink.CLOSE, session);
+            }
+        }
+
+        @Override
+        public void closeAfterFlush() {
+            close();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open.get() && peer.link.isOpen();
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return "relay " + peer.link.getRemoteAddress();
+        }
+    }
+}
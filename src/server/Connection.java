@@ -0,0 +1,34 @@
+package server;
+
+/**
+ * Connection - The transport a ClientHandler uses to talk to its client
+ * Lets the same game handling run on a blocking socket thread or on an NIO reactor
+ */
+interface Connection {
+    /**
+     * Send one encoded frame to the client (see WireFormat)
+     * The array is not copied and must not be modified afterwards
+     */
+    void send(byte[] frame);
+
+    /**
+     * Close the transport. Safe to call more than once.
+     */
+    void close();
+
+    /**
+     * Close once every frame already sent has been written, e.g. after a final ERROR
+     */
+    void closeAfterFlush();
+
+    /**
+     * Let up to frames outbound frames queue up from now on, for a transport many sessions share
+     * Called on the reading thread before the first session exists (see Multiplexer)
+     */
+    default void growOutbound(int frames) {
+    }
+
+    boolean isOpen();
+
+    String getRemoteAddress();
+}
@@ -1,110 +1,375 @@
 package server;
 
-import utils.Protocol;
+import game.EloRating;
+import game.Match;
 
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * GameServer - Multi-Client Rock-Paper-Scissors Server
  * Accepts multiple clients and pairs them for games
  */
 public class GameServer {
-    private static final int PORT = 12345;
-    private static final List<ClientHandler> waitingClients = new ArrayList<>();
-    private static final List<ClientHandler> allClients = new ArrayList<>();
+    private static final int PORT = ServerConfig.PORT;
+    private static final Matchmaker<ClientHandler> matchmaker = new Matchmaker<>(GameServer::paired,
+        ServerConfig.MATCH_BUCKET_WIDTH, ServerConfig.MATCH_WINDOW, ServerConfig.MATCH_WIDEN_PER_SECOND,
+        ServerConfig.MATCH_MAX_WINDOW);
+    private static final Set<ClientHandler> allClients = ConcurrentHashMap.newKeySet();
+    private static final Map<String, ClientHandler> sessions = new ConcurrentHashMap<>();
+    private static final SecureRandom tokenRandom = new SecureRandom();
+    private static final AtomicLong nextMatchId = new AtomicLong();
+    private static volatile PlayerStatsStore stats;
+    private static volatile RoundJournal journal;
+    private static volatile RoundAnalytics.Refresher analytics;
+    private static volatile ClusterNode cluster;
+    private static final TimerWheel timers = new TimerWheel("rps-timers", ServerConfig.TIMER_TICK_MILLIS, 512);
 
     public static void main(String[] args) {
         System.out.println("=== Rock Paper Scissors Game Server ===");
         System.out.println("Starting server on port " + PORT + "...");
+        ServerMetrics.start();
+        openStats();
+        openJournal();
+        startAnalytics();
+        joinCluster();
+        if (cluster == null && ServerConfig.BOT_DELAY_MILLIS > 0) {
+            matchmaker.setSpillListener(Bot::spilled, ServerConfig.BOT_DELAY_MILLIS);
+        }
+
+        if (ServerConfig.MODE == ServerConfig.Mode.NIO) {
+            try {
+                new NioServer(PORT, ServerConfig.REACTOR_THREADS).run();
+            } catch (IOException e) {
+                System.err.println("Server error: " + e.getMessage());
+                e.printStackTrace();
+            }
+            return;
+        }
+
+        ExecutorService clientExecutor = createClientExecutor();
 
         try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            System.out.println("Server is listening on port " + PORT);
+            System.out.println("Server is listening on port " + PORT + " (" + ServerConfig.MODE + " mode)");
             System.out.println("Waiting for clients to connect...\n");
 
-            // Accept clients in an infinite loop
-            while (true) {
-                try {
-                    // Accept a new client connection
-                    Socket clientSocket = serverSocket.accept();
-                    System.out.println("New connection from: " + clientSocket.getInetAddress());
+            acceptClients(serverSocket, clientExecutor);
+
+        } catch (IOException e) {
+            System.err.println("Server error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Accept clients until the server socket is closed, running each on clientExecutor
+     * Also used by the loopback benchmarks in bench/ to host the game in-process
+     */
+    public static void acceptClients(ServerSocket serverSocket, ExecutorService clientExecutor) {
+        // Accept clients until the socket is closed
+        while (!serverSocket.isClosed()) {
+            try {
+                // Accept a new client connection
+                Socket clientSocket = serverSocket.accept();
 
-                    // Create a handler for this client
-                    ClientHandler clientHandler = new ClientHandler(clientSocket);
+                // Over the limits: turned away before it costs a thread
+                AdmissionControl.Source source = AdmissionControl.admit(clientSocket.getInetAddress());
+                if (source == null) {
+                    AdmissionControl.turnAway(clientSocket);
+                    continue;
+                }
 
-                    // Add to all clients list
-                    synchronized (allClients) {
-                        allClients.add(clientHandler);
-                    }
+                // Create a handler for this client
+                ClientHandler clientHandler = new ClientHandler(clientSocket, clientExecutor);
+                clientHandler.admitted(source);
 
-                    // Start a new thread for this client
-                    Thread clientThread = new Thread(clientHandler);
-                    clientThread.start();
+                // Add to all clients list
+                addClient(clientHandler);
 
-                    System.out.println("Total clients connected: " + allClients.size());
+                // Run this client on its own (platform or virtual) thread
+                clientExecutor.execute(clientHandler);
 
-                } catch (IOException e) {
-                    System.err.println("Error accepting client: " + e.getMessage());
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    ServerLog.warn("accept-failed", e.getMessage());
                 }
             }
+        }
+    }
 
-        } catch (IOException e) {
-            System.err.println("Server error: " + e.getMessage());
-            e.printStackTrace();
+    /**
+     * Create the executor that runs one ClientHandler per task, plus the socket writer tasks
+     * VIRTUAL mode uses Executors.newVirtualThreadPerTaskExecutor() (Java 21), looked up reflectively
+     * so the server still builds and runs with platform threads on older JDKs
+     */
+    private static ExecutorService createClientExecutor() {
+        if (ServerConfig.MODE == ServerConfig.Mode.VIRTUAL) {
+            try {
+                return (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+            } catch (ReflectiveOperationException e) {
+                ServerLog.warn("virtual-threads-unavailable", "Virtual threads are not available on this JDK, using platform threads");
+            }
         }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newCachedThreadPool(task -> new Thread(task, "client-" + threadCount.incrementAndGet()));
+    }
+
+    /**
+     * Register a newly connected client
+     */
+    static void addClient(ClientHandler client) {
+        allClients.add(client);
+        ServerMetrics.connectionOpened();
+    }
+
+    /**
+     * Drop the handler of a connection that was resumed into an existing session
+     */
+    static void removeClient(ClientHandler client) {
+        allClients.remove(client);
+    }
+
+    /**
+     * Register a named client's session
+     * @return the unguessable token it can RESUME with
+     */
+    static String openSession(ClientHandler client) {
+        byte[] bytes = new byte[16];
+        tokenRandom.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, client);
+        return token;
+    }
+
+    /**
+     * @return the session a RESUME token names, or null if it ended or never existed
+     */
+    static ClientHandler findSession(String token) {
+        return sessions.get(token);
+    }
+
+    static void closeSession(String token, ClientHandler client) {
+        sessions.remove(token, client);
     }
 
     /**
-     * Add a client to the waiting list and try to pair them with an opponent
+     * Add a client to the waiting list; the Matchmaker pairs them with an opponent of similar rating
      * This is called by ClientHandler after the client sends their name
      */
-    public static synchronized void addToWaitingList(ClientHandler client) {
-        System.out.println("Adding " + client.getPlayerName() + " to waiting list");
+    public static void addToWaitingList(ClientHandler client) {
+        // Sent before the client can be paired, so WAITING can never arrive after OPPONENT_FOUND
+        client.sendWaitingForOpponent();
+        ServerLog.info("waiting", client.getPlayerName(), null);
 
-        // Check if there's someone waiting
-        if (!waitingClients.isEmpty()) {
-            // Pair with the first waiting client
-            ClientHandler opponent = waitingClients.remove(0);
+        requeue(client);
+    }
 
-            // Pair them together
-            client.setOpponent(opponent);
-            opponent.setOpponent(client);
+    /**
+     * Look for an opponent for a client that was already told it is waiting
+     */
+    static void requeue(ClientHandler client) {
+        PlayerStatsStore stats = GameServer.stats;
+        if (stats == null) {
+            enqueue(client, EloRating.INITIAL);
+            return;
+        }
+        // A writer that is far behind (or gone) must not keep the player from being paired
+        stats.lookup(client.getPlayerName())
+            .completeOnTimeout(null, ServerConfig.STATS_LOOKUP_MILLIS, TimeUnit.MILLISECONDS)
+            .whenComplete((counts, error) ->
+                enqueue(client, counts != null ? PlayerStatsStore.rating(counts) : EloRating.INITIAL));
+    }
 
-            System.out.println("Paired: " + client.getPlayerName() + " vs " + opponent.getPlayerName());
+    static void enqueue(ClientHandler client, double rating) {
+        matchmaker.enqueue(client, rating);
+        // cleanup() may have cancelled just before the join was posted
+        if (client.isCleanedUp()) {
+            matchmaker.cancel(client);
+        }
+    }
 
-        } else {
-            // No one waiting, add this client to waiting list
-            waitingClients.add(client);
-            client.sendMessage(Protocol.createMessage(Protocol.WAITING,
-                "Waiting for an opponent to join..."));
-            System.out.println(client.getPlayerName() + " is waiting for an opponent");
+    /**
+     * Matchmaker.PairListener: start a match between two waiting clients
+     */
+    static void paired(ClientHandler first, double firstRating, ClientHandler second, double secondRating) {
+        if (startMatch(first, firstRating, second, secondRating)) {
+            return;
+        }
+        // Someone who left while being matched: the other one keeps waiting
+        if (!first.isCleanedUp()) {
+            enqueue(first, firstRating);
+        } else if (!second.isCleanedUp()) {
+            enqueue(second, secondRating);
         }
     }
 
+    /**
+     * Start a match and tell both clients
+     * @return false if either client left first; neither has heard of the match then
+     */
+    static boolean startMatch(ClientHandler first, double firstRating, ClientHandler second, double secondRating) {
+        if (first.isCleanedUp() || second.isCleanedUp()) {
+            return false;
+        }
+
+        long matchId = nextMatchId.incrementAndGet();
+        Match<ClientHandler> match = new Match<>(matchId, first, second, ClientHandler::roundResolved);
+        first.setMatch(match);
+        second.setMatch(match);
+
+        // A cleanup() that ran before setMatch() could not see the match - end it here instead,
+        // before the survivor has heard of it
+        if ((first.isCleanedUp() || second.isCleanedUp()) && match.close()) {
+            (first.isCleanedUp() ? second : first).setMatch(null);
+            return false;
+        }
+        // Only now, so neither client can choose before the other side has the match
+        first.sendOpponentFound();
+        second.sendOpponentFound();
+
+        long now = System.nanoTime();
+        ServerMetrics.paired(now - first.getWaitingSince(), now - second.getWaitingSince(),
+            Math.abs(firstRating - secondRating));
+        ServerLog.info("paired", second.getPlayerName(), matchId, first.getPlayerName());
+        return true;
+    }
+
     /**
      * Remove a client from the waiting list
      */
-    public static synchronized void removeFromWaitingList(ClientHandler client) {
-        waitingClients.remove(client);
+    public static void removeFromWaitingList(ClientHandler client) {
+        matchmaker.cancel(client);
+        ClusterNode cluster = GameServer.cluster;
+        if (cluster != null) {
+            cluster.cancel(client);
+        }
         allClients.remove(client);
-        System.out.println("Removed " + client.getPlayerName() + " from server");
-        System.out.println("Active clients: " + allClients.size());
+        ServerLog.info("removed", client.getPlayerName(), null);
+    }
+
+    /**
+     * Load the player statistics and make sure they are written out on shutdown
+     */
+    private static void openStats() {
+        if (ServerConfig.STATS_FILE.isEmpty()) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            PlayerStatsStore store = new PlayerStatsStore(Paths.get(ServerConfig.STATS_FILE));
+            System.out.println("Loaded stats of " + store.getPlayerCount() + " players in "
+                + (System.nanoTime() - start) / 1_000_000 + "ms");
+            Runtime.getRuntime().addShutdownHook(new Thread(store::close, "stats-shutdown"));
+            stats = store;
+        } catch (IOException e) {
+            System.err.println("Player stats disabled: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Start journaling rounds and make sure the journal is committed on shutdown
+     */
+    private static void openJournal() {
+        if (ServerConfig.JOURNAL_DIR.isEmpty()) {
+            return;
+        }
+        try {
+            RoundJournal opened = new RoundJournal(Paths.get(ServerConfig.JOURNAL_DIR), ServerConfig.JOURNAL_SEGMENT_BYTES,
+                ServerConfig.JOURNAL_BUFFER_RECORDS, ServerConfig.JOURNAL_COMMIT_MILLIS);
+            Runtime.getRuntime().addShutdownHook(new Thread(opened::close, "journal-shutdown"));
+            journal = opened;
+            System.out.println("Journaling rounds to " + ServerConfig.JOURNAL_DIR);
+        } catch (IOException e) {
+            System.err.println("Round journal disabled: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Keep the round analytics up to date in the background, for /analytics on the metrics port
+     */
+    private static void startAnalytics() {
+        if (journal == null || ServerConfig.ANALYTICS_REFRESH_MILLIS <= 0) {
+            return;
+        }
+        RoundAnalytics.Refresher refresher = new RoundAnalytics.Refresher(Paths.get(ServerConfig.JOURNAL_DIR),
+            Paths.get(ServerConfig.ANALYTICS_CHECKPOINT), new ForkJoinPool(ServerConfig.ANALYTICS_PARALLELISM),
+            ServerConfig.ANALYTICS_REFRESH_MILLIS);
+        timers.schedule(refresher, timers.now());
+        analytics = refresher;
+    }
+
+    /**
+     * Share the lobby with other nodes when a ClusterBroker is configured
+     */
+    private static void joinCluster() {
+        if (ServerConfig.CLUSTER_BROKER.isEmpty()) {
+            return;
+        }
+        try {
+            ClusterNode node = new ClusterNode(ServerConfig.CLUSTER_NODE, ServerConfig.CLUSTER_BROKER,
+                ServerConfig.CLUSTER_HOST, ServerConfig.CLUSTER_RELAY_PORT);
+            cluster = node;
+            matchmaker.setSpillListener(node::spilled, ServerConfig.CLUSTER_SPILL_MILLIS);
+            node.start();
+            System.out.println("Cluster node " + ServerConfig.CLUSTER_NODE + ", broker " + ServerConfig.CLUSTER_BROKER);
+        } catch (IOException e) {
+            System.err.println("Cluster disabled: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Persistent player statistics, or null when they are switched off
+     */
+    static PlayerStatsStore getStats() {
+        return stats;
+    }
+
+    static RoundJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * The latest RoundAnalytics report, or null if there is none (yet)
+     */
+    static String getAnalyticsReport() {
+        RoundAnalytics.Refresher analytics = GameServer.analytics;
+        return analytics != null ? analytics.getReport() : null;
+    }
+
+    /**
+     * The timer wheel behind every client's turn, lobby and idle timeouts
+     */
+    static TimerWheel timers() {
+        return timers;
     }
 
     /**
      * Get the number of clients waiting for an opponent
      */
-    public static synchronized int getWaitingCount() {
-        return waitingClients.size();
+    public static int getWaitingCount() {
+        return matchmaker.getWaitingCount();
     }
 
     /**
      * Get total number of connected clients
      */
-    public static synchronized int getTotalClients() {
+    public static int getTotalClients() {
         return allClients.size();
     }
 }
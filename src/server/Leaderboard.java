@@ -0,0 +1,384 @@
+package server;
+
+import utils.BinaryProtocol;
+import utils.Protocol;
+
+import java.util.Arrays;
+
+/**
+ * Leaderboard - Top players by wins, win rate and current win streak, kept up to date
+ * round by round
+ *
+ * Owned by the PlayerStatsStore writer thread, which calls update() for every player whose
+ * counts changed and publish() after every batch. Readers only ever see a Snapshot: an
+ * immutable set of frames, already encoded for both wire formats, swapped in with one
+ * volatile write. Serving LEADERBOARD is therefore a volatile read and a send, no matter how
+ * many clients ask at once.
+ *
+ * Each ranking keeps more candidates than it shows (4x), sorted by score, and every other
+ * player with a score in an indexed max-heap. No candidate ever ranks below the top of the
+ * heap: when one drops below it (a streak broken, a win rate falling) the two swap places.
+ * The shown places are therefore always exact without ever scanning all players. Most
+ * updates move a player who is nowhere near the top a level or two within the heap, so
+ * they cost O(1) on average; a change at the top costs O(log n). Nothing is allocated
+ * once the arrays have grown. Only rebuild(), after loading, looks at every player.
+ */
+final class Leaderboard {
+    // Longest name listed, so a LEADERBOARD frame stays small however players name themselves
+    private static final int MAX_NAME_CHARS = 64;
+
+    /**
+     * What players are ranked by; players with a score of 0 are not listed
+     */
+    enum Ranking {
+        WINS(Protocol.BY_WINS, BinaryProtocol.BY_WINS),
+        WIN_RATE(Protocol.BY_WIN_RATE, BinaryProtocol.BY_WIN_RATE),
+        STREAK(Protocol.BY_STREAK, BinaryProtocol.BY_STREAK);
+
+        private static final Ranking[] ALL = values();
+
+        final String wireName;
+        final byte code;
+
+        Ranking(String wireName, byte code) {
+            this.wireName = wireName;
+            this.code = code;
+        }
+
+        /**
+         * The ranking for a text request, WINS when none is given, or null if unknown
+         */
+        static Ranking parse(String name) {
+            if (name.isEmpty()) {
+                return WINS;
+            }
+            for (Ranking ranking : ALL) {
+                if (ranking.wireName.equalsIgnoreCase(name)) {
+                    return ranking;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * The ranking for a binary request, or null if unknown
+         */
+        static Ranking fromCode(int code) {
+            for (Ranking ranking : ALL) {
+                if (ranking.code == code) {
+                    return ranking;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Published leaderboards, encoded once per wire format
+     */
+    static final class Snapshot {
+        private final byte[][][] frames;  // [WireFormat.ordinal()][Ranking.ordinal()]
+
+        private Snapshot(byte[][][] frames) {
+            this.frames = frames;
+        }
+
+        byte[] frame(WireFormat format, Ranking ranking) {
+            return frames[format.ordinal()][ranking.ordinal()];
+        }
+    }
+
+    private final int size;
+    private final long minGames;
+    private final Board[] boards = new Board[Ranking.values().length];
+    private volatile Snapshot snapshot;
+
+    /**
+     * @param size     places shown per ranking
+     * @param minGames games a player needs before being ranked by win rate
+     */
+    Leaderboard(int size, long minGames) {
+        this.size = size;
+        this.minGames = minGames;
+        for (Ranking ranking : Ranking.values()) {
+            boards[ranking.ordinal()] = new Board(ranking);
+        }
+    }
+
+    /**
+     * The latest published leaderboards; safe from any thread
+     */
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Rank every player from scratch and publish, e.g. after loading (writer thread only)
+     */
+    void rebuild(String[] names, long[] counts, int players) {
+        for (Board board : boards) {
+            board.rebuild(counts, players);
+        }
+        publish(names, counts);
+    }
+
+    /**
+     * A player's counts changed (writer thread only)
+     */
+    void update(int player, long wins, long losses, long draws, long streak) {
+        for (Board board : boards) {
+            board.update(player, score(board.ranking, wins, losses, draws, streak));
+        }
+    }
+
+    /**
+     * Publish a new snapshot if any shown place changed (writer thread only)
+     * @param counts COLUMNS per player, as kept by PlayerStatsStore
+     */
+    void publish(String[] names, long[] counts) {
+        boolean changed = snapshot == null;
+        for (Board board : boards) {
+            changed |= board.changed;
+            board.changed = false;
+        }
+        if (!changed) {
+            return;
+        }
+
+        byte[][][] frames = new byte[WireFormat.values().length][boards.length][];
+        for (Board board : boards) {
+            String text = board.ranking.wireName + Protocol.DELIMITER + board.describe(names, counts);
+            for (WireFormat format : WireFormat.values()) {
+                frames[format.ordinal()][board.ranking.ordinal()] = format.leaderboard(text);
+            }
+        }
+        snapshot = new Snapshot(frames);
+    }
+
+    private double score(Ranking ranking, long wins, long losses, long draws, long streak) {
+        switch (ranking) {
+            case WINS:
+                return wins;
+            case WIN_RATE:
+                long games = wins + losses + draws;
+                return games >= minGames && games > 0 ? (double) wins / games : 0;
+            default:
+                return streak;
+        }
+    }
+
+    /**
+     * Candidates for one ranking, best first, above a heap of every other player with a score
+     * A player ranks before another with a higher score, or the same score and a lower index.
+     */
+    private final class Board {
+        private static final int NOWHERE = -1;    // slot of a player without a score
+        private static final int CANDIDATE = -2;  // slot of a candidate
+
+        final Ranking ranking;
+        final int capacity = size * 4;
+        final int[] players = new int[capacity];
+        int count;
+        int[] heap = new int[0];      // max-heap of the scored players who are not candidates
+        int heapSize;
+        int[] slot = new int[0];      // per player: heap index, CANDIDATE or NOWHERE
+        double[] scores = new double[0];
+        boolean changed;              // a shown place changed since the last publish
+
+        Board(Ranking ranking) {
+            this.ranking = ranking;
+        }
+
+        void update(int player, double score) {
+            grow(player + 1);
+            double previous = scores[player];
+            int where = slot[player];
+            if (previous == score) {
+                // Same place, but a shown entry's other counts may have changed
+                changed |= where == CANDIDATE && indexOf(player) < size;
+                return;
+            }
+            scores[player] = score;
+            if (where == CANDIDATE) {
+                remove(indexOf(player));
+                if (score > 0) {
+                    insert(player);
+                }
+            } else if (where >= 0) {
+                if (score <= 0) {
+                    heapRemove(where);
+                } else if (score > previous) {
+                    siftUp(where);
+                } else {
+                    siftDown(where);
+                }
+            } else if (score > 0) {
+                heapAdd(player);
+            }
+            balance();
+        }
+
+        void rebuild(long[] counts, int players) {
+            count = 0;
+            heapSize = 0;
+            grow(players);
+            for (int player = 0; player < players; player++) {
+                int at = player * PlayerStatsStore.COLUMNS;
+                double score = score(ranking, counts[at + PlayerStatsStore.WINS], counts[at + PlayerStatsStore.LOSSES],
+                    counts[at + PlayerStatsStore.DRAWS], counts[at + PlayerStatsStore.STREAK]);
+                scores[player] = score;
+                slot[player] = NOWHERE;
+                if (score > 0) {
+                    slot[player] = heapSize;
+                    heap[heapSize++] = player;
+                }
+            }
+            for (int at = heapSize / 2 - 1; at >= 0; at--) {
+                siftDown(at);
+            }
+            balance();
+            changed = true;
+        }
+
+        /**
+         * Fill the candidates from the heap, and swap any that rank below the top of the heap
+         */
+        private void balance() {
+            while (heapSize > 0 && (count < capacity || before(heap[0], players[count - 1]))) {
+                int best = heap[0];
+                heapRemove(0);
+                if (count == capacity) {
+                    int last = players[count - 1];
+                    remove(count - 1);
+                    heapAdd(last);
+                }
+                insert(best);
+            }
+        }
+
+        private boolean before(int a, int b) {
+            return scores[a] > scores[b] || scores[a] == scores[b] && a < b;
+        }
+
+        private int indexOf(int player) {
+            for (int i = 0; i < count; i++) {
+                if (players[i] == player) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void remove(int at) {
+            slot[players[at]] = NOWHERE;
+            count--;
+            System.arraycopy(players, at + 1, players, at, count - at);
+            changed |= at < size;
+        }
+
+        /**
+         * Insert a candidate in order, there must be room
+         */
+        private void insert(int player) {
+            int at = count;
+            while (at > 0 && before(player, players[at - 1])) {
+                at--;
+            }
+            System.arraycopy(players, at, players, at + 1, count - at);
+            players[at] = player;
+            slot[player] = CANDIDATE;
+            count++;
+            changed |= at < size;
+        }
+
+        private void heapAdd(int player) {
+            heap[heapSize] = player;
+            siftUp(heapSize++);
+        }
+
+        private void heapRemove(int at) {
+            slot[heap[at]] = NOWHERE;
+            int last = heap[--heapSize];
+            if (at < heapSize) {
+                heap[at] = last;
+                siftUp(at);
+                siftDown(slot[last]);
+            }
+        }
+
+        private void siftUp(int at) {
+            int player = heap[at];
+            while (at > 0) {
+                int parent = (at - 1) >>> 1;
+                if (!before(player, heap[parent])) {
+                    break;
+                }
+                move(heap[parent], at);
+                at = parent;
+            }
+            move(player, at);
+        }
+
+        private void siftDown(int at) {
+            int player = heap[at];
+            int half = heapSize >>> 1;
+            while (at < half) {
+                int child = 2 * at + 1;
+                if (child + 1 < heapSize && before(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!before(heap[child], player)) {
+                    break;
+                }
+                move(heap[child], at);
+                at = child;
+            }
+            move(player, at);
+        }
+
+        private void move(int player, int at) {
+            heap[at] = player;
+            slot[player] = at;
+        }
+
+        private void grow(int players) {
+            if (players > scores.length) {
+                int length = Math.max(players, scores.length * 2);
+                int from = scores.length;
+                scores = Arrays.copyOf(scores, length);
+                heap = Arrays.copyOf(heap, length);
+                slot = Arrays.copyOf(slot, length);
+                Arrays.fill(slot, from, length, NOWHERE);
+            }
+        }
+
+        String describe(String[] names, long[] counts) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < Math.min(size, count); i++) {
+                int at = players[i] * PlayerStatsStore.COLUMNS;
+                if (i > 0) {
+                    text.append(Protocol.ENTRY_DELIMITER);
+                }
+                text.append(counts[at + PlayerStatsStore.WINS]).append(Protocol.FIELD_DELIMITER)
+                    .append(counts[at + PlayerStatsStore.LOSSES]).append(Protocol.FIELD_DELIMITER)
+                    .append(counts[at + PlayerStatsStore.DRAWS]).append(Protocol.FIELD_DELIMITER)
+                    .append(counts[at + PlayerStatsStore.STREAK]).append(Protocol.FIELD_DELIMITER);
+                appendName(text, names[players[i]]);
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * Append up to MAX_NAME_CHARS of name, with the list's delimiters and control characters as '_'
+     * Names are not checked at join, and one '|' would otherwise break every list it is on
+     */
+    private static void appendName(StringBuilder text, String name) {
+        int length = Math.min(name.length(), MAX_NAME_CHARS);
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            boolean delimiter = Protocol.ENTRY_DELIMITER.indexOf(c) >= 0 || Protocol.FIELD_DELIMITER.indexOf(c) >= 0;
+            text.append(delimiter || c < ' ' ? '_' : c);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package server;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Matchmaker - Pairs waiting players of similar rating, on its own thread
+ *
+ * Connection threads only post joins and cancels to a lock-free inbox; one matchmaker
+ * thread owns the waiting players and does all the pairing, so a burst of joins never
+ * makes connection threads wait for each other.
+ *
+ * Waiting players sit in rating buckets (bucketWidth points each, oldest first), and a
+ * bitmap marks the buckets that have anyone in them. A new player is offered the head of
+ * the nearest occupied bucket within their rating window, found by scanning the bitmap
+ * outwards - the cost depends on the number of buckets, never on how many players wait.
+ *
+ * The window starts at initialWindow and widens by widenPerSecond for as long as a player
+ * waits (up to maxWindow, 0 = no limit). Every sweep interval the oldest player of each
+ * occupied bucket looks again with their wider window. bucketWidth should not be larger
+ * than initialWindow, so players in the same bucket always accept each other.
+ *
+ * With a SpillListener, players still unpaired after the spill delay are taken out and
+ * handed to it instead, e.g. to look for an opponent on other cluster nodes.
+ */
+public final class Matchmaker<P> {
+    /**
+     * Told about every pair, on the matchmaker thread
+     */
+    public interface PairListener<P> {
+        void paired(P first, double firstRating, P second, double secondRating);
+    }
+
+    /**
+     * Told about every player who waited longer than the spill delay, on the matchmaker thread
+     */
+    public interface SpillListener<P> {
+        void spilled(P player, double rating, long waitedNanos);
+    }
+
+    // Ratings outside this range share the first or last bucket
+    private static final double MAX_RATING = 4000;
+    private static final long SWEEP_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * A waiting player, linked into their bucket; also used to post joins and cancels
+     */
+    private static final class Ticket<P> {
+        final P player;
+        final double rating;
+        final long since = System.nanoTime();
+        final boolean cancel;
+        int bucket;
+        Ticket<P> prev;
+        Ticket<P> next;
+
+        Ticket(P player, double rating, boolean cancel) {
+            this.player = player;
+            this.rating = rating;
+            this.cancel = cancel;
+        }
+    }
+
+    private final PairListener<P> listener;
+    private final double bucketWidth;
+    private final double initialWindow;
+    private final double widenPerNano;
+    private final double maxWindow;
+
+    private final ConcurrentLinkedQueue<Ticket<P>> inbox = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean sleeping;
+    private volatile int waitingCount;
+    private volatile SpillListener<P> spillListener;
+    private volatile long spillNanos;
+
+    // Matchmaker thread only
+    private final Ticket<P>[] heads;
+    private final Ticket<P>[] tails;
+    private final BitSet occupied;
+    private final Map<P, Ticket<P>> waiting = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public Matchmaker(PairListener<P> listener, double bucketWidth, double initialWindow,
+                      double widenPerSecond, double maxWindow) {
+        this.listener = listener;
+        this.bucketWidth = bucketWidth;
+        this.initialWindow = initialWindow;
+        this.widenPerNano = widenPerSecond / 1e9;
+        this.maxWindow = maxWindow > 0 ? maxWindow : Double.POSITIVE_INFINITY;
+
+        int buckets = (int) Math.ceil(MAX_RATING / bucketWidth);
+        this.heads = (Ticket<P>[]) new Ticket<?>[buckets];
+        this.tails = (Ticket<P>[]) new Ticket<?>[buckets];
+        this.occupied = new BitSet(buckets);
+
+        thread = new Thread(this::run, "matchmaker");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Hand players who are still waiting after afterMillis to listener
+     */
+    public void setSpillListener(SpillListener<P> listener, long afterMillis) {
+        this.spillNanos = TimeUnit.MILLISECONDS.toNanos(afterMillis);
+        this.spillListener = listener;
+    }
+
+    /**
+     * Start looking for an opponent for player; never blocks
+     */
+    public void enqueue(P player, double rating) {
+        post(new Ticket<>(player, rating, false));
+    }
+
+    /**
+     * Stop looking for an opponent, e.g. when the player disconnects
+     */
+    public void cancel(P player) {
+        post(new Ticket<>(player, 0, true));
+    }
+
+    /**
+     * Players waiting for an opponent, as of the last time the matchmaker looked
+     */
+    public int getWaitingCount() {
+        return waitingCount;
+    }
+
+    private void post(Ticket<P> ticket) {
+        inbox.add(ticket);
+        if (sleeping) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void run() {
+        // The listeners start matches and bots here: a slow client must not hold up pairing everyone else
+        OutboundQueue.neverBlockOnThisThread();
+        long nextSweep = System.nanoTime() + SWEEP_NANOS;
+        while (true) {
+            Ticket<P> ticket;
+            while ((ticket = inbox.poll()) != null) {
+                try {
+                    if (ticket.cancel) {
+                        remove(ticket.player);
+                    } else {
+                        join(ticket);
+                    }
+                } catch (RuntimeException e) {
+                    ServerLog.error("matchmaking-failed", String.valueOf(e));
+                }
+            }
+
+            long now = System.nanoTime();
+            if (now - nextSweep >= 0) {
+                sweep(now);
+                nextSweep = now + SWEEP_NANOS;
+            }
+            waitingCount = waiting.size();
+
+            // Sleep until the next post, or the next sweep if anyone is waiting
+            sleeping = true;
+            if (inbox.isEmpty()) {
+                if (waiting.isEmpty()) {
+                    LockSupport.park(this);
+                } else {
+                    LockSupport.parkNanos(this, nextSweep - now);
+                }
+            }
+            sleeping = false;
+        }
+    }
+
+    private void join(Ticket<P> ticket) {
+        remove(ticket.player);
+        ticket.bucket = bucketOf(ticket.rating);
+        Ticket<P> opponent = findOpponent(ticket, initialWindow);
+        if (opponent != null) {
+            unlink(opponent);
+            pair(opponent, ticket);
+        } else {
+            link(ticket);
+        }
+    }
+
+    /**
+     * Spill everyone who waited too long, then give the longest waiting player of every bucket
+     * another look with their widened window
+     */
+    private void sweep(long now) {
+        SpillListener<P> spillListener = this.spillListener;
+        for (int bucket = occupied.nextSetBit(0); bucket >= 0; bucket = occupied.nextSetBit(bucket + 1)) {
+            // Buckets are oldest first, so the spilled players are a prefix
+            while (spillListener != null && heads[bucket] != null && now - heads[bucket].since >= spillNanos) {
+                spill(heads[bucket], now - heads[bucket].since, spillListener);
+            }
+            Ticket<P> oldest = heads[bucket];
+            if (oldest == null) {
+                continue;
+            }
+            double window = Math.min(initialWindow + (now - oldest.since) * widenPerNano, maxWindow);
+            if (window <= initialWindow) {
+                continue;
+            }
+            Ticket<P> opponent = findOpponent(oldest, window);
+            if (opponent != null) {
+                unlink(oldest);
+                unlink(opponent);
+                pair(oldest, opponent);
+            }
+        }
+    }
+
+    /**
+     * The head of the occupied bucket nearest to the ticket's own, if within window
+     */
+    private Ticket<P> findOpponent(Ticket<P> ticket, double window) {
+        int center = ticket.bucket;
+        int lowest = bucketOf(ticket.rating - window);
+        int highest = bucketOf(ticket.rating + window);
+        int up = occupied.nextSetBit(center);
+        int down = center > 0 ? occupied.previousSetBit(center - 1) : -1;
+
+        while (true) {
+            boolean canGoUp = up >= 0 && up <= highest;
+            boolean canGoDown = down >= lowest;
+            if (!canGoUp && !canGoDown) {
+                return null;
+            }
+            int bucket;
+            if (canGoUp && (!canGoDown || up - center <= center - down)) {
+                bucket = up;
+                up = occupied.nextSetBit(up + 1);
+            } else {
+                bucket = down;
+                down = down > 0 ? occupied.previousSetBit(down - 1) : -1;
+            }
+
+            Ticket<P> candidate = heads[bucket] != ticket ? heads[bucket] : ticket.next;
+            if (candidate != null && Math.abs(candidate.rating - ticket.rating) <= window) {
+                return candidate;
+            }
+        }
+    }
+
+    private void pair(Ticket<P> first, Ticket<P> second) {
+        waiting.remove(first.player);
+        waiting.remove(second.player);
+        try {
+            listener.paired(first.player, first.rating, second.player, second.rating);
+        } catch (RuntimeException e) {
+            ServerLog.error("pairing-failed", String.valueOf(e));
+        }
+    }
+
+    private void spill(Ticket<P> ticket, long waitedNanos, SpillListener<P> spillListener) {
+        unlink(ticket);
+        waiting.remove(ticket.player);
+        try {
+            spillListener.spilled(ticket.player, ticket.rating, waitedNanos);
+        } catch (RuntimeException e) {
+            ServerLog.error("spill-failed", String.valueOf(e));
+        }
+    }
+
+    private void remove(P player) {
+        Ticket<P> ticket = waiting.remove(player);
+        if (ticket != null) {
+            unlink(ticket);
+        }
+    }
+
+    private void link(Ticket<P> ticket) {
+        int bucket = ticket.bucket;
+        ticket.prev = tails[bucket];
+        ticket.next = null;
+        if (tails[bucket] != null) {
+            tails[bucket].next = ticket;
+        } else {
+            heads[bucket] = ticket;
+            occupied.set(bucket);
+        }
+        tails[bucket] = ticket;
+        waiting.put(ticket.player, ticket);
+    }
+
+    private void unlink(Ticket<P> ticket) {
+        int bucket = ticket.bucket;
+        if (ticket.prev != null) {
+            ticket.prev.next = ticket.next;
+        } else {
+            heads[bucket] = ticket.next;
+        }
+        if (ticket.next != null) {
+            ticket.next.prev = ticket.prev;
+        } else {
+            tails[bucket] = ticket.prev;
+        }
+        if (heads[bucket] == null) {
+            occupied.clear(bucket);
+        }
+        ticket.prev = null;
+        ticket.next = null;
+    }
+
+    private int bucketOf(double rating) {
+        return (int) Math.max(0, Math.min(heads.length - 1, Math.floor(rating / bucketWidth)));
+    }
+}
@@ -0,0 +1,56 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+/**
+ * MetricsEndpoint - Serves ServerMetrics to Prometheus over plain HTTP
+ * GET /metrics returns the text exposition format; one daemon thread is plenty for a scraper
+ * GET /analytics returns the latest RoundAnalytics report (404 while there is none)
+ */
+final class MetricsEndpoint {
+    private static final String PROMETHEUS_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String TEXT_TYPE = "text/plain; charset=utf-8";
+
+    private MetricsEndpoint() {
+    }
+
+    static void start(String host, int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext("/metrics", exchange -> handle(exchange, PROMETHEUS_TYPE, ServerMetrics.prometheus()));
+        server.createContext("/analytics", exchange -> handle(exchange, TEXT_TYPE, GameServer.getAnalyticsReport()));
+        server.setExecutor(Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-http");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+    }
+
+    private static void handle(HttpExchange exchange, String contentType, String text) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (text == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] body = text.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
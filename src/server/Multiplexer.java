@@ -0,0 +1,164 @@
+package server;
+
+import utils.BinaryProtocol;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multiplexer - The player sessions of one connection that sent CONNECT_MUX
+ *
+ * Each session is an ordinary binary ClientHandler whose Connection is a Session: the frames
+ * it sends go out on the shared transport behind its session id, and closing it ends only
+ * that session, which the client hears as CLOSED. The transport's own handler takes the
+ * admission token for every incoming frame and hands it here to be routed by session id, so
+ * thousands of players pair, play and time out independently while sharing one socket, one
+ * read loop and one outbound queue. Each session holds an admission slot and a message
+ * bucket of its own: a session sending too fast is shed on its own (ERROR, then CLOSED)
+ * while the others carry on. A connection carries at most rps.mux.maxSessions, and all of
+ * them end when it closes.
+ */
+final class Multiplexer {
+    private static final AtomicInteger openSessions = new AtomicInteger();  // on every connection
+    private static final byte[] CLOSED = BinaryProtocol.createClosed();
+
+    private final Connection transport;
+    private final AdmissionControl.Source source;  // the transport's, for its sessions' rate limits
+    private final Map<Integer, Session> sessions = new ConcurrentHashMap<>();
+
+    Multiplexer(Connection transport, AdmissionControl.Source source) {
+        this.transport = transport;
+        this.source = source;
+        transport.growOutbound(ServerConfig.MUX_OUT_CAPACITY);
+    }
+
+    /**
+     * @return true if the frame at bytes[offset] counts against a session's own rate: it is for
+     * a session open here, or opens a new one (whose first token it takes)
+     */
+    boolean isSessionFrame(byte[] bytes, int offset) {
+        boolean known = sessions.containsKey(BinaryProtocol.readSession(bytes, offset));
+        return bytes[offset + BinaryProtocol.SESSION_BYTES] == BinaryProtocol.OPEN ? !known : known;
+    }
+
+    /**
+     * Route one multiplexed frame held in bytes[offset, offset + length), on the transport's reading thread
+     * The bytes are only valid during the call
+     */
+    void dispatch(byte[] bytes, int offset, int length) {
+        int id = BinaryProtocol.readSession(bytes, offset);
+        int start = offset + BinaryProtocol.SESSION_BYTES;
+        Session session = sessions.get(id);
+        if (bytes[start] == BinaryProtocol.OPEN) {
+            open(id, session, BinaryProtocol.readString(bytes, start));
+        } else if (session != null) {
+            if (session.messages != null && !session.messages.tryTake(GameServer.timers().now())) {
+                // Only this session is over its rate, the others on the connection carry on
+                session.handler.shed();
+                return;
+            }
+            session.handler.handleFrame(bytes[start], length > BinaryProtocol.SESSION_BYTES + 1 ? bytes[start + 1] : (byte) 0);
+        } else {
+            // Ended just now, or never opened
+            transport.send(BinaryProtocol.createMuxFrame(id, CLOSED));
+        }
+    }
+
+    private void open(int id, Session existing, String name) {
+        if (existing != null) {
+            ServerMetrics.error(ServerMetrics.ErrorType.UNKNOWN_COMMAND);
+            transport.send(BinaryProtocol.createMuxFrame(id, WireFormat.BINARY.error(WireFormat.SESSION_OPEN)));
+            return;
+        }
+        if (sessions.size() >= ServerConfig.MUX_MAX_SESSIONS || !AdmissionControl.admitSession()) {
+            ServerLog.log(ServerLog.Level.DEBUG, "session-refused", name, ServerLog.NO_MATCH,
+                "multiplexed", transport.getRemoteAddress());
+            transport.send(BinaryProtocol.createMuxFrame(id, WireFormat.BINARY.error(WireFormat.SERVER_BUSY)));
+            transport.send(BinaryProtocol.createMuxFrame(id, CLOSED));
+            return;
+        }
+        Session session = new Session(id);
+        sessions.put(id, session);
+        openSessions.incrementAndGet();
+        session.handler.join(name);
+        if (!transport.isOpen()) {
+            // Closed while opening, closeAll() may not have seen this session
+            session.handler.endSession();
+        }
+    }
+
+    /**
+     * The transport closed: end every session still on it
+     */
+    void closeAll() {
+        for (Session session : sessions.values()) {
+            session.handler.endSession();
+        }
+    }
+
+    /**
+     * Sessions open on all multiplexed connections
+     */
+    static int getSessionCount() {
+        return openSessions.get();
+    }
+
+    /**
+     * The Connection of one session, a slice of the shared transport
+     */
+    private final class Session implements Connection {
+        private final int id;
+        private final String remoteAddress;
+        private final AtomicBoolean open = new AtomicBoolean(true);
+        private final TokenBucket messages;  // null if not rate-limited
+        private final ClientHandler handler;
+
+        Session(int id) {
+            this.id = id;
+            this.remoteAddress = transport.getRemoteAddress() + "#" + id;
+            this.messages = AdmissionControl.sessionMessages(source);
+            if (messages != null) {
+                // For the OPEN frame
+                messages.tryTake(GameServer.timers().now());
+            }
+            this.handler = ClientHandler.multiplexed(this);
+        }
+
+        @Override
+        public void send(byte[] frame) {
+            if (open.get()) {
+                transport.send(BinaryProtocol.createMuxFrame(id, frame));
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!open.compareAndSet(true, false)) {
+                return;
+            }
+            sessions.remove(id, this);
+            openSessions.decrementAndGet();
+            AdmissionControl.releaseSession();
+            // Queued behind everything the session was sent, so CLOSED is the last the client hears of it
+            transport.send(BinaryProtocol.createMuxFrame(id, CLOSED));
+            handler.connectionClosed(this);
+        }
+
+        @Override
+        public void closeAfterFlush() {
+            close();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open.get() && transport.isOpen();
+        }
+
+        @Override
+        public String getRemoteAddress() {
+            return remoteAddress;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package server;
+
+import utils.BinaryProtocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * NioConnection - Non-blocking transport for one client, owned by a Reactor
+ * Splits incoming bytes into protocol lines (or binary or multiplexed frames). Outgoing frames
+ * wait in a bounded OutboundQueue; the reactor copies everything queued into its write buffer
+ * and writes it with one call, keeping only the unwritten tail here when the socket is full.
+ * Frames sent on the reactor thread itself (replies to a read) are flushed once, at the end
+ * of the reactor's select iteration, rather than one write call each.
+ * A frame larger than that buffer (a long LEADERBOARD list) is written on its own, straight
+ * from its array.
+ */
+class NioConnection implements Connection {
+    private static final int INITIAL_READ_BUFFER = 256;
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    private final Reactor reactor;
+    private final SocketChannel channel;
+    private final String remoteAddress;
+    private final ClientHandler handler;
+    private final OutboundQueue outbound = new OutboundQueue(ServerConfig.OUTBOUND_CAPACITY);
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean open = new AtomicBoolean(true);
+    private volatile boolean closing;  // close as soon as the queue is flushed
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+    private SelectionKey key;
+    private ByteBuffer unwritten;  // reactor only: part of the last batch the socket did not take
+    private byte[] carry;          // reactor only: frame that did not fit into the last batch
+
+    NioConnection(Reactor reactor, SocketChannel channel, AdmissionControl.Source source) throws IOException {
+        this.reactor = reactor;
+        this.channel = channel;
+        this.remoteAddress = String.valueOf(channel.getRemoteAddress());
+        this.handler = new ClientHandler(this);
+        handler.admitted(source);
+        GameServer.addClient(handler);
+        handler.onConnected();
+    }
+
+    void attach(SelectionKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Called by the reactor when the channel has bytes to read
+     */
+    void onReadable() {
+        int read;
+        try {
+            read = channel.read(readBuffer);
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        if (read < 0) {
+            close();
+            return;
+        }
+
+        readBuffer.flip();
+        byte[] bytes = readBuffer.array();
+        int position = readBuffer.position();
+        int limit = readBuffer.limit();
+        while (position < limit && open.get()) {
+            // The handler may switch to binary or multiplexed framing part-way through a read
+            int consumed = handler.isMultiplexed() ? dispatchMuxFrame(bytes, position, limit)
+                : handler.isBinary() ? dispatchFrame(bytes, position, limit)
+                : dispatchLine(bytes, position, limit);
+            if (consumed < 0) {
+                ServerLog.warn("bad-frame", remoteAddress);
+                ServerMetrics.error(ServerMetrics.ErrorType.BAD_FRAME);
+                close();
+                return;
+            }
+            if (consumed == 0) {
+                break;
+            }
+            position += consumed;
+        }
+        readBuffer.position(position);
+        readBuffer.compact();
+
+        // A partial line filled the whole buffer - grow it, up to the line limit
+        if (!readBuffer.hasRemaining()) {
+            if (readBuffer.capacity() >= MAX_LINE_LENGTH) {
+                ServerLog.warn("line-too-long", remoteAddress);
+                close();
+                return;
+            }
+            ByteBuffer bigger = ByteBuffer.allocate(readBuffer.capacity() * 2);
+            readBuffer.flip();
+            bigger.put(readBuffer);
+            readBuffer = bigger;
+        }
+    }
+
+    /**
+     * Hand one complete text line to the handler
+     * @return bytes consumed, or 0 if the line is not complete yet
+     */
+    private int dispatchLine(byte[] bytes, int start, int limit) {
+        for (int i = start; i < limit; i++) {
+            if (bytes[i] == '\n') {
+                int end = (i > start && bytes[i - 1] == '\r') ? i - 1 : i;
+                handler.handleMessage(bytes, start, end - start);
+                return i + 1 - start;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Hand one complete binary frame to the handler
+     * @return bytes consumed, 0 if the frame is not complete yet, or -1 for a bad frame
+     */
+    private int dispatchFrame(byte[] bytes, int start, int limit) {
+        int length = BinaryProtocol.frameLength(bytes, start, limit - start);
+        if (length > 0) {
+            handler.handleFrame(bytes[start], length > 1 ? bytes[start + 1] : 0);
+        }
+        return length;
+    }
+
+    /**
+     * Hand one complete multiplexed frame to the handler
+     * @return bytes consumed, 0 if the frame is not complete yet, or -1 for a bad frame
+     */
+    private int dispatchMuxFrame(byte[] bytes, int start, int limit) {
+        int length = BinaryProtocol.muxFrameLength(bytes, start, limit - start);
+        if (length > 0) {
+            handler.handleMuxFrame(bytes, start, length);
+        }
+        return length;
+    }
+
+    /**
+     * Called by the reactor when the socket can take more bytes
+     */
+    void onWritable() {
+        flush();
+    }
+
+    @Override
+    public void send(byte[] frame) {
+        if (!open.get()) {
+            return;
+        }
+        if (!outbound.offer(frame)) {
+            ServerLog.warn("slow-consumer-disconnected", remoteAddress);
+            ServerMetrics.error(ServerMetrics.ErrorType.SLOW_CONSUMER);
+            close();
+            return;
+        }
+
+        scheduleFlush();
+    }
+
+    @Override
+    public void closeAfterFlush() {
+        closing = true;
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        if (reactor.inReactorThread()) {
+            reactor.flushLater(this);
+        } else {
+            reactor.execute(this::flush);
+        }
+    }
+
+    /**
+     * Write as much of the queue as the socket accepts, runs on the reactor thread only
+     * Queued frames are coalesced into the reactor's write buffer, so a burst costs one write call
+     */
+    void flush() {
+        flushScheduled.set(false);
+        if (!open.get() || key == null) {
+            return;
+        }
+        try {
+            if (unwritten != null) {
+                channel.write(unwritten);
+                if (unwritten.hasRemaining()) {
+                    return;
+                }
+                unwritten = null;
+            }
+
+            ByteBuffer batch = reactor.getWriteBuffer();
+            while (carry != null || !outbound.isEmpty()) {
+                batch.clear();
+                byte[] frame;
+                while ((frame = carry != null ? carry : outbound.poll()) != null) {
+                    carry = null;
+                    if (frame.length > batch.remaining()) {
+                        if (batch.position() > 0) {
+                            carry = frame;
+                            break;
+                        }
+                        // Larger than the whole buffer: write it straight from its array
+                        ByteBuffer large = ByteBuffer.wrap(frame);
+                        channel.write(large);
+                        if (large.hasRemaining()) {
+                            unwritten = large;
+                            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                            return;
+                        }
+                        continue;
+                    }
+                    batch.put(frame);
+                }
+                batch.flip();
+                channel.write(batch);
+
+                if (batch.hasRemaining()) {
+                    // Socket buffer is full - keep the rest and continue when it drains
+                    unwritten = ByteBuffer.allocate(batch.remaining()).put(batch).flip();
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            if (closing) {
+                close();
+                return;
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /**
+     * Frames waiting to be written to this client
+     */
+    int getQueueDepth() {
+        return outbound.depth();
+    }
+
+    @Override
+    public void close() {
+        if (!open.compareAndSet(true, false)) {
+            return;
+        }
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            ServerLog.warn("channel-close-failed", e.getMessage());
+        }
+        outbound.clear();
+        handler.connectionClosed(this);
+    }
+
+    @Override
+    public void growOutbound(int frames) {
+        outbound.grow(frames);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open.get();
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+}
@@ -0,0 +1,53 @@
+package server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * NioServer - Non-blocking server mode (-Drps.mode=nio)
+ * The main thread accepts sockets and deals them out to a small, fixed set of Reactors,
+ * so thousands of idle players cost a read buffer each instead of a thread each
+ * Connections AdmissionControl refuses are turned away here and never reach a reactor
+ */
+class NioServer {
+    private final int port;
+    private final Reactor[] reactors;
+    private int nextReactor = 0;
+
+    NioServer(int port, int reactorCount) throws IOException {
+        this.port = port;
+        this.reactors = new Reactor[Math.max(1, reactorCount)];
+        for (int i = 0; i < reactors.length; i++) {
+            reactors[i] = new Reactor("reactor-" + i);
+        }
+    }
+
+    void run() throws IOException {
+        for (Reactor reactor : reactors) {
+            reactor.start();
+        }
+
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port), ServerConfig.ACCEPT_BACKLOG);
+            System.out.println("Server is listening on port " + port + " (NIO, " + reactors.length + " reactors)");
+            System.out.println("Waiting for clients to connect...\n");
+
+            while (true) {
+                try {
+                    SocketChannel channel = serverChannel.accept();
+                    AdmissionControl.Source source = AdmissionControl.admit(channel.socket().getInetAddress());
+                    if (source == null) {
+                        AdmissionControl.turnAway(channel);
+                        continue;
+                    }
+                    reactors[nextReactor].register(channel, source);
+                    nextReactor = (nextReactor + 1) % reactors.length;
+                } catch (IOException e) {
+                    ServerLog.warn("accept-failed", e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OutboundQueue - Bounded queue of frames waiting to be written to one client
+ *
+ * Game threads only enqueue; the connection's writer drains the queue and writes everything
+ * pending in one go. When a client reads too slowly and its queue fills up, the configured
+ * policy decides what happens (rps.out.policy):
+ *   DROP       - discard the new frame
+ *   DISCONNECT - close the connection (default)
+ *   BLOCK      - wait up to rps.out.blockMillis for room, then disconnect
+ */
+class OutboundQueue {
+    enum Policy {DROP, DISCONNECT, BLOCK}
+
+    // Server-wide counters
+    private static final LongAdder framesQueued = new LongAdder();
+    private static final LongAdder framesDropped = new LongAdder();
+    private static final LongAdder slowConsumerDisconnects = new LongAdder();
+    private static final LongAdder totalDepth = new LongAdder();
+    private static final AtomicInteger maxDepth = new AtomicInteger();
+
+    // Set on threads that serve every client (reactors, timer, matchmaker), see neverBlockOnThisThread()
+    private static final ThreadLocal<Boolean> neverBlocks = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private volatile ArrayBlockingQueue<byte[]> frames;  // only replaced by grow()
+
+    OutboundQueue(int capacity) {
+        this.frames = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Mark the calling thread as one that must never wait for a slow client; BLOCK then acts like
+     * DISCONNECT on it. Called once by every thread whose stall would stall everyone else
+     */
+    static void neverBlockOnThisThread() {
+        neverBlocks.set(Boolean.TRUE);
+    }
+
+    /**
+     * Queue a frame, applying the slow-consumer policy when the queue is full
+     * @return false if the connection should be closed
+     */
+    boolean offer(byte[] frame) {
+        if (frames.offer(frame)) {
+            queued();
+            return true;
+        }
+
+        switch (ServerConfig.SLOW_CONSUMER_POLICY) {
+            case DROP:
+                framesDropped.increment();
+                return true;
+
+            case BLOCK:
+                if (!neverBlocks.get()) {
+                    try {
+                        if (frames.offer(frame, ServerConfig.SLOW_CONSUMER_BLOCK_MILLIS, TimeUnit.MILLISECONDS)) {
+                            queued();
+                            return true;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                slowConsumerDisconnects.increment();
+                return false;
+
+            default:
+                slowConsumerDisconnects.increment();
+                return false;
+        }
+    }
+
+    /**
+     * Make room for capacity frames, keeping those already queued
+     * Only while no other thread sends, e.g. as a connection turns multiplexed
+     */
+    synchronized void grow(int capacity) {
+        if (capacity > frames.remainingCapacity() + frames.size()) {
+            ArrayBlockingQueue<byte[]> bigger = new ArrayBlockingQueue<>(capacity);
+            frames.drainTo(bigger);
+            frames = bigger;
+        }
+    }
+
+    private void queued() {
+        framesQueued.increment();
+        totalDepth.increment();
+        int depth = frames.size();
+        if (depth > maxDepth.get()) {
+            maxDepth.accumulateAndGet(depth, Math::max);
+        }
+    }
+
+    /**
+     * Take the next frame, or null when the queue is empty (writer only)
+     */
+    byte[] poll() {
+        byte[] frame = frames.poll();
+        if (frame != null) {
+            totalDepth.decrement();
+        }
+        return frame;
+    }
+
+    boolean isEmpty() {
+        return frames.isEmpty();
+    }
+
+    int depth() {
+        return frames.size();
+    }
+
+    /**
+     * Throw away everything still queued, when the connection closes
+     */
+    void clear() {
+        while (poll() != null) {
+            // counted in poll()
+        }
+    }
+
+    static long getFramesQueued() {
+        return framesQueued.sum();
+    }
+
+    static long getFramesDropped() {
+        return framesDropped.sum();
+    }
+
+    static long getSlowConsumerDisconnects() {
+        return slowConsumerDisconnects.sum();
+    }
+
+    /**
+     * Frames currently waiting across all connections
+     */
+    static long getTotalDepth() {
+        return totalDepth.sum();
+    }
+
+    /**
+     * Deepest any single queue has been since startup
+     */
+    static int getMaxDepth() {
+        return maxDepth.get();
+    }
+}
@@ -0,0 +1,514 @@
+package server;
+
+import game.EloRating;
+import game.GameResult;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PlayerStatsStore - Wins, losses and draws per player name, kept across restarts
+ *
+ * Rounds are handed over through a queue and applied by one writer thread, so a round never
+ * waits for the store (when the queue is full the update is dropped instead). Lookups are
+ * answered by the same thread, after every round queued before them. The writer owns
+ * everything below, no locks needed:
+ *
+ *   index - open-addressing hash table from name to a dense player number, with the
+ *           counts in one long[] (COLUMNS per player)
+ *   file  - memory-mapped, append-only log of player snapshots; the newest snapshot of a
+ *           name wins. After every batch the header's end offset is moved past the new
+ *           records, so a crash mid-write just loses the unfinished batch.
+ *
+ * Loading is one sequential scan of the mapped file. Once most of the file is superseded
+ * snapshots, it is compacted: one record per player is written to a new file, which then
+ * replaces the old one atomically.
+ *
+ * The writer also keeps the Leaderboard up to date, so ranking costs the rounds nothing either.
+ *
+ * File layout: [magic:4][version:4][end:8] then records
+ * [nameLength:2][name:UTF-8][wins:8][losses:8][draws:8][streak:8][rating:8, double bits]
+ * (older files lack the later fields and are compacted into the current version when opened)
+ */
+public final class PlayerStatsStore implements AutoCloseable {
+    private static final int MAGIC = 0x52505353;  // "RPSS"
+    private static final int VERSION = 3;
+    private static final int HEADER_BYTES = 16;
+    private static final int END_OFFSET = 8;
+    private static final int FIXED_RECORD_BYTES = 2 + 5 * Long.BYTES;
+    private static final long MIN_MAP_BYTES = 1 << 20;
+    private static final long COMPACT_MIN_BYTES = 4 << 20;
+    private static final int QUEUE_CAPACITY = 1 << 16;
+    private static final long FORCE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    // Columns per player; draws neither extend nor break a win streak, the Elo rating is kept as double bits
+    static final int WINS = 0;
+    static final int LOSSES = 1;
+    static final int DRAWS = 2;
+    static final int STREAK = 3;
+    static final int RATING = 4;
+    static final int COLUMNS = 5;
+    private static final long INITIAL_RATING = Double.doubleToLongBits(EloRating.INITIAL);
+
+    // Queued to wake the writer for a lookup
+    private static final Round WAKE_UP = new Round(null, null, null);
+
+    /**
+     * A rating lookup, as queued for the writer
+     */
+    private static final class Lookup {
+        final String name;
+        final CompletableFuture<long[]> future = new CompletableFuture<>();
+
+        Lookup(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * One resolved round, as queued for the writer
+     */
+    private static final class Round {
+        final String first;
+        final String second;
+        final GameResult result;
+
+        Round(String first, String second, GameResult result) {
+            this.first = first;
+            this.second = second;
+            this.result = result;
+        }
+    }
+
+    private final Path path;
+    private final BlockingQueue<Round> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final ConcurrentLinkedQueue<Lookup> lookups = new ConcurrentLinkedQueue<>();
+    private final Thread writer;
+    private volatile boolean closed;
+    private volatile boolean stopped;  // the writer has exited, normally or not
+
+    // Writer thread only (and the constructor, before the writer starts)
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private long end;
+    private long liveBytes;  // size of a compacted file's records
+    private boolean dirty;
+    private boolean compactionFailed;
+    private long lastForce = System.nanoTime();
+
+    private int size;
+    private String[] names = new String[1024];
+    private byte[][] nameBytes = new byte[1024][];
+    private long[] counts = new long[COLUMNS * 1024];
+    private int[] table = new int[2048];  // player number + 1, 0 = empty slot
+
+    private volatile int playerCount;
+    private final Leaderboard leaderboard = new Leaderboard(ServerConfig.LEADERBOARD_SIZE, ServerConfig.LEADERBOARD_MIN_GAMES);
+
+    /**
+     * Open (or create) the store at path, load every player and start the writer thread
+     */
+    public PlayerStatsStore(Path path) throws IOException {
+        this.path = path;
+        open();
+        try {
+            if (load() < VERSION) {
+                compact();
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        playerCount = size;
+        leaderboard.rebuild(names, counts, size);
+
+        writer = new Thread(this::run, "stats-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Count one round for both players; never blocks
+     * @return false if the round was dropped because the writer is behind or the store is closed
+     */
+    public boolean recordRound(String first, String second, GameResult result) {
+        return !closed && queue.offer(new Round(first, second, result));
+    }
+
+    /**
+     * The Elo rating in a lookup() result
+     */
+    public static double rating(long[] columns) {
+        return Double.longBitsToDouble(columns[RATING]);
+    }
+
+    /**
+     * The top players, as last published by the writer; safe to read from any thread
+     */
+    Leaderboard.Snapshot getLeaderboard() {
+        return leaderboard.snapshot();
+    }
+
+    /**
+     * Wins, losses, draws, win streak and rating bits of a player (a new player's if unknown),
+     * once all rounds queued so far are counted; fails if the writer has stopped
+     */
+    public CompletableFuture<long[]> lookup(String name) {
+        Lookup lookup = new Lookup(name);
+        lookups.add(lookup);
+        if (stopped) {
+            // The writer may have drained the queue for the last time before this was added
+            failLookups();
+        } else {
+            queue.offer(WAKE_UP);
+        }
+        return lookup.future;
+    }
+
+    /**
+     * Number of players known to the store
+     */
+    public int getPlayerCount() {
+        return playerCount;
+    }
+
+    /**
+     * Apply everything still queued, write it to disk and stop the writer
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed || !queue.isEmpty()) {
+                Round round = queue.poll(100, TimeUnit.MILLISECONDS);
+                while (round != null) {
+                    if (round != WAKE_UP) {
+                        apply(round);
+                    }
+                    round = queue.poll();
+                }
+                commit();
+                runLookups();
+            }
+            runLookups();
+            map.force();
+            channel.close();
+        } catch (IOException | RuntimeException e) {
+            ServerLog.error("stats-writer-failed", String.valueOf(e));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopped = true;
+            failLookups();
+        }
+    }
+
+    private void runLookups() {
+        Lookup lookup;
+        while ((lookup = lookups.poll()) != null) {
+            int player = find(lookup.name);
+            long[] columns = new long[COLUMNS];
+            if (player < 0) {
+                columns[RATING] = INITIAL_RATING;
+            } else {
+                System.arraycopy(counts, player * COLUMNS, columns, 0, COLUMNS);
+            }
+            lookup.future.complete(columns);
+        }
+    }
+
+    private void failLookups() {
+        Lookup lookup;
+        while ((lookup = lookups.poll()) != null) {
+            lookup.future.completeExceptionally(new IllegalStateException("stats writer stopped"));
+        }
+    }
+
+    private void apply(Round round) throws IOException {
+        int first = playerNumber(round.first);
+        int second = playerNumber(round.second);
+
+        double firstRating = Double.longBitsToDouble(counts[first * COLUMNS + RATING]);
+        double secondRating = Double.longBitsToDouble(counts[second * COLUMNS + RATING]);
+        double change = EloRating.change(firstRating, secondRating, round.result);
+        counts[first * COLUMNS + RATING] = Double.doubleToLongBits(firstRating + change);
+        counts[second * COLUMNS + RATING] = Double.doubleToLongBits(secondRating - change);
+
+        switch (round.result) {
+            case PLAYER1_WINS:
+                won(first);
+                lost(second);
+                break;
+            case PLAYER2_WINS:
+                lost(first);
+                won(second);
+                break;
+            default:
+                counts[first * COLUMNS + DRAWS]++;
+                counts[second * COLUMNS + DRAWS]++;
+        }
+        updated(first);
+        updated(second);
+    }
+
+    private void won(int player) {
+        counts[player * COLUMNS + WINS]++;
+        counts[player * COLUMNS + STREAK]++;
+    }
+
+    private void lost(int player) {
+        counts[player * COLUMNS + LOSSES]++;
+        counts[player * COLUMNS + STREAK] = 0;
+    }
+
+    private void updated(int player) throws IOException {
+        int at = player * COLUMNS;
+        leaderboard.update(player, counts[at + WINS], counts[at + LOSSES], counts[at + DRAWS], counts[at + STREAK]);
+        append(player);
+    }
+
+    /**
+     * Publish the records written since the last commit, force them out now and then,
+     * and compact once superseded snapshots make up most of the file
+     */
+    private void commit() throws IOException {
+        if (dirty) {
+            map.putLong(END_OFFSET, end);
+            dirty = false;
+            playerCount = size;
+            leaderboard.publish(names, counts);
+        }
+        long now = System.nanoTime();
+        if (now - lastForce >= FORCE_INTERVAL) {
+            map.force();
+            lastForce = now;
+        }
+        if (!compactionFailed && end > COMPACT_MIN_BYTES && end - HEADER_BYTES > 2 * liveBytes) {
+            compact();
+        }
+    }
+
+    // File
+
+    private void open() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long fileSize = channel.size();
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, mapSize(Math.max(fileSize, HEADER_BYTES)));
+        if (fileSize == 0) {
+            writeHeader(map, HEADER_BYTES);
+        } else if (map.getInt(0) != MAGIC || map.getInt(4) < 1 || map.getInt(4) > VERSION) {
+            channel.close();
+            throw new IOException(path + " is not a player stats file");
+        }
+        end = map.getLong(END_OFFSET);
+        if (end < HEADER_BYTES || end > Math.max(fileSize, HEADER_BYTES)) {
+            channel.close();
+            throw new IOException(path + " has a corrupt header: records end at " + end + " of " + fileSize + " bytes");
+        }
+    }
+
+    /**
+     * Read every record into the index
+     * @return the file's format version
+     */
+    private int load() throws IOException {
+        int version = map.getInt(4);
+        int fields = version + 2;  // version 1: wins, losses, draws; 2: + streak; 3: + rating
+        int fixedBytes = 2 + fields * Long.BYTES;
+        long position = HEADER_BYTES;
+        // end is within the mapping (see open()), so every read is checked against it first
+        while (position + fixedBytes <= end) {
+            int index = (int) position;
+            int nameLength = map.getShort(index) & 0xFFFF;
+            if (position + fixedBytes + nameLength > end) {
+                break;
+            }
+            byte[] bytes = new byte[nameLength];
+            map.get(index + 2, bytes);
+            int player = playerNumber(new String(bytes, StandardCharsets.UTF_8), bytes);
+            int countsAt = index + 2 + nameLength;
+            int at = player * COLUMNS;
+            counts[at + WINS] = map.getLong(countsAt);
+            counts[at + LOSSES] = map.getLong(countsAt + Long.BYTES);
+            counts[at + DRAWS] = map.getLong(countsAt + 2 * Long.BYTES);
+            counts[at + STREAK] = fields > STREAK ? map.getLong(countsAt + STREAK * Long.BYTES) : 0;
+            counts[at + RATING] = fields > RATING ? map.getLong(countsAt + RATING * Long.BYTES) : INITIAL_RATING;
+            position += fixedBytes + nameLength;
+        }
+        if (position != end) {
+            throw new IOException(path + " has a truncated record at " + position);
+        }
+        return version;
+    }
+
+    private void append(int player) throws IOException {
+        byte[] name = nameBytes[player];
+        int length = FIXED_RECORD_BYTES + name.length;
+        if (end + length > map.capacity()) {
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, mapSize(end + length));
+        }
+        end = writeRecord(map, (int) end, player);
+        dirty = true;
+    }
+
+    private int writeRecord(MappedByteBuffer target, int position, int player) {
+        byte[] name = nameBytes[player];
+        target.putShort(position, (short) name.length);
+        target.put(position + 2, name);
+        int countsAt = position + 2 + name.length;
+        int at = player * COLUMNS;
+        target.putLong(countsAt, counts[at + WINS]);
+        target.putLong(countsAt + Long.BYTES, counts[at + LOSSES]);
+        target.putLong(countsAt + 2 * Long.BYTES, counts[at + DRAWS]);
+        target.putLong(countsAt + 3 * Long.BYTES, counts[at + STREAK]);
+        target.putLong(countsAt + 4 * Long.BYTES, counts[at + RATING]);
+        return countsAt + 5 * Long.BYTES;
+    }
+
+    /**
+     * Rewrite the file with one record per player and swap it in
+     */
+    private void compact() throws IOException {
+        long started = System.nanoTime();
+        long oldEnd = end;
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer target = out.map(FileChannel.MapMode.READ_WRITE, 0, mapSize(HEADER_BYTES + liveBytes));
+            int position = HEADER_BYTES;
+            for (int player = 0; player < size; player++) {
+                position = writeRecord(target, position, player);
+            }
+            writeHeader(target, position);
+            target.force();
+        }
+
+        map.force();
+        channel.close();
+        try {
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // e.g. a file system without atomic rename: keep appending to the old file
+            ServerLog.warn("stats-compaction-failed", String.valueOf(e));
+            compactionFailed = true;
+            Files.deleteIfExists(compacted);
+            open();
+            return;
+        }
+        open();
+        ServerLog.info("stats-compacted", null, oldEnd + " -> " + end + " bytes, "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + "ms");
+    }
+
+    private static void writeHeader(MappedByteBuffer target, long end) {
+        target.putInt(0, MAGIC);
+        target.putInt(4, VERSION);
+        target.putLong(END_OFFSET, end);
+    }
+
+    /**
+     * Mapping size for at least the given bytes: doubled as the file grows, so appends rarely remap
+     */
+    private static long mapSize(long bytes) throws IOException {
+        long mapSize = Math.max(MIN_MAP_BYTES, Long.highestOneBit(bytes - 1) << 1);
+        if (mapSize > Integer.MAX_VALUE) {
+            throw new IOException("Player stats file is full (" + bytes + " bytes)");
+        }
+        return mapSize;
+    }
+
+    // Index
+
+    private int playerNumber(String name) {
+        return playerNumber(name, null);
+    }
+
+    /**
+     * Dense number of the player, or -1 if unknown
+     */
+    private int find(String name) {
+        int mask = table.length - 1;
+        int slot = spread(name.hashCode()) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            if (names[entry - 1].equals(name)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Dense number of the player, added (with zero counts) if new
+     * @param bytes the name's UTF-8 bytes if already at hand
+     */
+    private int playerNumber(String name, byte[] bytes) {
+        int mask = table.length - 1;
+        int slot = spread(name.hashCode()) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            if (names[entry - 1].equals(name)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (bytes == null) {
+            // Names come from protocol lines, far below the 64K a record can hold
+            bytes = name.getBytes(StandardCharsets.UTF_8);
+        }
+        int player = size++;
+        if (player == names.length) {
+            names = Arrays.copyOf(names, player * 2);
+            nameBytes = Arrays.copyOf(nameBytes, player * 2);
+            counts = Arrays.copyOf(counts, player * 2 * COLUMNS);
+        }
+        names[player] = name;
+        nameBytes[player] = bytes;
+        counts[player * COLUMNS + RATING] = INITIAL_RATING;
+        liveBytes += FIXED_RECORD_BYTES + bytes.length;
+        table[slot] = player + 1;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return player;
+    }
+
+    private void rehash() {
+        int[] grown = new int[table.length * 2];
+        int mask = grown.length - 1;
+        for (int player = 0; player < size; player++) {
+            int slot = spread(names[player].hashCode()) & mask;
+            while (grown[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            grown[slot] = player + 1;
+        }
+        table = grown;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,137 @@
+package server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reactor - One selector thread that serves many NIO connections
+ * Other threads never touch the selector directly, they hand work over with execute()
+ */
+class Reactor implements Runnable {
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final ArrayDeque<NioConnection> dirty = new ArrayDeque<>();  // reactor only: to flush this iteration
+
+    // Shared by all connections of this reactor to coalesce outbound frames; larger than game frames,
+    // though a LEADERBOARD list can exceed it and is then written on its own (see NioConnection)
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(16 * 1024);
+
+    Reactor(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    boolean inReactorThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * The coalescing buffer, reactor thread only
+     */
+    ByteBuffer getWriteBuffer() {
+        return writeBuffer;
+    }
+
+    /**
+     * Flush connection at the end of this select iteration, reactor thread only
+     * Whatever handling the iteration's reads and tasks sends it then goes out in one write call
+     */
+    void flushLater(NioConnection connection) {
+        dirty.add(connection);
+    }
+
+    /**
+     * Run a task on the reactor thread
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (!inReactorThread() && wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Hand a freshly accepted channel, and the admission slot it holds, over to this reactor
+     */
+    void register(SocketChannel channel, AdmissionControl.Source source) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                channel.socket().setKeepAlive(true);
+                NioConnection connection = new NioConnection(this, channel, source);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connection.attach(key);
+            } catch (IOException e) {
+                ServerLog.warn("register-failed", e.getMessage());
+                AdmissionControl.release(source);
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        OutboundQueue.neverBlockOnThisThread();
+        while (true) {
+            try {
+                selector.select();
+                wakeupPending.set(false);
+                runTasks();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+
+                    if (key.isValid() && key.isReadable()) {
+                        connection.onReadable();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.onWritable();
+                    }
+                }
+                flushDirty();
+            } catch (IOException e) {
+                ServerLog.error("reactor-error", e.getMessage());
+            }
+        }
+    }
+
+    private void flushDirty() {
+        NioConnection connection;
+        // A flush that closes a connection may send to (and so add) others
+        while ((connection = dirty.poll()) != null) {
+            connection.flush();
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                ServerLog.error("reactor-task-failed", e.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,683 @@
+package server;
+
+import game.GameLogic;
+import game.GameResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * RoundAnalytics - Aggregates over the RoundJournal, kept up to date from a checkpoint
+ *
+ * Answers the questions asked of the journal again and again:
+ *   choices by hour  how often each choice was played, per hour of the day (UTC)
+ *   first moves      the choices made in the first round of a match
+ *   players          rounds won, lost and drawn per player
+ *   match lengths    matches, rounds and draws by the number of rounds a match lasted
+ *                    (MAX_LENGTH and longer share the last row)
+ * Choices are counted by GameLogic.Choice ordinal, as journaled. Bots' choices are left out
+ * of the choice counts; their rounds still count for both players.
+ *
+ * update() only reads what was committed since the last call. New segments are scanned in
+ * parallel on a ForkJoinPool, each into its own RoundAnalytics of flat long[] counts and
+ * open-addressing tables - no round ever becomes an object - and merged in segment order.
+ * A match is counted once its END and all of its rounds are in; until then it is kept as
+ * open, and the open matches of a run that ended without them are counted as unfinished.
+ *
+ * save() writes the position reached, every count and the open matches to a compact binary
+ * checkpoint, and load() carries on from it, so a segment is never scanned twice. report()
+ * renders the aggregates as compact text, which the server also serves on /analytics.
+ *
+ * Usage: java -Drps.journal.dir=journal -cp out server.RoundAnalytics
+ */
+public final class RoundAnalytics {
+    public static final int CHOICES = GameLogic.Choice.values().length;
+    public static final int HOURS = 24;
+    public static final int MAX_LENGTH = 50;
+
+    // Columns of a player row and of a match-length row
+    public static final int WINS = 0;
+    public static final int LOSSES = 1;
+    public static final int DRAWS = 2;
+    public static final int MATCHES = 0;
+    public static final int ROUNDS = 1;
+    private static final int COLUMNS = 3;
+
+    // Columns of an open match: rounds and draws seen, and its rounds + 1 once its END is seen
+    private static final int SEEN = 0;
+    private static final int OPEN_DRAWS = 1;
+    private static final int ENDED = 2;
+
+    private static final int MAGIC = 0x52505341;  // "RPSA"
+    private static final int VERSION = 1;
+    private static final long MILLIS_PER_HOUR = 3_600_000;
+    private static final int DRAW = GameResult.DRAW.code();
+    private static final int FIRST_WINS = GameResult.PLAYER1_WINS.code();
+
+    private final long[] choicesByHour = new long[HOURS * CHOICES];
+    private final long[] firstMoves = new long[CHOICES];
+    private final long[] lengths = new long[(MAX_LENGTH + 1) * COLUMNS];
+    private final Table players = new Table(COLUMNS, true);
+    private final Table matches = new Table(COLUMNS, false);
+    private long rounds;
+    private long unfinished;
+
+    // Position: the next record to read is record `records` of segment `segment`
+    private long segment;
+    private int records;
+    private long runId;
+
+    public RoundAnalytics() {
+    }
+
+    /**
+     * The checkpoint saved at path, or empty analytics if there is none
+     */
+    public static RoundAnalytics load(Path path) throws IOException {
+        RoundAnalytics analytics = new RoundAnalytics();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(path + " is not an analytics checkpoint");
+            }
+            analytics.segment = in.readLong();
+            analytics.records = in.readInt();
+            analytics.runId = in.readLong();
+            analytics.rounds = in.readLong();
+            analytics.unfinished = in.readLong();
+            read(in, analytics.choicesByHour);
+            read(in, analytics.firstMoves);
+            read(in, analytics.lengths);
+            analytics.players.read(in);
+            analytics.matches.read(in);
+        } catch (NoSuchFileException e) {
+            // Nothing analysed yet
+        }
+        return analytics;
+    }
+
+    /**
+     * Write the checkpoint to path, replacing the old one atomically
+     */
+    public void save(Path path) throws IOException {
+        Path written = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(written)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(segment);
+            out.writeInt(records);
+            out.writeLong(runId);
+            out.writeLong(rounds);
+            out.writeLong(unfinished);
+            write(out, choicesByHour);
+            write(out, firstMoves);
+            write(out, lengths);
+            players.write(out);
+            matches.write(out);
+        }
+        Files.move(written, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Add everything committed to the journal in directory since the last update
+     * @return the rounds added
+     */
+    public long update(Path directory, ForkJoinPool pool) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        for (Path path : RoundJournal.segments(directory)) {
+            if (RoundJournal.segmentNumber(path) >= segment) {
+                segments.add(path);
+            }
+        }
+
+        // A few segments per thread at a time, so only those tallies are held at once
+        long before = rounds;
+        int window = pool.getParallelism() * 2;
+        List<ForkJoinTask<RoundAnalytics>> scans = new ArrayList<>(window);
+        for (int i = 0; i < segments.size(); i += window) {
+            scans.clear();
+            for (Path path : segments.subList(i, Math.min(i + window, segments.size()))) {
+                int from = RoundJournal.segmentNumber(path) == segment ? records : 0;
+                scans.add(pool.submit(() -> scan(path, from)));
+            }
+            try {
+                for (ForkJoinTask<RoundAnalytics> scan : scans) {
+                    merge(scan.join());
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+        return rounds - before;
+    }
+
+    /**
+     * Tally one segment from record `from` on; its matches are left open for merge() to count
+     */
+    private static RoundAnalytics scan(Path path, int from) {
+        RoundAnalytics part = new RoundAnalytics();
+        try (RoundJournal.Cursor cursor = RoundJournal.Cursor.open(path)) {
+            part.segment = cursor.getSegment();
+            part.runId = cursor.getRunId();
+            part.records = cursor.getRecordCount();
+            cursor.seek(from);
+            while (cursor.next()) {
+                switch (cursor.getKind()) {
+                    case RoundJournal.ROUND:
+                        part.round(cursor);
+                        break;
+                    case RoundJournal.PLAYER:
+                        int player = part.players.slot(cursor.getPlayerId());
+                        if (part.players.name(player) == null) {
+                            part.players.name(player, cursor.getPlayerName());
+                        }
+                        break;
+                    case RoundJournal.END:
+                        part.matches.set(part.matches.slot(cursor.getMatchId()), ENDED, cursor.getMatchRound() + 1);
+                        break;
+                    default:
+                        throw new IOException(path + " has an unknown record kind " + cursor.getKind());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return part;
+    }
+
+    private void round(RoundJournal.Cursor cursor) {
+        int flags = cursor.getFlags();
+        int choice1 = cursor.getChoice1();
+        int choice2 = cursor.getChoice2();
+        int outcome = cursor.getOutcome();
+        int hour = (int) Math.floorMod(cursor.getResolvedMillis() / MILLIS_PER_HOUR, (long) HOURS);
+        boolean opening = cursor.getMatchRound() == 0;
+        if ((flags & RoundJournal.FIRST_IS_BOT) == 0) {
+            choicesByHour[hour * CHOICES + choice1]++;
+            if (opening) {
+                firstMoves[choice1]++;
+            }
+        }
+        if ((flags & RoundJournal.SECOND_IS_BOT) == 0) {
+            choicesByHour[hour * CHOICES + choice2]++;
+            if (opening) {
+                firstMoves[choice2]++;
+            }
+        }
+
+        int first = players.slot(cursor.getPlayer1());
+        int second = players.slot(cursor.getPlayer2());
+        if (outcome == DRAW) {
+            players.add(first, DRAWS, 1);
+            players.add(second, DRAWS, 1);
+        } else {
+            players.add(first, outcome == FIRST_WINS ? WINS : LOSSES, 1);
+            players.add(second, outcome == FIRST_WINS ? LOSSES : WINS, 1);
+        }
+
+        int match = matches.slot(cursor.getMatchId());
+        matches.add(match, SEEN, 1);
+        if (outcome == DRAW) {
+            matches.add(match, OPEN_DRAWS, 1);
+        }
+        rounds++;
+    }
+
+    /**
+     * Add the tally of the segment that follows everything merged so far
+     */
+    private void merge(RoundAnalytics part) {
+        if (part.runId != runId) {
+            // The server restarted: matches of the last run still open never finished
+            unfinished += matches.size();
+            matches.clear();
+            runId = part.runId;
+        }
+        add(choicesByHour, part.choicesByHour);
+        add(firstMoves, part.firstMoves);
+        rounds += part.rounds;
+
+        Table from = part.players;
+        for (int slot = 0; slot < from.capacity(); slot++) {
+            if (from.key(slot) != 0) {
+                int player = players.slot(from.key(slot));
+                for (int column = 0; column < COLUMNS; column++) {
+                    players.add(player, column, from.get(slot, column));
+                }
+                if (players.name(player) == null) {
+                    players.name(player, from.name(slot));
+                }
+            }
+        }
+
+        from = part.matches;
+        for (int slot = 0; slot < from.capacity(); slot++) {
+            if (from.key(slot) != 0) {
+                int match = matches.slot(from.key(slot));
+                matches.add(match, SEEN, from.get(slot, SEEN));
+                matches.add(match, OPEN_DRAWS, from.get(slot, OPEN_DRAWS));
+                if (from.get(slot, ENDED) != 0) {
+                    matches.set(match, ENDED, from.get(slot, ENDED));
+                }
+                finish(match);
+            }
+        }
+
+        segment = part.segment;
+        records = part.records;
+    }
+
+    /**
+     * Count a match by its length once its END and all its rounds are in
+     */
+    private void finish(int match) {
+        long length = matches.get(match, ENDED) - 1;
+        if (length < 0 || matches.get(match, SEEN) < length) {
+            return;
+        }
+        int row = (int) Math.min(length, MAX_LENGTH) * COLUMNS;
+        lengths[row + MATCHES]++;
+        lengths[row + ROUNDS] += matches.get(match, SEEN);
+        lengths[row + DRAWS] += matches.get(match, OPEN_DRAWS);
+        matches.remove(match);
+    }
+
+    // Results
+
+    public long getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Times choice (a GameLogic.Choice ordinal) was played in the given hour of the day, UTC
+     */
+    public long getChoices(int hour, int choice) {
+        return choicesByHour[hour * CHOICES + choice];
+    }
+
+    public long getFirstMoves(int choice) {
+        return firstMoves[choice];
+    }
+
+    /**
+     * MATCHES, ROUNDS or DRAWS of the matches that lasted length rounds (MAX_LENGTH: or more)
+     */
+    public long getLength(int length, int column) {
+        return lengths[Math.min(length, MAX_LENGTH) * COLUMNS + column];
+    }
+
+    /**
+     * WINS, LOSSES or DRAWS of a player, by RoundJournal.playerId
+     */
+    public long getPlayer(long playerId, int column) {
+        int slot = players.find(playerId);
+        return slot < 0 ? 0 : players.get(slot, column);
+    }
+
+    public int getPlayerCount() {
+        return players.size();
+    }
+
+    /**
+     * Matches that have not ended yet (or whose last rounds have not been read)
+     */
+    public int getOpenMatches() {
+        return matches.size();
+    }
+
+    /**
+     * The aggregates as compact text, with the topPlayers players who played the most rounds
+     */
+    public String report(int topPlayers) {
+        GameLogic.Choice[] choices = GameLogic.Choice.values();
+        StringBuilder out = new StringBuilder(4096);
+        out.append("rounds ").append(rounds).append(" players ").append(players.size())
+            .append(" open_matches ").append(matches.size()).append(" unfinished_matches ").append(unfinished)
+            .append(" segment ").append(segment).append(':').append(records).append('\n');
+
+        out.append("# choices_by_hour hour");
+        for (GameLogic.Choice choice : choices) {
+            out.append(' ').append(choice);
+        }
+        out.append('\n');
+        for (int hour = 0; hour < HOURS; hour++) {
+            out.append("choices_by_hour ").append(hour);
+            for (int choice = 0; choice < CHOICES; choice++) {
+                out.append(' ').append(getChoices(hour, choice));
+            }
+            out.append('\n');
+        }
+
+        out.append("first_moves");
+        for (int choice = 0; choice < CHOICES; choice++) {
+            out.append(' ').append(firstMoves[choice]);
+        }
+        out.append('\n');
+
+        out.append("# match_length rounds matches total_rounds draws draw_rate\n");
+        for (int length = 0; length <= MAX_LENGTH; length++) {
+            int row = length * COLUMNS;
+            if (lengths[row + MATCHES] > 0) {
+                out.append("match_length ").append(length).append(length == MAX_LENGTH ? "+ " : " ")
+                    .append(lengths[row + MATCHES]).append(' ').append(lengths[row + ROUNDS]).append(' ')
+                    .append(lengths[row + DRAWS]).append(' ')
+                    .append(String.format("%.4f", lengths[row + ROUNDS] == 0 ? 0.0
+                        : (double) lengths[row + DRAWS] / lengths[row + ROUNDS])).append('\n');
+            }
+        }
+
+        out.append("# player name wins losses draws win_rate\n");
+        for (int slot : mostActive(topPlayers)) {
+            long wins = players.get(slot, WINS);
+            long played = wins + players.get(slot, LOSSES) + players.get(slot, DRAWS);
+            out.append("player ").append(players.name(slot)).append(' ').append(wins).append(' ')
+                .append(players.get(slot, LOSSES)).append(' ').append(players.get(slot, DRAWS)).append(' ')
+                .append(String.format("%.4f", played == 0 ? 0.0 : (double) wins / played)).append('\n');
+        }
+        return out.toString();
+    }
+
+    /**
+     * Slots of the count players with the most rounds, most first
+     */
+    private int[] mostActive(int count) {
+        PriorityQueue<Integer> top = new PriorityQueue<>((a, b) -> Long.compare(played(a), played(b)));
+        for (int slot = 0; slot < players.capacity() && count > 0; slot++) {
+            if (players.key(slot) != 0) {
+                top.add(slot);
+                if (top.size() > count) {
+                    top.poll();
+                }
+            }
+        }
+        int[] slots = new int[top.size()];
+        for (int i = slots.length - 1; i >= 0; i--) {
+            slots[i] = top.poll();
+        }
+        return slots;
+    }
+
+    private long played(int slot) {
+        return players.get(slot, WINS) + players.get(slot, LOSSES) + players.get(slot, DRAWS);
+    }
+
+    private static void add(long[] into, long[] from) {
+        for (int i = 0; i < into.length; i++) {
+            into[i] += from[i];
+        }
+    }
+
+    private static void write(DataOutputStream out, long[] values) throws IOException {
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    private static void read(DataInputStream in, long[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readLong();
+        }
+    }
+
+    /**
+     * Open-addressing table from a non-zero long key to a row of long columns (and a name),
+     * linear probing with backward-shift removal
+     */
+    private static final class Table {
+        private final int columns;
+        private final boolean named;
+        private long[] keys = new long[1024];
+        private long[] values;
+        private String[] names;
+        private int size;
+
+        Table(int columns, boolean named) {
+            this.columns = columns;
+            this.named = named;
+            this.values = new long[keys.length * columns];
+            this.names = named ? new String[keys.length] : null;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int capacity() {
+            return keys.length;
+        }
+
+        long key(int slot) {
+            return keys[slot];
+        }
+
+        long get(int slot, int column) {
+            return values[slot * columns + column];
+        }
+
+        void add(int slot, int column, long delta) {
+            values[slot * columns + column] += delta;
+        }
+
+        void set(int slot, int column, long value) {
+            values[slot * columns + column] = value;
+        }
+
+        String name(int slot) {
+            return named ? names[slot] : null;
+        }
+
+        void name(int slot, String name) {
+            names[slot] = name;
+        }
+
+        /**
+         * Slot of key, or -1
+         */
+        int find(long key) {
+            int mask = keys.length - 1;
+            for (int slot = spread(key) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Slot of key, added with zero columns if new
+         */
+        int slot(long key) {
+            int mask = keys.length - 1;
+            int slot = spread(key) & mask;
+            for (; keys[slot] != 0; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+            }
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+                return slot(key);
+            }
+            keys[slot] = key;
+            size++;
+            return slot;
+        }
+
+        void remove(int slot) {
+            int mask = keys.length - 1;
+            int hole = slot;
+            // Move later entries of the probe run back into the hole so lookups still find them
+            for (int next = (hole + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+                int home = spread(keys[next]) & mask;
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    move(next, hole);
+                    hole = next;
+                }
+            }
+            keys[hole] = 0;
+            Arrays.fill(values, hole * columns, hole * columns + columns, 0);
+            if (named) {
+                names[hole] = null;
+            }
+            size--;
+        }
+
+        void clear() {
+            Arrays.fill(keys, 0);
+            Arrays.fill(values, 0);
+            if (named) {
+                Arrays.fill(names, null);
+            }
+            size = 0;
+        }
+
+        private void move(int from, int to) {
+            keys[to] = keys[from];
+            System.arraycopy(values, from * columns, values, to * columns, columns);
+            if (named) {
+                names[to] = names[from];
+            }
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            String[] oldNames = names;
+            keys = new long[oldKeys.length * 2];
+            values = new long[keys.length * columns];
+            names = named ? new String[keys.length] : null;
+            size = 0;
+            for (int old = 0; old < oldKeys.length; old++) {
+                if (oldKeys[old] != 0) {
+                    int slot = slot(oldKeys[old]);
+                    System.arraycopy(oldValues, old * columns, values, slot * columns, columns);
+                    if (named) {
+                        names[slot] = oldNames[old];
+                    }
+                }
+            }
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(size);
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != 0) {
+                    out.writeLong(keys[slot]);
+                    for (int column = 0; column < columns; column++) {
+                        out.writeLong(get(slot, column));
+                    }
+                    if (named) {
+                        out.writeUTF(names[slot] != null ? names[slot] : "");
+                    }
+                }
+            }
+        }
+
+        void read(DataInputStream in) throws IOException {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int slot = slot(in.readLong());
+                for (int column = 0; column < columns; column++) {
+                    set(slot, column, in.readLong());
+                }
+                if (named) {
+                    String name = in.readUTF();
+                    names[slot] = name.isEmpty() ? null : name;
+                }
+            }
+        }
+
+        private static int spread(long key) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+
+    /**
+     * Keeps a server's analytics up to date: every interval the timer hands a refresh to the
+     * pool (never two at once), which updates from the checkpoint, saves it and publishes the report
+     */
+    static final class Refresher extends TimerWheel.Timeout {
+        private final Path directory;
+        private final Path checkpoint;
+        private final ForkJoinPool pool;
+        private final long intervalNanos;
+        private final AtomicBoolean running = new AtomicBoolean();
+        private RoundAnalytics analytics;  // the running refresh's only
+        private volatile String report;
+
+        Refresher(Path directory, Path checkpoint, ForkJoinPool pool, long intervalMillis) {
+            this.directory = directory;
+            this.checkpoint = checkpoint;
+            this.pool = pool;
+            this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        }
+
+        /**
+         * The last published report, null before the first refresh
+         */
+        String getReport() {
+            return report;
+        }
+
+        @Override
+        protected long expired(long now) {
+            if (running.compareAndSet(false, true)) {
+                pool.execute(this::refresh);
+            }
+            return now + intervalNanos;
+        }
+
+        private void refresh() {
+            try {
+                if (analytics == null) {
+                    analytics = load(checkpoint);
+                }
+                long added = analytics.update(directory, pool);
+                if (added > 0 || report == null) {
+                    analytics.save(checkpoint);
+                    report = analytics.report(ServerConfig.ANALYTICS_TOP_PLAYERS);
+                }
+            } catch (IOException | RuntimeException e) {
+                ServerLog.warn("analytics-failed", String.valueOf(e));
+            } finally {
+                running.set(false);
+            }
+        }
+    }
+
+    /**
+     * Bring the checkpoint up to date with the journal and print the report
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(ServerConfig.JOURNAL_DIR);
+        Path checkpoint = Paths.get(ServerConfig.ANALYTICS_CHECKPOINT);
+        ForkJoinPool pool = new ForkJoinPool(ServerConfig.ANALYTICS_PARALLELISM);
+
+        long start = System.nanoTime();
+        RoundAnalytics analytics = load(checkpoint);
+        long added = analytics.update(directory, pool);
+        analytics.save(checkpoint);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.print(analytics.report(ServerConfig.ANALYTICS_TOP_PLAYERS));
+        System.out.printf("# %d new rounds in %.2fs (%.0f rounds/sec) on %d threads%n",
+            added, seconds, added / seconds, pool.getParallelism());
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,687 @@
+package server;
+
+import game.GameResult;
+import game.GameVariant;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * RoundJournal - Append-only binary record of every resolved round, for disputes and analytics
+ *
+ * Round threads copy a round into a preallocated ring of longs and return; they never touch
+ * the file, and when the ring is full the round is dropped rather than waited for. One writer
+ * thread drains the ring into memory-mapped segment files and commits in groups: everything
+ * written since the last commit is forced to disk in one go (at most every
+ * rps.journal.commitMillis), then the segment header's end offset is moved past it and forced
+ * too. Readers and restarts trust exactly the records before end.
+ *
+ * A segment holds rps.journal.segmentBytes; when it is full it is sealed and the next one
+ * started. Every start begins a new segment, so nothing is ever appended to an old file. Round
+ * ids and segment numbers carry on from the last segment; the run id tells the segments of one
+ * server start from the next (match ids start again at 1 with every run).
+ *
+ * Segments are named rounds-<segment number>.jnl, zero-padded so they sort oldest first:
+ *   header [magic:4][version:4][recordBytes:4][sealed:4][firstRoundId:8][end:8][createdMillis:8]
+ *          [segment:8][runId:8][0:8]
+ *   ROUND  [roundId:8][matchId:8][player1:8][player2:8][resolvedMillis:8][matchRound:4][waited1:4]
+ *          [waited2:4][kind:1][flags:1][choice1:1][choice2:1][outcome:1][0:7]
+ *   PLAYER [playerId:8][name:44, UTF-8, zero-padded][kind:1][nameLength:1][0:10]
+ *   END    [0:8][matchId:8][player1:8][player2:8][endedMillis:8][rounds:4][0:8][kind:1][0:11]
+ * All records are 64 bytes, big-endian. Players are journaled by playerId(name); the first
+ * record of a player in a segment is preceded by a PLAYER record, so every segment reads on its
+ * own. waited is how long each player's choice stood before the round resolved, in micros.
+ * Choices are GameLogic.Choice ordinals, outcomes GameResult codes. An END can be journaled
+ * just before its match's last ROUND; its rounds count is the one to trust.
+ */
+public final class RoundJournal implements AutoCloseable {
+    private static final int MAGIC = 0x5250534A;  // "RPSJ"
+    private static final int VERSION = 1;
+    static final int RECORD_BYTES = 64;
+    private static final int HEADER_BYTES = RECORD_BYTES;
+    private static final int SEALED_OFFSET = 12;
+    private static final int FIRST_ROUND_OFFSET = 16;
+    private static final int END_OFFSET = 24;
+    private static final int CREATED_OFFSET = 32;
+    private static final int SEGMENT_OFFSET = 40;
+    private static final int RUN_OFFSET = 48;
+    private static final int MIN_SEGMENT_BYTES = 64 * RECORD_BYTES;
+    private static final int BATCH = 1024;  // records drained before the writer looks at the clock again
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final String PREFIX = "rounds-";
+    private static final String SUFFIX = ".jnl";
+
+    // Record kinds
+    public static final int ROUND = 1;
+    public static final int PLAYER = 2;
+    public static final int END = 3;
+
+    // ROUND flags: which players were in-process bots
+    public static final int FIRST_IS_BOT = 1;
+    public static final int SECOND_IS_BOT = 2;
+
+    // Record fields
+    private static final int MATCH_ROUND = 40;
+    private static final int WAITED1 = 44;
+    private static final int WAITED2 = 48;
+    private static final int KIND = 52;
+    private static final int FLAGS = 53;
+    private static final int CHOICE1 = 54;
+    private static final int CHOICE2 = 55;
+    private static final int OUTCOME = 56;
+    private static final int NAME = 8;
+    private static final int NAME_BYTES = 44;
+    private static final int NAME_LENGTH = 53;
+
+    // Ring slot: one cache line of longs, so neighbouring producers do not share a line
+    private static final int WORDS = 8;
+    private static final int MATCH = 0;
+    private static final int FIRST = 1;
+    private static final int SECOND = 2;
+    private static final int RESOLVED = 3;
+    private static final int ROUND_NUMBER = 4;
+    private static final int WAITED = 5;
+    private static final int CODES = 6;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long commitNanos;
+
+    // The ring: sequences are claimed by round threads, slots read back by the writer
+    private final int mask;
+    private final long[] slots;
+    private final String[] names;               // the two player names of each slot
+    private final AtomicLongArray published;   // per slot: its sequence + 1 once written
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long drained;              // every sequence below this is free again
+
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // Writer thread only (and the constructor, before the writer starts)
+    private final long runId = System.currentTimeMillis();
+    private long nextRoundId;
+    private long segment;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int position;
+    private int committed;
+    private long lastCommit = System.nanoTime();
+    private long[] seen = new long[1024];       // player ids with a PLAYER record in this segment, 0 = empty
+    private int seenCount;
+
+    /**
+     * Open the journal in directory (created if missing), start a new segment and the writer thread
+     * @param bufferRecords rounds the ring holds before rounds are dropped, rounded up to a power of two
+     */
+    public RoundJournal(Path directory, int segmentBytes, int bufferRecords, long commitMillis) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = Math.max(MIN_SEGMENT_BYTES, segmentBytes / RECORD_BYTES * RECORD_BYTES);
+        this.commitNanos = TimeUnit.MILLISECONDS.toNanos(commitMillis);
+        int capacity = Integer.highestOneBit(Math.max(2, bufferRecords) - 1) << 1;
+        this.mask = capacity - 1;
+        this.slots = new long[capacity * WORDS];
+        this.names = new String[capacity * 2];
+        this.published = new AtomicLongArray(capacity);
+
+        Files.createDirectories(directory);
+        resume(directory);
+        startSegment();
+
+        writer = new Thread(this::run, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * The id a player is journaled under: a 64-bit FNV-1a hash of the name, never 0
+     */
+    public static long playerId(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+        }
+        return hash != 0 ? hash : 1;
+    }
+
+    /**
+     * Journal one resolved round; never blocks
+     * @param choice1 choice2 the players' choice codes, outcome a GameResult code
+     * @param waited1Nanos waited2Nanos how long each player's choice stood before the round resolved
+     * @return false if the round was dropped because the writer is behind or the journal is closed
+     */
+    public boolean append(long matchId, long matchRound, long player1, String name1, long player2, String name2,
+                          int choice1, int choice2, int outcome, int flags, long waited1Nanos, long waited2Nanos) {
+        long sequence = claim();
+        if (sequence < 0) {
+            return false;
+        }
+        int slot = (int) sequence & mask;
+        int at = slot * WORDS;
+        fill(slot, matchId, matchRound, player1, name1, player2, name2);
+        slots[at + WAITED] = (long) micros(waited1Nanos) << 32 | micros(waited2Nanos) & 0xFFFFFFFFL;
+        slots[at + CODES] = (long) ROUND << 32
+            | (flags & 0xFF) | (choice1 & 0xFF) << 8 | (choice2 & 0xFF) << 16 | (outcome & 0xFF) << 24;
+        published.lazySet(slot, sequence + 1);
+        return true;
+    }
+
+    /**
+     * Journal the end of a match after the given number of rounds; never blocks
+     * @return false if it was dropped because the writer is behind or the journal is closed
+     */
+    public boolean matchEnded(long matchId, long rounds, long player1, String name1, long player2, String name2) {
+        long sequence = claim();
+        if (sequence < 0) {
+            return false;
+        }
+        int slot = (int) sequence & mask;
+        fill(slot, matchId, rounds, player1, name1, player2, name2);
+        slots[slot * WORDS + CODES] = (long) END << 32;
+        published.lazySet(slot, sequence + 1);
+        return true;
+    }
+
+    /**
+     * @return the next ring sequence, or -1 if the ring is full or the journal closed
+     */
+    private long claim() {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (closed || sequence - drained > mask) {
+                ServerMetrics.journalDropped();
+                return -1;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        return sequence;
+    }
+
+    private void fill(int slot, long matchId, long number, long player1, String name1, long player2, String name2) {
+        int at = slot * WORDS;
+        slots[at + MATCH] = matchId;
+        slots[at + FIRST] = player1;
+        slots[at + SECOND] = player2;
+        slots[at + RESOLVED] = System.currentTimeMillis();
+        slots[at + ROUND_NUMBER] = number;
+        names[slot * 2] = name1;
+        names[slot * 2 + 1] = name2;
+    }
+
+    private static int micros(long nanos) {
+        return (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMicros(Math.max(nanos, 0)));
+    }
+
+    /**
+     * Journal everything appended so far, commit it, seal the segment and stop the writer
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long next = 0;
+        try {
+            while (true) {
+                boolean closing = closed;
+                long from = next;
+                while (next - from < BATCH && published.get((int) next & mask) == next + 1) {
+                    write(next);
+                    next++;
+                }
+                drained = next;
+
+                long now = System.nanoTime();
+                if (position > committed && (closing || now - lastCommit >= commitNanos)) {
+                    commit();
+                } else if (closing && next == from) {
+                    break;
+                } else if (next == from) {
+                    LockSupport.parkNanos(position > committed
+                        ? Math.min(IDLE_PARK_NANOS, commitNanos - (now - lastCommit)) : IDLE_PARK_NANOS);
+                }
+            }
+            endSegment();
+        } catch (IOException | RuntimeException e) {
+            ServerLog.error("journal-writer-failed", String.valueOf(e));
+        }
+    }
+
+    /**
+     * Copy one ring slot into the segment, after the PLAYER records it needs
+     */
+    private void write(long sequence) throws IOException {
+        int slot = (int) sequence & mask;
+        int at = slot * WORDS;
+        long player1 = slots[at + FIRST];
+        long player2 = slots[at + SECOND];
+        int needed = RECORD_BYTES * (1 + (isSeen(player1) ? 0 : 1) + (isSeen(player2) ? 0 : 1));
+        if (position + needed > segmentBytes) {
+            endSegment();
+            startSegment();
+        }
+        writePlayer(player1, names[slot * 2]);
+        writePlayer(player2, names[slot * 2 + 1]);
+        names[slot * 2] = null;
+        names[slot * 2 + 1] = null;
+
+        long codes = slots[at + CODES];
+        if ((int) (codes >>> 32) == END) {
+            map.putLong(position, 0);
+            map.putLong(position + 8, slots[at + MATCH]);
+            map.putLong(position + 16, player1);
+            map.putLong(position + 24, player2);
+            map.putLong(position + 32, slots[at + RESOLVED]);
+            map.putInt(position + MATCH_ROUND, (int) slots[at + ROUND_NUMBER]);
+            map.put(position + KIND, (byte) END);
+            position += RECORD_BYTES;
+            return;
+        }
+        long waited = slots[at + WAITED];
+        map.putLong(position, nextRoundId++);
+        map.putLong(position + 8, slots[at + MATCH]);
+        map.putLong(position + 16, player1);
+        map.putLong(position + 24, player2);
+        map.putLong(position + 32, slots[at + RESOLVED]);
+        map.putInt(position + MATCH_ROUND, (int) slots[at + ROUND_NUMBER]);
+        map.putInt(position + WAITED1, (int) (waited >>> 32));
+        map.putInt(position + WAITED2, (int) waited);
+        map.put(position + KIND, (byte) ROUND);
+        map.put(position + FLAGS, (byte) codes);
+        map.put(position + CHOICE1, (byte) (codes >>> 8));
+        map.put(position + CHOICE2, (byte) (codes >>> 16));
+        map.put(position + OUTCOME, (byte) (codes >>> 24));
+        position += RECORD_BYTES;
+    }
+
+    private void writePlayer(long playerId, String name) {
+        if (isSeen(playerId)) {
+            return;
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int length = bytes.length;
+        if (length > NAME_BYTES) {
+            // Cut at a character boundary
+            length = NAME_BYTES;
+            while ((bytes[length] & 0xC0) == 0x80) {
+                length--;
+            }
+        }
+        map.putLong(position, playerId);
+        map.put(position + NAME, bytes, 0, length);
+        map.put(position + KIND, (byte) PLAYER);
+        map.put(position + NAME_LENGTH, (byte) length);
+        position += RECORD_BYTES;
+        markSeen(playerId);
+    }
+
+    /**
+     * Force everything written since the last commit, then publish it through the header's end
+     */
+    private void commit() {
+        long started = System.nanoTime();
+        int records = (position - committed) / RECORD_BYTES;
+        map.force(committed, position - committed);
+        map.putLong(END_OFFSET, position);
+        map.force(0, HEADER_BYTES);
+        committed = position;
+        lastCommit = System.nanoTime();
+        ServerMetrics.journalCommitted(records, lastCommit - started);
+    }
+
+    // Segments
+
+    private void startSegment() throws IOException {
+        segment++;
+        Path path = directory.resolve(segmentName(segment));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        map.putInt(0, MAGIC);
+        map.putInt(4, VERSION);
+        map.putInt(8, RECORD_BYTES);
+        map.putLong(FIRST_ROUND_OFFSET, nextRoundId);
+        map.putLong(END_OFFSET, HEADER_BYTES);
+        map.putLong(CREATED_OFFSET, System.currentTimeMillis());
+        map.putLong(SEGMENT_OFFSET, segment);
+        map.putLong(RUN_OFFSET, runId);
+        map.force(0, HEADER_BYTES);
+        position = HEADER_BYTES;
+        committed = HEADER_BYTES;
+        Arrays.fill(seen, 0);
+        seenCount = 0;
+        ServerLog.info("journal-segment", null, path.toString());
+    }
+
+    /**
+     * Commit what is left, mark the segment sealed and cut the file down to its records
+     */
+    private void endSegment() throws IOException {
+        if (position > committed) {
+            commit();
+        }
+        map.putInt(SEALED_OFFSET, 1);
+        map.force(0, HEADER_BYTES);
+        map = null;
+        try {
+            channel.truncate(committed);
+        } catch (IOException e) {
+            // e.g. while still mapped on Windows: the unused tail stays, readers stop at end anyway
+        }
+        channel.close();
+    }
+
+    static String segmentName(long segment) {
+        return String.format("%s%019d%s", PREFIX, segment, SUFFIX);
+    }
+
+    /**
+     * The segment number in a segment's file name
+     */
+    public static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * The journal's segment files, oldest first
+     */
+    public static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                segments.add(file);
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Carry on after the newest segment: the next round id and segment number
+     */
+    private void resume(Path directory) throws IOException {
+        List<Path> segments = segments(directory);
+        nextRoundId = 1;
+        if (segments.isEmpty()) {
+            return;
+        }
+        try (Cursor cursor = Cursor.open(segments.get(segments.size() - 1))) {
+            segment = cursor.getSegment();
+            nextRoundId = cursor.getFirstRoundId();
+            while (cursor.next()) {
+                if (cursor.getKind() == ROUND) {
+                    nextRoundId = cursor.getRoundId() + 1;
+                }
+            }
+        }
+    }
+
+    // Seen players, open addressing
+
+    private boolean isSeen(long playerId) {
+        int mask = seen.length - 1;
+        for (int slot = spread(playerId) & mask; seen[slot] != 0; slot = (slot + 1) & mask) {
+            if (seen[slot] == playerId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void markSeen(long playerId) {
+        if (++seenCount * 2 > seen.length) {
+            long[] old = seen;
+            seen = new long[old.length * 2];
+            for (long id : old) {
+                if (id != 0) {
+                    insert(id);
+                }
+            }
+        }
+        insert(playerId);
+    }
+
+    private void insert(long playerId) {
+        int mask = seen.length - 1;
+        int slot = spread(playerId) & mask;
+        while (seen[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        seen[slot] = playerId;
+    }
+
+    private static int spread(long id) {
+        return (int) (id ^ (id >>> 32));
+    }
+
+    /**
+     * Reads the committed records of one segment in order, without allocating per record
+     */
+    public static final class Cursor implements AutoCloseable {
+        private final FileChannel channel;
+        private final MappedByteBuffer map;
+        private final int end;
+        private final boolean sealed;
+        private int at = HEADER_BYTES - RECORD_BYTES;
+
+        private Cursor(Path segment) throws IOException {
+            channel = FileChannel.open(segment, StandardOpenOption.READ);
+            try {
+                long size = channel.size();
+                if (size < HEADER_BYTES) {
+                    throw new IOException(segment + " is not a round journal segment");
+                }
+                map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                map.order(ByteOrder.BIG_ENDIAN);
+                if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION || map.getInt(8) != RECORD_BYTES) {
+                    throw new IOException(segment + " is not a round journal segment");
+                }
+                long committedEnd = map.getLong(END_OFFSET);
+                if (committedEnd > size || committedEnd % RECORD_BYTES != 0) {
+                    throw new IOException(segment + " has a bad end offset " + committedEnd);
+                }
+                end = (int) committedEnd;
+                sealed = map.getInt(SEALED_OFFSET) != 0;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        public static Cursor open(Path segment) throws IOException {
+            return new Cursor(segment);
+        }
+
+        /**
+         * Move to the next record
+         * @return false once the committed records are used up
+         */
+        public boolean next() {
+            if (at + RECORD_BYTES >= end) {
+                return false;
+            }
+            at += RECORD_BYTES;
+            return true;
+        }
+
+        /**
+         * Number of committed records, PLAYER records included
+         */
+        public int getRecordCount() {
+            return (end - HEADER_BYTES) / RECORD_BYTES;
+        }
+
+        /**
+         * Go to record index (0-based), so that next() reads it
+         */
+        public void seek(int index) {
+            at = HEADER_BYTES + (index - 1) * RECORD_BYTES;
+        }
+
+        public boolean isSealed() {
+            return sealed;
+        }
+
+        public long getFirstRoundId() {
+            return map.getLong(FIRST_ROUND_OFFSET);
+        }
+
+        public long getSegment() {
+            return map.getLong(SEGMENT_OFFSET);
+        }
+
+        /**
+         * Same for every segment written by one server start
+         */
+        public long getRunId() {
+            return map.getLong(RUN_OFFSET);
+        }
+
+        public int getKind() {
+            return map.get(at + KIND);
+        }
+
+        public long getRoundId() {
+            return map.getLong(at);
+        }
+
+        public long getMatchId() {
+            return map.getLong(at + 8);
+        }
+
+        public long getPlayer1() {
+            return map.getLong(at + 16);
+        }
+
+        public long getPlayer2() {
+            return map.getLong(at + 24);
+        }
+
+        public long getResolvedMillis() {
+            return map.getLong(at + 32);
+        }
+
+        /**
+         * Of a ROUND record; of an END record, the number of rounds the match had
+         */
+        public int getMatchRound() {
+            return map.getInt(at + MATCH_ROUND);
+        }
+
+        public int getWaited1Micros() {
+            return map.getInt(at + WAITED1);
+        }
+
+        public int getWaited2Micros() {
+            return map.getInt(at + WAITED2);
+        }
+
+        public int getFlags() {
+            return map.get(at + FLAGS);
+        }
+
+        public int getChoice1() {
+            return map.get(at + CHOICE1);
+        }
+
+        public int getChoice2() {
+            return map.get(at + CHOICE2);
+        }
+
+        public int getOutcome() {
+            return map.get(at + OUTCOME);
+        }
+
+        /**
+         * Of a PLAYER record
+         */
+        public long getPlayerId() {
+            return map.getLong(at);
+        }
+
+        /**
+         * Of a PLAYER record
+         */
+        public String getPlayerName() {
+            byte[] bytes = new byte[map.get(at + NAME_LENGTH) & 0xFF];
+            map.get(at + NAME, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Print the journaled rounds, e.g. to settle a dispute
+     * Usage: java -cp out server.RoundJournal [directory] [match id or player name]
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(args.length > 0 ? args[0] : ServerConfig.JOURNAL_DIR);
+        String filter = args.length > 1 ? args[1] : null;
+        long filterId = filter == null ? 0 : filter.matches("\\d+") ? Long.parseLong(filter) : playerId(filter);
+        boolean byMatch = filter != null && filter.matches("\\d+");
+
+        for (Path segment : segments(directory)) {
+            Map<Long, String> players = new HashMap<>();
+            try (Cursor cursor = Cursor.open(segment)) {
+                while (cursor.next()) {
+                    int kind = cursor.getKind();
+                    if (kind == PLAYER) {
+                        players.put(cursor.getPlayerId(), cursor.getPlayerName());
+                        continue;
+                    }
+                    if (filter != null && (byMatch ? cursor.getMatchId() != filterId
+                            : cursor.getPlayer1() != filterId && cursor.getPlayer2() != filterId)) {
+                        continue;
+                    }
+                    if (kind == END) {
+                        System.out.printf("%s match %d ended after %d rounds: %s vs %s%n",
+                            Instant.ofEpochMilli(cursor.getResolvedMillis()), cursor.getMatchId(),
+                            cursor.getMatchRound(), players.get(cursor.getPlayer1()), players.get(cursor.getPlayer2()));
+                        continue;
+                    }
+                    System.out.printf("%d %s match %d round %d: %s %s (%.1fms) vs %s %s (%.1fms) -> %s%n",
+                        cursor.getRoundId(), Instant.ofEpochMilli(cursor.getResolvedMillis()),
+                        cursor.getMatchId(), cursor.getMatchRound(),
+                        players.get(cursor.getPlayer1()), GameVariant.CLASSIC.choiceName(cursor.getChoice1()),
+                        cursor.getWaited1Micros() / 1000.0,
+                        players.get(cursor.getPlayer2()), GameVariant.CLASSIC.choiceName(cursor.getChoice2()),
+                        cursor.getWaited2Micros() / 1000.0,
+                        GameResult.fromCode(cursor.getOutcome()));
+                }
+            }
+        }
+    }
+}
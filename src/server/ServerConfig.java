@@ -0,0 +1,113 @@
+package server;
+
+/**
+ * ServerConfig - Server settings, read once from system properties
+ * Example: java -Drps.mode=nio -Drps.port=12345 -cp out server.GameServer
+ */
+public final class ServerConfig {
+    /**
+     * How client connections are served
+     * THREAD  - one blocking platform thread per client (original behaviour)
+     * VIRTUAL - one blocking virtual thread per client (Java 21+)
+     * NIO     - a few selector-driven reactor threads for all clients
+     */
+    public enum Mode {THREAD, VIRTUAL, NIO}
+
+    public static final int PORT = Integer.getInteger("rps.port", 12345);
+    public static final Mode MODE = Mode.valueOf(System.getProperty("rps.mode", "thread").toUpperCase());
+
+    // NIO mode settings
+    public static final int REACTOR_THREADS = Integer.getInteger("rps.reactors",
+            Runtime.getRuntime().availableProcessors());
+    public static final int ACCEPT_BACKLOG = Integer.getInteger("rps.backlog", 1024);
+
+    // Logging (see ServerLog): per-message logging 0 = off, 1 = every message, N = about 1 in N
+    public static final ServerLog.Level LOG_LEVEL =
+            ServerLog.Level.valueOf(System.getProperty("rps.log.level", "INFO").toUpperCase());
+    public static final int LOG_MESSAGE_SAMPLE_RATE = Integer.getInteger("rps.log.messages", 1);
+    public static final int LOG_BUFFER_RECORDS = Integer.getInteger("rps.log.buffer", 8192);
+
+    // Outbound queues (see OutboundQueue)
+    public static final int OUTBOUND_CAPACITY = Integer.getInteger("rps.out.capacity", 64);
+    static final OutboundQueue.Policy SLOW_CONSUMER_POLICY =
+            OutboundQueue.Policy.valueOf(System.getProperty("rps.out.policy", "disconnect").toUpperCase());
+    public static final long SLOW_CONSUMER_BLOCK_MILLIS = Long.getLong("rps.out.blockMillis", 1000);
+
+    /**
+     * What happens to a paired player who does not choose in time
+     * FORFEIT  - they are disconnected and their opponent told they left
+     * AUTOPICK - a random choice is made for them and the round goes on
+     */
+    public enum TurnTimeoutPolicy {FORFEIT, AUTOPICK}
+
+    // Timeouts (see TimerWheel), 0 switches one off
+    public static final long TIMER_TICK_MILLIS = Long.getLong("rps.timer.tickMillis", 100);
+    public static final long CHOICE_TIMEOUT_MILLIS = Long.getLong("rps.timeout.choiceMillis", 30_000);
+    public static final TurnTimeoutPolicy TURN_TIMEOUT_POLICY =
+            TurnTimeoutPolicy.valueOf(System.getProperty("rps.timeout.policy", "forfeit").toUpperCase());
+    public static final long LOBBY_TIMEOUT_MILLIS = Long.getLong("rps.timeout.lobbyMillis", 300_000);
+    public static final long SILENT_TIMEOUT_MILLIS = Long.getLong("rps.timeout.silentMillis", 600_000);
+
+    // Admission control (see AdmissionControl): 0 switches a limit off; rates are per remote address
+    public static final int ADMIT_MAX_SESSIONS = Integer.getInteger("rps.admit.maxSessions", 0);
+    public static final double ADMIT_CONNECTS_PER_SECOND = Double.parseDouble(System.getProperty("rps.admit.connectsPerSecond", "5"));
+    public static final int ADMIT_CONNECT_BURST = Integer.getInteger("rps.admit.connectBurst", 20);
+    public static final double ADMIT_MESSAGES_PER_SECOND = Double.parseDouble(System.getProperty("rps.admit.messagesPerSecond", "50"));
+    public static final int ADMIT_MESSAGE_BURST = Integer.getInteger("rps.admit.messageBurst", 100);
+    public static final boolean ADMIT_LIMIT_LOOPBACK = Boolean.getBoolean("rps.admit.limitLoopback");
+
+    // Bots (see Bot): a player unpaired this long plays an in-process bot, 0 = never; standalone servers only
+    public static final long BOT_DELAY_MILLIS = Long.getLong("rps.bot.delayMillis", 10_000);
+    public static final String BOT_STRATEGIES = System.getProperty("rps.bot.strategies", "RANDOM,FREQUENCY,MARKOV");
+
+    // Multiplexed connections (see Multiplexer): sessions per connection, 0 refuses CONNECT_MUX; frames queued per connection
+    public static final int MUX_MAX_SESSIONS = Integer.getInteger("rps.mux.maxSessions", 4096);
+    public static final int MUX_OUT_CAPACITY = Integer.getInteger("rps.mux.outCapacity", 16_384);
+
+    // How long a dropped session (and its match) is kept for the client to RESUME, 0 = not at all
+    public static final long RESUME_GRACE_MILLIS = Long.getLong("rps.session.graceMillis", 10_000);
+
+    // Player statistics file (see PlayerStatsStore), empty switches them off
+    public static final String STATS_FILE = System.getProperty("rps.stats.file", "player-stats.dat");
+    // Longest a joining player waits for its rating from the stats writer before queueing at the initial rating
+    public static final long STATS_LOOKUP_MILLIS = Long.getLong("rps.stats.lookupMillis", 1000);
+
+    // Round journal (see RoundJournal), empty directory switches it off
+    public static final String JOURNAL_DIR = System.getProperty("rps.journal.dir", "journal");
+    public static final int JOURNAL_SEGMENT_BYTES = Integer.getInteger("rps.journal.segmentBytes", 64 << 20);
+    public static final int JOURNAL_BUFFER_RECORDS = Integer.getInteger("rps.journal.bufferRecords", 1 << 16);
+    public static final long JOURNAL_COMMIT_MILLIS = Long.getLong("rps.journal.commitMillis", 5);
+
+    // Round analytics (see RoundAnalytics), refreshed from the journal in the background, 0 = never
+    public static final long ANALYTICS_REFRESH_MILLIS = Long.getLong("rps.analytics.refreshMillis", 60_000);
+    public static final String ANALYTICS_CHECKPOINT = System.getProperty("rps.analytics.checkpoint",
+        JOURNAL_DIR + "/analytics.ckpt");
+    public static final int ANALYTICS_PARALLELISM = Integer.getInteger("rps.analytics.parallelism",
+        Runtime.getRuntime().availableProcessors());
+    public static final int ANALYTICS_TOP_PLAYERS = Integer.getInteger("rps.analytics.topPlayers", 20);
+
+    // Matchmaking (see Matchmaker), in rating points; max window 0 = keeps widening
+    public static final double MATCH_BUCKET_WIDTH = Double.parseDouble(System.getProperty("rps.match.bucketWidth", "25"));
+    public static final double MATCH_WINDOW = Double.parseDouble(System.getProperty("rps.match.window", "100"));
+    public static final double MATCH_WIDEN_PER_SECOND = Double.parseDouble(System.getProperty("rps.match.widenPerSecond", "50"));
+    public static final double MATCH_MAX_WINDOW = Double.parseDouble(System.getProperty("rps.match.maxWindow", "0"));
+
+    // Cluster (see ClusterNode, ClusterBroker): broker "host:port", empty = single node
+    public static final String CLUSTER_BROKER = System.getProperty("rps.cluster.broker", "");
+    public static final String CLUSTER_NODE = System.getProperty("rps.cluster.node", "node-" + PORT);
+    public static final String CLUSTER_HOST = System.getProperty("rps.cluster.host", "127.0.0.1");
+    public static final int CLUSTER_RELAY_PORT = Integer.getInteger("rps.cluster.relayPort", PORT + 1000);
+    public static final long CLUSTER_SPILL_MILLIS = Long.getLong("rps.cluster.spillMillis", 2000);
+    public static final int BROKER_PORT = Integer.getInteger("rps.broker.port", 12400);
+
+    // Leaderboard (see Leaderboard): places per ranking, games needed to be ranked by win rate
+    public static final int LEADERBOARD_SIZE = Math.max(1, Integer.getInteger("rps.leaderboard.size", 10));
+    public static final long LEADERBOARD_MIN_GAMES = Long.getLong("rps.leaderboard.minGames", 10);
+
+    // Metrics (see ServerMetrics), port 0 switches the HTTP endpoint off
+    public static final String METRICS_HOST = System.getProperty("rps.metrics.host", "127.0.0.1");
+    public static final int METRICS_PORT = Integer.getInteger("rps.metrics.port", 9464);
+
+    private ServerConfig() {
+    }
+}
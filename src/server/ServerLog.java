@@ -0,0 +1,213 @@
+package server;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ServerLog - Asynchronous structured logging for the server
+ *
+ * Callers copy a few fields (event, player, match, message type, detail) into a preallocated
+ * slot of a bounded ring buffer and return - no string building and no PrintStream lock on
+ * the calling thread. A background writer formats the records and writes them in batches.
+ * When the buffer is full, records are dropped and counted rather than blocking the game.
+ *
+ * Settings (see ServerConfig):
+ *   rps.log.level    - DEBUG, INFO, WARN or ERROR (default INFO)
+ *   rps.log.messages - per-message logging: 0 = off, 1 = every message, N = about 1 in N (default 1)
+ *   rps.log.buffer   - ring buffer size, rounded up to a power of two (default 8192)
+ */
+public final class ServerLog {
+    public enum Level {DEBUG, INFO, WARN, ERROR}
+
+    public static final long NO_MATCH = 0;
+
+    private static final Level LEVEL = ServerConfig.LOG_LEVEL;
+    private static final int MESSAGE_SAMPLE_RATE = ServerConfig.LOG_MESSAGE_SAMPLE_RATE;
+    private static final int CAPACITY = Integer.highestOneBit(Math.max(2, ServerConfig.LOG_BUFFER_RECORDS - 1) << 1);
+    private static final int MASK = CAPACITY - 1;
+
+    private static final Record[] ring = new Record[CAPACITY];
+    private static final AtomicLong head = new AtomicLong();  // next sequence to claim (producers)
+    private static volatile long tail = 0;                     // next sequence to write (writer thread)
+    private static final LongAdder dropped = new LongAdder();
+    private static long droppedReported = 0;                   // writer thread only
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            ring[i] = new Record();
+        }
+        Thread writer = new Thread(ServerLog::writeLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(ServerLog::drain, "log-flush"));
+    }
+
+    private ServerLog() {
+    }
+
+    /**
+     * One log entry. Slots are reused, only the writer thread reads them.
+     */
+    private static final class Record {
+        volatile long published = -1;  // sequence this slot currently holds
+        long timeMillis;
+        Level level;
+        String event;
+        String player;
+        long match;
+        String type;
+        String detail;
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() >= LEVEL.ordinal();
+    }
+
+    /**
+     * Whether the next protocol message should be logged, according to rps.log.messages
+     */
+    public static boolean sampleMessage() {
+        return MESSAGE_SAMPLE_RATE > 0
+                && (MESSAGE_SAMPLE_RATE == 1 || ThreadLocalRandom.current().nextInt(MESSAGE_SAMPLE_RATE) == 0);
+    }
+
+    /**
+     * Log one protocol message in or out of a connection, subject to sampling
+     */
+    public static void message(String event, String player, long match, String type, String line) {
+        if (isEnabled(Level.INFO) && sampleMessage()) {
+            log(Level.INFO, event, player, match, type, line);
+        }
+    }
+
+    public static void info(String event, String player, String detail) {
+        log(Level.INFO, event, player, NO_MATCH, null, detail);
+    }
+
+    public static void info(String event, String player, long match, String detail) {
+        log(Level.INFO, event, player, match, null, detail);
+    }
+
+    public static void warn(String event, String detail) {
+        log(Level.WARN, event, null, NO_MATCH, null, detail);
+    }
+
+    public static void error(String event, String detail) {
+        log(Level.ERROR, event, null, NO_MATCH, null, detail);
+    }
+
+    /**
+     * Queue a record for the writer thread. Never blocks; drops the record if the buffer is full.
+     */
+    public static void log(Level level, String event, String player, long match, String type, String detail) {
+        if (!isEnabled(level)) {
+            return;
+        }
+
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail >= CAPACITY) {
+                dropped.increment();
+                return;
+            }
+        } while (!head.compareAndSet(sequence, sequence + 1));
+
+        Record record = ring[(int) sequence & MASK];
+        record.timeMillis = System.currentTimeMillis();
+        record.level = level;
+        record.event = event;
+        record.player = player;
+        record.match = match;
+        record.type = type;
+        record.detail = detail;
+        record.published = sequence;
+    }
+
+    /**
+     * Number of records dropped because the writer could not keep up
+     */
+    public static long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    private static void writeLoop() {
+        while (true) {
+            if (!drain()) {
+                LockSupport.parkNanos(1_000_000);
+            }
+        }
+    }
+
+    /**
+     * Write every published record
+     * @return true if anything was written
+     */
+    private static synchronized boolean drain() {
+        StringBuilder out = new StringBuilder(256);
+        StringBuilder err = new StringBuilder();
+        long next = tail;
+        long start = next;
+        ZoneId zone = ZoneId.systemDefault();
+
+        while (true) {
+            Record record = ring[(int) next & MASK];
+            if (record.published != next) {
+                break;
+            }
+            StringBuilder line = record.level.ordinal() >= Level.WARN.ordinal() ? err : out;
+            format(line, record, zone);
+            record.event = null;
+            record.player = null;
+            record.type = null;
+            record.detail = null;
+            next++;
+            tail = next;
+        }
+
+        long droppedTotal = dropped.sum();
+        long lost = droppedTotal - droppedReported;
+        droppedReported = droppedTotal;
+        if (lost > 0) {
+            err.append("WARN  log-dropped count=").append(lost).append('\n');
+        }
+        write(System.out, out);
+        write(System.err, err);
+        return next != start;
+    }
+
+    private static void format(StringBuilder line, Record record, ZoneId zone) {
+        line.append(LocalTime.ofInstant(Instant.ofEpochMilli(record.timeMillis), zone)).append(' ');
+        line.append(record.level);
+        for (int i = record.level.name().length(); i < 6; i++) {
+            line.append(' ');
+        }
+        line.append(record.event);
+        if (record.player != null) {
+            line.append(" player=").append(record.player);
+        }
+        if (record.match != NO_MATCH) {
+            line.append(" match=").append(record.match);
+        }
+        if (record.type != null) {
+            line.append(" type=").append(record.type);
+        }
+        if (record.detail != null) {
+            line.append(" - ").append(record.detail);
+        }
+        line.append('\n');
+    }
+
+    private static void write(PrintStream stream, StringBuilder text) {
+        if (text.length() > 0) {
+            stream.append(text);
+            stream.flush();
+        }
+    }
+}
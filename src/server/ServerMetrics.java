@@ -0,0 +1,397 @@
+package server;
+
+import utils.LatencyHistogram;
+
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ServerMetrics - Counters and latency histograms for the whole server
+ *
+ * Recording is meant for the hot path: counters are LongAdders (striped per thread, so
+ * reactors and client threads never fight over one cache line) and latencies go into
+ * lock-free LatencyHistograms. Nothing is computed until someone reads the metrics.
+ *
+ * Exposed two ways, both started by start():
+ *   JMX  - the ServerMetricsMBean attributes under rps.server:type=ServerMetrics
+ *   HTTP - Prometheus text format on http://rps.metrics.host:rps.metrics.port/metrics
+ */
+final class ServerMetrics implements ServerMetricsMBean {
+    /**
+     * Why a client was sent an ERROR or dropped
+     */
+    enum ErrorType {UNKNOWN_COMMAND, INVALID_CHOICE, NO_OPPONENT, TURN_TIMEOUT, LOBBY_TIMEOUT,
+        SILENT_TIMEOUT, SLOW_CONSUMER, BAD_FRAME, SESSION_EXPIRED, SHED}
+
+    private static final long RATE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private static final LongAdder connections = new LongAdder();
+    private static final LongAdder pairs = new LongAdder();
+    private static final LongAdder rounds = new LongAdder();
+    private static final LongAdder resumes = new LongAdder();
+    private static final LongAdder botMatches = new LongAdder();
+    private static final LongAdder journalRecords = new LongAdder();
+    private static final LongAdder journalDropped = new LongAdder();
+    private static final LongAdder[] errors = new LongAdder[ErrorType.values().length];
+    private static final LongAdder[] refusals = new LongAdder[AdmissionControl.Refusal.values().length];
+    private static final LatencyHistogram timeToPair = new LatencyHistogram();
+    private static final LatencyHistogram choiceToResult = new LatencyHistogram();
+    private static final LatencyHistogram ratingGap = new LatencyHistogram();  // rating points, not micros
+    private static final LatencyHistogram journalCommit = new LatencyHistogram();
+
+    static {
+        for (int i = 0; i < errors.length; i++) {
+            errors[i] = new LongAdder();
+        }
+        for (int i = 0; i < refusals.length; i++) {
+            refusals[i] = new LongAdder();
+        }
+    }
+
+    // Per-second rates, updated by the sampler on the timer thread
+    private static volatile double pairsPerSecond;
+    private static volatile double roundsPerSecond;
+
+    private ServerMetrics() {
+    }
+
+    /**
+     * Register the MBean, start the rate sampler and, unless rps.metrics.port is 0, the HTTP endpoint
+     */
+    static void start() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                new StandardMBean(new ServerMetrics(), ServerMetricsMBean.class),
+                new ObjectName("rps.server:type=ServerMetrics"));
+        } catch (Exception e) {
+            ServerLog.warn("jmx-register-failed", String.valueOf(e));
+        }
+
+        TimerWheel timers = GameServer.timers();
+        timers.schedule(new RateSampler(), timers.now() + RATE_INTERVAL);
+
+        if (ServerConfig.METRICS_PORT > 0) {
+            try {
+                MetricsEndpoint.start(ServerConfig.METRICS_HOST, ServerConfig.METRICS_PORT);
+                System.out.println("Metrics on http://" + ServerConfig.METRICS_HOST + ":" + ServerConfig.METRICS_PORT + "/metrics");
+            } catch (Exception e) {
+                ServerLog.warn("metrics-endpoint-failed", String.valueOf(e));
+            }
+        }
+    }
+
+    // Recording
+
+    static void connectionOpened() {
+        connections.increment();
+    }
+
+    /**
+     * Two players were paired, the given time after each of them asked for an opponent
+     */
+    static void paired(long firstWaitNanos, long secondWaitNanos, double ratingDifference) {
+        pairs.increment();
+        timeToPair.recordNanos(firstWaitNanos);
+        timeToPair.recordNanos(secondWaitNanos);
+        ratingGap.record(Math.round(ratingDifference));
+    }
+
+    /**
+     * A round was resolved and its RESULT frames queued, the given time after the deciding choice arrived
+     */
+    static void roundResolved(long choiceToResultNanos) {
+        rounds.increment();
+        choiceToResult.recordNanos(choiceToResultNanos);
+    }
+
+    /**
+     * A client reconnected and took its session back
+     */
+    static void resumed() {
+        resumes.increment();
+    }
+
+    /**
+     * A waiting player was paired with an in-process bot (also counted as a pair)
+     */
+    static void botMatchStarted() {
+        botMatches.increment();
+    }
+
+    /**
+     * The journal writer made records durable in one group commit, which took the given time
+     */
+    static void journalCommitted(int records, long commitNanos) {
+        journalRecords.add(records);
+        journalCommit.recordNanos(commitNanos);
+    }
+
+    /**
+     * A round was not journaled because the journal writer is behind
+     */
+    static void journalDropped() {
+        journalDropped.increment();
+    }
+
+    /**
+     * A connection was turned away before it got a handler
+     */
+    static void refused(AdmissionControl.Refusal refusal) {
+        refusals[refusal.ordinal()].increment();
+    }
+
+    static void error(ErrorType type) {
+        errors[type.ordinal()].increment();
+    }
+
+    /**
+     * Samples the counters once a second to turn them into rates
+     */
+    private static final class RateSampler extends TimerWheel.Timeout {
+        private long lastAt = System.nanoTime();
+        private long lastPairs;
+        private long lastRounds;
+
+        @Override
+        protected long expired(long now) {
+            long pairsNow = pairs.sum();
+            long roundsNow = rounds.sum();
+            double seconds = (now - lastAt) / 1e9;
+            if (seconds > 0) {
+                pairsPerSecond = (pairsNow - lastPairs) / seconds;
+                roundsPerSecond = (roundsNow - lastRounds) / seconds;
+            }
+            lastAt = now;
+            lastPairs = pairsNow;
+            lastRounds = roundsNow;
+            return now + RATE_INTERVAL;
+        }
+    }
+
+    // Prometheus text format
+
+    /**
+     * All metrics in the Prometheus text exposition format (version 0.0.4)
+     */
+    static String prometheus() {
+        StringBuilder out = new StringBuilder(2048);
+        gauge(out, "rps_connections_active", "Connected clients", GameServer.getTotalClients());
+        counter(out, "rps_connections_total", "Client connections accepted", connections.sum());
+        gauge(out, "rps_waiting_players", "Players waiting for an opponent", GameServer.getWaitingCount());
+        counter(out, "rps_pairs_total", "Matches started", pairs.sum());
+        counter(out, "rps_rounds_total", "Rounds resolved", rounds.sum());
+        counter(out, "rps_bot_matches_total", "Matches started against an in-process bot", botMatches.sum());
+        counter(out, "rps_resumes_total", "Sessions resumed after a dropped connection", resumes.sum());
+        gauge(out, "rps_pairs_per_second", "Matches started in the last second", pairsPerSecond);
+        gauge(out, "rps_rounds_per_second", "Rounds resolved in the last second", roundsPerSecond);
+        summary(out, "rps_time_to_pair_seconds", "Time from asking for an opponent to being paired", timeToPair);
+        summary(out, "rps_choice_to_result_seconds", "Time from the deciding CHOICE to both RESULTs being queued",
+            choiceToResult);
+        summary(out, "rps_pair_rating_gap", "Rating difference between paired players", ratingGap, 1);
+        counter(out, "rps_journal_records_total", "Round journal records made durable", journalRecords.sum());
+        counter(out, "rps_journal_dropped_total", "Rounds not journaled because the writer was behind",
+            journalDropped.sum());
+        summary(out, "rps_journal_commit_seconds", "Time to force one group of journal records to disk", journalCommit);
+
+        gauge(out, "rps_sessions_admitted", "Connections and multiplexed sessions holding an admission slot",
+            AdmissionControl.getSessionCount());
+        gauge(out, "rps_mux_sessions", "Player sessions open on multiplexed connections", Multiplexer.getSessionCount());
+        out.append("# HELP rps_connections_refused_total Connections turned away by admission control, by reason\n");
+        out.append("# TYPE rps_connections_refused_total counter\n");
+        for (AdmissionControl.Refusal refusal : AdmissionControl.Refusal.values()) {
+            out.append("rps_connections_refused_total{reason=\"").append(refusal.name().toLowerCase()).append("\"} ")
+                .append(refusals[refusal.ordinal()].sum()).append('\n');
+        }
+
+        out.append("# HELP rps_errors_total Errors sent to clients and connections dropped, by type\n");
+        out.append("# TYPE rps_errors_total counter\n");
+        for (ErrorType type : ErrorType.values()) {
+            out.append("rps_errors_total{type=\"").append(type.name().toLowerCase()).append("\"} ")
+                .append(errors[type.ordinal()].sum()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, double value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, String help, LatencyHistogram histogram) {
+        summary(out, name, help, histogram, 1e6);
+    }
+
+    /**
+     * @param divisor turns recorded values into the metric's unit, e.g. 1e6 for micros to seconds
+     */
+    private static void summary(StringBuilder out, String name, String help, LatencyHistogram histogram,
+                                double divisor) {
+        header(out, name, help, "summary");
+        for (double quantile : new double[] {0.5, 0.9, 0.99, 0.999}) {
+            out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                .append(histogram.getPercentile(quantile * 100) / divisor).append('\n');
+        }
+        out.append(name).append("_sum ").append(histogram.getSum() / divisor).append('\n');
+        out.append(name).append("_count ").append(histogram.getCount()).append('\n');
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    // JMX attributes
+
+    @Override
+    public int getActiveConnections() {
+        return GameServer.getTotalClients();
+    }
+
+    @Override
+    public long getConnectionsTotal() {
+        return connections.sum();
+    }
+
+    @Override
+    public int getWaitingPlayers() {
+        return GameServer.getWaitingCount();
+    }
+
+    @Override
+    public long getPairsTotal() {
+        return pairs.sum();
+    }
+
+    @Override
+    public long getRoundsTotal() {
+        return rounds.sum();
+    }
+
+    @Override
+    public long getBotMatchesTotal() {
+        return botMatches.sum();
+    }
+
+    @Override
+    public long getJournalRecordsTotal() {
+        return journalRecords.sum();
+    }
+
+    @Override
+    public long getJournalDroppedTotal() {
+        return journalDropped.sum();
+    }
+
+    @Override
+    public long getJournalCommitP99Micros() {
+        return journalCommit.getPercentile(99);
+    }
+
+    @Override
+    public long getResumesTotal() {
+        return resumes.sum();
+    }
+
+    @Override
+    public double getPairsPerSecond() {
+        return pairsPerSecond;
+    }
+
+    @Override
+    public double getRoundsPerSecond() {
+        return roundsPerSecond;
+    }
+
+    @Override
+    public long getTimeToPairP50Micros() {
+        return timeToPair.getPercentile(50);
+    }
+
+    @Override
+    public long getTimeToPairP99Micros() {
+        return timeToPair.getPercentile(99);
+    }
+
+    @Override
+    public long getPairRatingGapP50() {
+        return ratingGap.getPercentile(50);
+    }
+
+    @Override
+    public long getPairRatingGapP99() {
+        return ratingGap.getPercentile(99);
+    }
+
+    @Override
+    public long getChoiceToResultP50Micros() {
+        return choiceToResult.getPercentile(50);
+    }
+
+    @Override
+    public long getChoiceToResultP99Micros() {
+        return choiceToResult.getPercentile(99);
+    }
+
+    @Override
+    public long getChoiceToResultMaxMicros() {
+        return choiceToResult.getMax();
+    }
+
+    @Override
+    public long getErrorsTotal() {
+        long total = 0;
+        for (LongAdder adder : errors) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public int getSessionsAdmitted() {
+        return AdmissionControl.getSessionCount();
+    }
+
+    @Override
+    public int getMuxSessions() {
+        return Multiplexer.getSessionCount();
+    }
+
+    @Override
+    public long getConnectionsRefused() {
+        long total = 0;
+        for (LongAdder adder : refusals) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public long getConnectionsShed() {
+        return errors[ErrorType.SHED.ordinal()].sum();
+    }
+
+    @Override
+    public String getErrorsByType() {
+        StringBuilder out = new StringBuilder("{");
+        for (ErrorType type : ErrorType.values()) {
+            long count = errors[type.ordinal()].sum();
+            if (count > 0) {
+                out.append(out.length() > 1 ? ", " : "").append(type).append('=').append(count);
+            }
+        }
+        return out.append('}').toString();
+    }
+}
@@ -0,0 +1,70 @@
+package server;
+
+/**
+ * ServerMetricsMBean - Live server metrics as JMX attributes
+ * Registered as rps.server:type=ServerMetrics (see jconsole or any JMX client)
+ * Latencies are in microseconds
+ */
+public interface ServerMetricsMBean {
+    int getActiveConnections();
+
+    long getConnectionsTotal();
+
+    int getWaitingPlayers();
+
+    long getPairsTotal();
+
+    long getRoundsTotal();
+
+    long getBotMatchesTotal();
+
+    long getResumesTotal();
+
+    double getPairsPerSecond();
+
+    double getRoundsPerSecond();
+
+    long getTimeToPairP50Micros();
+
+    long getTimeToPairP99Micros();
+
+    long getPairRatingGapP50();
+
+    long getPairRatingGapP99();
+
+    long getChoiceToResultP50Micros();
+
+    long getChoiceToResultP99Micros();
+
+    long getChoiceToResultMaxMicros();
+
+    long getJournalRecordsTotal();
+
+    long getJournalDroppedTotal();
+
+    long getJournalCommitP99Micros();
+
+    long getErrorsTotal();
+
+    int getSessionsAdmitted();
+
+    /**
+     * Player sessions open on connections that sent CONNECT_MUX
+     */
+    int getMuxSessions();
+
+    /**
+     * Connections turned away at accept (too many sessions, or connecting too fast)
+     */
+    long getConnectionsRefused();
+
+    /**
+     * Connections dropped for sending faster than their address's message rate
+     */
+    long getConnectionsShed();
+
+    /**
+     * Error counts by type, e.g. {INVALID_CHOICE=3, TURN_TIMEOUT=1}
+     */
+    String getErrorsByType();
+}
@@ -0,0 +1,207 @@
+package server;
+
+import utils.BinaryProtocol;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SocketConnection - Blocking transport, one thread per client
+ * The owning thread reads text lines or binary frames. Any thread may send: frames go into an
+ * OutboundQueue, and a writer task on the executor writes everything queued with one socket write.
+ * A slow or stalled client therefore only ever blocks its own writer, never its opponent's thread.
+ */
+class SocketConnection implements Connection {
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final Executor writerExecutor;
+    private final OutboundQueue outbound = new OutboundQueue(ServerConfig.OUTBOUND_CAPACITY);
+    private final AtomicBoolean writerScheduled = new AtomicBoolean();
+    private volatile boolean closing;  // close as soon as the queue is written
+    private byte[] lineBuffer = new byte[128];
+    private byte[] writeBuffer = new byte[256];  // writer only
+
+    SocketConnection(Socket socket, Executor writerExecutor) throws IOException {
+        this.socket = socket;
+        // Frames are tiny and already batched by the writer, so don't let Nagle hold them back
+        socket.setTcpNoDelay(true);
+        // Let the OS notice peers that vanished without a FIN (see also rps.timeout.silentMillis)
+        socket.setKeepAlive(true);
+        this.in = new BufferedInputStream(socket.getInputStream());
+        this.out = socket.getOutputStream();
+        this.writerExecutor = writerExecutor;
+    }
+
+    /**
+     * Block until the next text line arrives and leave it in getLineBuffer()
+     * @return the line length without its line ending, or -1 at end of stream
+     */
+    int readLine() throws IOException {
+        int length = 0;
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                return length > 0 ? length : -1;
+            }
+            if (length == lineBuffer.length) {
+                if (length >= MAX_LINE_LENGTH) {
+                    throw new IOException("Line too long");
+                }
+                lineBuffer = Arrays.copyOf(lineBuffer, length * 2);
+            }
+            lineBuffer[length++] = (byte) b;
+        }
+        if (length > 0 && lineBuffer[length - 1] == '\r') {
+            length--;
+        }
+        return length;
+    }
+
+    /**
+     * The bytes of the last line read, valid until the next readLine()
+     */
+    byte[] getLineBuffer() {
+        return lineBuffer;
+    }
+
+    /**
+     * Block until the next binary frame arrives and copy it into frame
+     * @return the frame length, or -1 at end of stream
+     * @throws IOException for frames of unknown type or longer than the array
+     */
+    int readFrame(byte[] frame) throws IOException {
+        return readFrame(frame, 0);
+    }
+
+    /**
+     * Block until the next multiplexed frame arrives and copy it into frame, session id included
+     * @return the frame length, or -1 at end of stream
+     * @throws IOException for frames of unknown type or longer than the array
+     */
+    int readMuxFrame(byte[] frame) throws IOException {
+        return readFrame(frame, BinaryProtocol.SESSION_BYTES);
+    }
+
+    /**
+     * Read a frame behind a header of fixed length
+     */
+    private int readFrame(byte[] frame, int header) throws IOException {
+        int length = 0;
+        int total;
+        do {
+            if (length == frame.length) {
+                throw new IOException("Frame too long");
+            }
+            int b = in.read();
+            if (b == -1) {
+                return -1;
+            }
+            frame[length++] = (byte) b;
+        } while (length <= header || (total = BinaryProtocol.frameLength(frame, header, length - header)) == 0);
+        if (total < 0) {
+            throw new IOException("Unknown frame type " + frame[header]);
+        }
+        return header + total;
+    }
+
+    @Override
+    public void send(byte[] frame) {
+        if (socket.isClosed()) {
+            return;
+        }
+        if (!outbound.offer(frame)) {
+            ServerLog.warn("slow-consumer-disconnected", getRemoteAddress());
+            ServerMetrics.error(ServerMetrics.ErrorType.SLOW_CONSUMER);
+            close();
+            return;
+        }
+        scheduleWriter();
+    }
+
+    @Override
+    public void closeAfterFlush() {
+        closing = true;
+        scheduleWriter();
+    }
+
+    private void scheduleWriter() {
+        if (writerScheduled.compareAndSet(false, true)) {
+            writerExecutor.execute(this::writePending);
+        }
+    }
+
+    /**
+     * Writer task: coalesce every queued frame into one buffer and write it with a single call
+     * At most one writer runs per connection at a time
+     */
+    private void writePending() {
+        while (true) {
+            try {
+                int length = 0;
+                byte[] frame;
+                while ((frame = outbound.poll()) != null) {
+                    if (length + frame.length > writeBuffer.length) {
+                        writeBuffer = Arrays.copyOf(writeBuffer, Math.max(writeBuffer.length * 2, length + frame.length));
+                    }
+                    System.arraycopy(frame, 0, writeBuffer, length, frame.length);
+                    length += frame.length;
+                }
+                if (length > 0) {
+                    out.write(writeBuffer, 0, length);
+                }
+            } catch (IOException e) {
+                outbound.clear();
+                close();
+            }
+
+            writerScheduled.set(false);
+            // Frames queued after the last poll but before the flag was cleared are ours to write
+            if (outbound.isEmpty() || !writerScheduled.compareAndSet(false, true)) {
+                if (closing && outbound.isEmpty()) {
+                    close();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Frames waiting to be written to this client
+     */
+    int getQueueDepth() {
+        return outbound.depth();
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (!socket.isClosed()) {
+                socket.close();
+                outbound.clear();
+            }
+        } catch (IOException e) {
+            ServerLog.warn("socket-close-failed", e.getMessage());
+        }
+    }
+
+    @Override
+    public void growOutbound(int frames) {
+        outbound.grow(frames);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !socket.isClosed();
+    }
+
+    @Override
+    public String getRemoteAddress() {
+        return String.valueOf(socket.getInetAddress());
+    }
+}
@@ -0,0 +1,209 @@
+package server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TimerWheel - Hashed-wheel timer for per-connection deadlines
+ *
+ * One thread advances a ring of buckets, one bucket per tick; a Timeout sits in the bucket
+ * of its deadline tick (deadlines further out than one turn of the wheel just stay in their
+ * bucket until their turn comes round). Accuracy is one tick, which is plenty for
+ * timeouts measured in seconds.
+ *
+ * Nothing is allocated per schedule: every connection embeds one Timeout and reuses it.
+ * Other threads never touch the buckets, they post the Timeout on a lock-free pending stack
+ * and the timer thread links it in on its next tick. schedule() only ever brings a deadline
+ * forward; when a Timeout fires, expired() looks at the connection's current state and
+ * returns the next deadline, so a deadline that moved back is simply re-armed then.
+ */
+final class TimerWheel {
+    static final long NONE = Long.MAX_VALUE;
+
+    /**
+     * A reusable deadline, embedded in whatever it times out
+     */
+    abstract static class Timeout {
+        // Timer thread only
+        private Timeout prev;
+        private Timeout next;
+        private long deadlineTick;
+        private boolean linked;
+
+        // Handoff from other threads
+        private final AtomicLong requested = new AtomicLong(NONE);
+        private volatile long scheduledDeadline = NONE;
+        private volatile boolean cancelled;
+        private Timeout nextPending;
+
+        /**
+         * Called on the timer thread once the deadline has passed
+         * @return the next deadline (System.nanoTime() based), or NONE to stop
+         */
+        protected abstract long expired(long now);
+    }
+
+    private final long tickNanos;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final AtomicReference<Timeout> pending = new AtomicReference<>();
+    private final long startNanos = System.nanoTime();
+    private long tick;  // timer thread only: next tick to process
+
+    private volatile long now = startNanos;
+
+    /**
+     * @param wheelSize number of buckets, rounded up to a power of two
+     */
+    TimerWheel(String name, long tickMillis, int wheelSize) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+        this.buckets = new Timeout[size];
+        this.mask = size - 1;
+
+        Thread thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Coarse clock, updated every tick - cheaper than System.nanoTime() on hot paths
+     */
+    long now() {
+        return now;
+    }
+
+    /**
+     * Make sure the timeout fires no later than deadline (System.nanoTime() based)
+     * Safe to call from any thread; a no-op when it is already due earlier
+     */
+    void schedule(Timeout timeout, long deadline) {
+        if (timeout.cancelled || timeout.scheduledDeadline <= deadline) {
+            return;
+        }
+        if (timeout.requested.getAndAccumulate(deadline, Math::min) == NONE) {
+            push(timeout);
+        }
+    }
+
+    /**
+     * Stop the timeout for good, e.g. when its connection is cleaned up
+     */
+    void cancel(Timeout timeout) {
+        timeout.cancelled = true;
+        if (timeout.requested.getAndSet(0) == NONE) {
+            push(timeout);
+        }
+    }
+
+    private void push(Timeout timeout) {
+        Timeout head;
+        do {
+            head = pending.get();
+            timeout.nextPending = head;
+        } while (!pending.compareAndSet(head, timeout));
+    }
+
+    private void run() {
+        // Expired timeouts run here; whatever they send must never wait, or every other deadline waits too
+        OutboundQueue.neverBlockOnThisThread();
+        while (true) {
+            long nextTickAt = startNanos + tick * tickNanos;
+            long wait = nextTickAt - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+
+            long current = System.nanoTime();
+            now = current;
+            try {
+                applyPending();
+                expireBucket(tick, current);
+            } catch (RuntimeException e) {
+                ServerLog.error("timer-failed", String.valueOf(e));
+            }
+            tick++;
+        }
+    }
+
+    /**
+     * Link in (or cancel) everything other threads posted since the last tick
+     */
+    private void applyPending() {
+        Timeout timeout = pending.getAndSet(null);
+        while (timeout != null) {
+            Timeout next = timeout.nextPending;
+            timeout.nextPending = null;
+            long deadline = timeout.requested.getAndSet(NONE);
+
+            if (timeout.cancelled) {
+                unlink(timeout);
+                timeout.scheduledDeadline = 0;  // never accept another schedule()
+            } else if (deadline != NONE && deadline < timeout.scheduledDeadline) {
+                unlink(timeout);
+                link(timeout, deadline);
+            }
+            timeout = next;
+        }
+    }
+
+    private void expireBucket(long currentTick, long current) {
+        int index = (int) (currentTick & mask);
+        Timeout timeout = buckets[index];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.deadlineTick <= currentTick) {
+                unlink(timeout);
+                // Posted schedules from here on must come through applyPending()
+                timeout.scheduledDeadline = NONE;
+                long deadline = NONE;
+                try {
+                    deadline = timeout.expired(current);
+                } catch (RuntimeException e) {
+                    ServerLog.error("timeout-failed", String.valueOf(e));
+                }
+                if (deadline != NONE && !timeout.cancelled) {
+                    link(timeout, deadline);
+                }
+            }
+            timeout = next;
+        }
+    }
+
+    private void link(Timeout timeout, long deadline) {
+        long deadlineTick = (deadline - startNanos + tickNanos - 1) / tickNanos;
+        // Never into a bucket that has already been processed this turn
+        timeout.deadlineTick = Math.max(deadlineTick, tick + 1);
+        timeout.scheduledDeadline = deadline;
+
+        int index = (int) (timeout.deadlineTick & mask);
+        Timeout head = buckets[index];
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        buckets[index] = timeout;
+        timeout.linked = true;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (!timeout.linked) {
+            return;
+        }
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[(int) (timeout.deadlineTick & mask)] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.linked = false;
+    }
+}
@@ -0,0 +1,49 @@
+package server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TokenBucket - Lock-free rate limit: rate tokens per second, up to burst at once
+ *
+ * Kept as one number, the time at which the bucket would be full again (the "theoretical
+ * arrival time" of the generic cell rate algorithm): taking a token pushes it one interval
+ * further, and a take is refused when that would put it more than a whole burst ahead of
+ * now. The same as counting tokens, without a refill step or a lock.
+ */
+final class TokenBucket {
+    private final long interval;   // nanos per token
+    private final long tolerance;  // how far ahead of now fullAt may run
+    private final AtomicLong fullAt;
+
+    /**
+     * @param now the clock the bucket will be used with (System.nanoTime() based)
+     */
+    TokenBucket(double ratePerSecond, int burst, long now) {
+        this.interval = Math.max(1, (long) (1e9 / ratePerSecond));
+        this.tolerance = interval * Math.max(1, burst);
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * @return true if a token was taken, false if the bucket is empty
+     */
+    boolean tryTake(long now) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + interval;
+            if (next - now > tolerance) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return true if no token has been taken for long enough to fill the bucket
+     */
+    boolean isFull(long now) {
+        return fullAt.get() <= now;
+    }
+}
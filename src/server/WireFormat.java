@@ -0,0 +1,237 @@
+package server;
+
+import game.GameLogic;
+import utils.BinaryProtocol;
+import utils.Protocol;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * WireFormat - Encodes server -> client messages for one protocol flavour
+ * TEXT is the original "TYPE:content" line protocol, BINARY is utils.BinaryProtocol
+ *
+ * Every message that does not carry a player name is encoded once, when the class loads:
+ * the fixed WAITING/OPPONENT_LEFT/ERROR frames and the RESULT frame for each of the
+ * 3 x 3 choice pairs. Sending one of those is a plain buffer copy - no string building,
+ * no charset encoding. Cached arrays are shared between connections and never modified.
+ */
+enum WireFormat {
+    TEXT {
+        @Override
+        byte[] encodeWelcome(String name, String token) {
+            return line(Protocol.WELCOME, token + Protocol.DELIMITER + "Welcome " + name + "!");
+        }
+
+        @Override
+        byte[] encodeWaitingForOpponent() {
+            return line(Protocol.WAITING, "Waiting for an opponent to join...");
+        }
+
+        @Override
+        byte[] encodeWaitingForChoice() {
+            return line(Protocol.WAITING, "Waiting for opponent's choice...");
+        }
+
+        @Override
+        byte[] encodeOpponentFound(String opponentName) {
+            return line(Protocol.OPPONENT_FOUND, "Matched with opponent: " + opponentName);
+        }
+
+        @Override
+        byte[] encodeResult(String outcome, String yourChoice, String opponentChoice) {
+            return line(Protocol.RESULT,
+                outcome + ":You chose " + yourChoice + ", Opponent chose " + opponentChoice);
+        }
+
+        @Override
+        byte[] encodeOpponentLeft() {
+            return line(Protocol.OPPONENT_LEFT, "Your opponent has left");
+        }
+
+        @Override
+        byte[] encodeError(String message) {
+            return line(Protocol.ERROR, message);
+        }
+
+        @Override
+        byte[] leaderboard(String text) {
+            return line(Protocol.LEADERBOARD, text);
+        }
+
+        private byte[] line(String type, String content) {
+            return (Protocol.createMessage(type, content) + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+    },
+
+    BINARY {
+        @Override
+        byte[] encodeWelcome(String name, String token) {
+            return BinaryProtocol.createString(BinaryProtocol.WELCOME, token + Protocol.DELIMITER + name);
+        }
+
+        @Override
+        byte[] encodeWaitingForOpponent() {
+            return BinaryProtocol.createWaiting(BinaryProtocol.WAITING_FOR_OPPONENT);
+        }
+
+        @Override
+        byte[] encodeWaitingForChoice() {
+            return BinaryProtocol.createWaiting(BinaryProtocol.WAITING_FOR_CHOICE);
+        }
+
+        @Override
+        byte[] encodeOpponentFound(String opponentName) {
+            return BinaryProtocol.createString(BinaryProtocol.OPPONENT_FOUND, opponentName);
+        }
+
+        @Override
+        byte[] encodeResult(String outcome, String yourChoice, String opponentChoice) {
+            return BinaryProtocol.createResult(BinaryProtocol.outcomeCode(outcome),
+                BinaryProtocol.choiceCode(yourChoice), BinaryProtocol.choiceCode(opponentChoice));
+        }
+
+        @Override
+        byte[] encodeOpponentLeft() {
+            return BinaryProtocol.createOpponentLeft();
+        }
+
+        @Override
+        byte[] encodeError(String message) {
+            return BinaryProtocol.createString(BinaryProtocol.ERROR, message);
+        }
+
+        @Override
+        byte[] leaderboard(String text) {
+            return BinaryProtocol.createLongString(BinaryProtocol.LEADERBOARD_LIST, text);
+        }
+    };
+
+    // Error messages that never change
+    static final String UNKNOWN_COMMAND = "Unknown command";
+    static final String INVALID_CHOICE = "Invalid choice. Use ROCK, PAPER, or SCISSORS";
+    static final String NO_OPPONENT = "No opponent paired yet";
+    static final String TURN_TIMEOUT = "Turn timed out";
+    static final String LOBBY_TIMEOUT = "No opponent found in time";
+    static final String UNKNOWN_RANKING = "Unknown leaderboard. Use WINS, WIN_RATE, or STREAK";
+    static final String NO_LEADERBOARD = "Leaderboard not available";
+    static final String SESSION_EXPIRED = "Session expired, CONNECT again";
+    static final String SERVER_BUSY = "Server busy, try again later";
+    static final String NO_MULTIPLEXING = "Multiplexing not available";
+    static final String SESSION_OPEN = "Session already open";
+
+    // Pre-encoded frames, filled in once all constants exist
+    private byte[] waitingForOpponent;
+    private byte[] waitingForChoice;
+    private byte[] opponentLeft;
+    private byte[] unknownCommand;
+    private byte[] invalidChoice;
+    private byte[] noOpponent;
+    private byte[][][] results;  // [your choice ordinal][opponent choice ordinal]
+
+    static {
+        for (WireFormat format : values()) {
+            format.encodeFixedFrames();
+        }
+    }
+
+    private void encodeFixedFrames() {
+        waitingForOpponent = encodeWaitingForOpponent();
+        waitingForChoice = encodeWaitingForChoice();
+        opponentLeft = encodeOpponentLeft();
+        unknownCommand = encodeError(UNKNOWN_COMMAND);
+        invalidChoice = encodeError(INVALID_CHOICE);
+        noOpponent = encodeError(NO_OPPONENT);
+
+        GameLogic.Choice[] choices = GameLogic.Choice.values();
+        results = new byte[choices.length][choices.length][];
+        for (GameLogic.Choice yours : choices) {
+            for (GameLogic.Choice theirs : choices) {
+                results[yours.ordinal()][theirs.ordinal()] =
+                    encodeResult(outcome(yours, theirs), yours.name(), theirs.name());
+            }
+        }
+    }
+
+    /**
+     * WIN, LOSE or DRAW for the player who chose yours
+     */
+    private static String outcome(GameLogic.Choice yours, GameLogic.Choice theirs) {
+        switch (GameLogic.determineWinner(yours, theirs)) {
+            case PLAYER1_WINS:
+                return Protocol.WIN;
+            case PLAYER2_WINS:
+                return Protocol.LOSE;
+            default:
+                return Protocol.DRAW;
+        }
+    }
+
+    /**
+     * WELCOME frame carrying the token the client can RESUME its session with
+     */
+    byte[] welcome(String name, String token) {
+        return encodeWelcome(name, token);
+    }
+
+    byte[] opponentFound(String opponentName) {
+        return encodeOpponentFound(opponentName);
+    }
+
+    byte[] waitingForOpponent() {
+        return waitingForOpponent;
+    }
+
+    byte[] waitingForChoice() {
+        return waitingForChoice;
+    }
+
+    byte[] opponentLeft() {
+        return opponentLeft;
+    }
+
+    /**
+     * RESULT frame from the receiver's point of view
+     */
+    byte[] result(GameLogic.Choice yourChoice, GameLogic.Choice opponentChoice) {
+        return results[yourChoice.ordinal()][opponentChoice.ordinal()];
+    }
+
+    /**
+     * ERROR frame, served from the cache for the fixed messages above
+     */
+    byte[] error(String message) {
+        switch (message) {
+            case UNKNOWN_COMMAND:
+                return unknownCommand;
+            case INVALID_CHOICE:
+                return invalidChoice;
+            case NO_OPPONENT:
+                return noOpponent;
+            default:
+                return encodeError(message);
+        }
+    }
+
+    abstract byte[] encodeWelcome(String name, String token);
+
+    abstract byte[] encodeWaitingForOpponent();
+
+    abstract byte[] encodeWaitingForChoice();
+
+    abstract byte[] encodeOpponentFound(String opponentName);
+
+    /**
+     * Example: encodeResult(Protocol.WIN, "ROCK", "SCISSORS")
+     */
+    abstract byte[] encodeResult(String outcome, String yourChoice, String opponentChoice);
+
+    abstract byte[] encodeOpponentLeft();
+
+    abstract byte[] encodeError(String message);
+
+    /**
+     * LEADERBOARD frame carrying "RANKING:entries" (see Protocol), encoded when a
+     * Leaderboard snapshot is published rather than per request
+     */
+    abstract byte[] leaderboard(String text);
+}
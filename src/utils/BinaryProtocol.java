@@ -0,0 +1,283 @@
+package utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * BinaryProtocol - Compact framing for bots and other headless clients
+ *
+ * A client opts in by sending "CONNECT_BINARY:name" instead of "CONNECT:name" as its first line.
+ * Every frame after that line, in both directions, is binary:
+ *
+ *   [type:1][payload]
+ *
+ * Payloads are either fixed-size codes or a length-prefixed UTF-8 string:
+ *   CHOICE          [choice]                      client -> server
+ *   DISCONNECT      (none)                        client -> server
+ *   LEADERBOARD     [ranking]                     client -> server
+ *   OPEN            [len][name]                   client -> server, multiplexed connections only
+ *   WELCOME         [len][token:name]             server -> client
+ *   WAITING         [reason]                      server -> client
+ *   OPPONENT_FOUND  [len][opponent name]          server -> client
+ *   RESULT          [outcome][yours][opponent's]  server -> client
+ *   ERROR           [len][message]                server -> client
+ *   OPPONENT_LEFT   (none)                        server -> client
+ *   LEADERBOARD_LIST [len:2][text]                server -> client, text as in the text protocol
+ *   CLOSED          (none)                        server -> client, multiplexed connections only
+ *
+ * A server without binary support answers CONNECT_BINARY with a text ERROR line,
+ * so clients can fall back to the text protocol.
+ *
+ * To resume a session after a dropped connection, a client sends the text line "RESUME:token"
+ * instead of CONNECT; everything after it is binary again if the session was.
+ *
+ * A client carrying many players on one connection (a bot farm, an edge proxy) sends the text
+ * line "CONNECT_MUX" instead. Every frame after it, in both directions, is one of the frames
+ * above prefixed with the session it belongs to, a number the client picks:
+ *
+ *   [session:4][type:1][payload]
+ *
+ * OPEN starts a session and does what CONNECT_BINARY does for a connection of its own; the
+ * session then pairs and plays on its own. The server sends CLOSED once a session has ended
+ * (after DISCONNECT, a timeout, or an OPEN it refused), and the number may then be reused.
+ * Sessions end with their connection and cannot be resumed.
+ */
+public class BinaryProtocol {
+    // Message types - client -> server
+    public static final byte CHOICE = 1;
+    public static final byte DISCONNECT = 2;
+    public static final byte LEADERBOARD = 3;
+    public static final byte OPEN = 4;
+
+    // Message types - server -> client
+    public static final byte WELCOME = 10;
+    public static final byte WAITING = 11;
+    public static final byte OPPONENT_FOUND = 12;
+    public static final byte RESULT = 13;
+    public static final byte ERROR = 14;
+    public static final byte OPPONENT_LEFT = 15;
+    public static final byte LEADERBOARD_LIST = 16;
+    public static final byte CLOSED = 17;
+
+    // Choices (same order as GameLogic.Choice)
+    public static final byte ROCK = 0;
+    public static final byte PAPER = 1;
+    public static final byte SCISSORS = 2;
+
+    // Outcomes, from the receiver's point of view
+    public static final byte WIN = 0;
+    public static final byte LOSE = 1;
+    public static final byte DRAW = 2;
+
+    // WAITING reasons
+    public static final byte WAITING_FOR_OPPONENT = 0;
+    public static final byte WAITING_FOR_CHOICE = 1;
+
+    // Leaderboard rankings
+    public static final byte BY_WINS = 0;
+    public static final byte BY_WIN_RATE = 1;
+    public static final byte BY_STREAK = 2;
+
+    // Size of the session id in front of every frame on a multiplexed connection
+    public static final int SESSION_BYTES = 4;
+
+    // Longest string a frame can carry (one length byte)
+    public static final int MAX_STRING_BYTES = 255;
+
+    // Longest text a LEADERBOARD_LIST frame can carry (two length bytes)
+    public static final int MAX_LONG_STRING_BYTES = 0xFFFF;
+
+    // payloadLength() results for frames that carry a length-prefixed string
+    private static final int STRING_PAYLOAD = -2;
+    private static final int LONG_STRING_PAYLOAD = -3;
+    private static final int UNKNOWN_TYPE = -1;
+
+    /**
+     * Payload size of a frame type: its fixed size, STRING_PAYLOAD, or UNKNOWN_TYPE
+     */
+    private static int payloadLength(byte type) {
+        switch (type) {
+            case CHOICE:
+            case LEADERBOARD:
+            case WAITING:
+                return 1;
+            case RESULT:
+                return 3;
+            case DISCONNECT:
+            case OPPONENT_LEFT:
+            case CLOSED:
+                return 0;
+            case OPEN:
+            case WELCOME:
+            case OPPONENT_FOUND:
+            case ERROR:
+                return STRING_PAYLOAD;
+            case LEADERBOARD_LIST:
+                return LONG_STRING_PAYLOAD;
+            default:
+                return UNKNOWN_TYPE;
+        }
+    }
+
+    /**
+     * Length of the frame starting at buffer[offset], looking at no more than available bytes
+     * @return the total frame length, 0 if the frame is not complete yet, or -1 for an unknown type
+     */
+    public static int frameLength(byte[] buffer, int offset, int available) {
+        if (available < 1) {
+            return 0;
+        }
+        int payload = payloadLength(buffer[offset]);
+        if (payload == UNKNOWN_TYPE) {
+            return -1;
+        }
+        if (payload == STRING_PAYLOAD) {
+            if (available < 2) {
+                return 0;
+            }
+            payload = 1 + (buffer[offset + 1] & 0xFF);
+        } else if (payload == LONG_STRING_PAYLOAD) {
+            if (available < 3) {
+                return 0;
+            }
+            payload = 2 + ((buffer[offset + 1] & 0xFF) << 8 | buffer[offset + 2] & 0xFF);
+        }
+        return available >= 1 + payload ? 1 + payload : 0;
+    }
+
+    /**
+     * Length of the multiplexed frame starting at buffer[offset], session id included
+     * @return the total length, 0 if the frame is not complete yet, or -1 for an unknown type
+     */
+    public static int muxFrameLength(byte[] buffer, int offset, int available) {
+        if (available <= SESSION_BYTES) {
+            return 0;
+        }
+        int length = frameLength(buffer, offset + SESSION_BYTES, available - SESSION_BYTES);
+        return length > 0 ? SESSION_BYTES + length : length;
+    }
+
+    /**
+     * Read the session id in front of a multiplexed frame
+     */
+    public static int readSession(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) << 24 | (buffer[offset + 1] & 0xFF) << 16
+            | (buffer[offset + 2] & 0xFF) << 8 | buffer[offset + 3] & 0xFF;
+    }
+
+    /**
+     * Prefix a frame with the session it belongs to, for a multiplexed connection
+     * Example: createMuxFrame(7, createChoice(ROCK))
+     */
+    public static byte[] createMuxFrame(int session, byte[] frame) {
+        byte[] muxed = new byte[SESSION_BYTES + frame.length];
+        muxed[0] = (byte) (session >>> 24);
+        muxed[1] = (byte) (session >>> 16);
+        muxed[2] = (byte) (session >>> 8);
+        muxed[3] = (byte) session;
+        System.arraycopy(frame, 0, muxed, SESSION_BYTES, frame.length);
+        return muxed;
+    }
+
+    /**
+     * Read the string of a WELCOME, OPPONENT_FOUND, ERROR or OPEN frame
+     */
+    public static String readString(byte[] frame, int offset) {
+        return new String(frame, offset + 2, frame[offset + 1] & 0xFF, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read the text of a LEADERBOARD_LIST frame
+     */
+    public static String readLongString(byte[] frame, int offset) {
+        int length = (frame[offset + 1] & 0xFF) << 8 | frame[offset + 2] & 0xFF;
+        return new String(frame, offset + 3, length, StandardCharsets.UTF_8);
+    }
+
+    public static byte[] createChoice(byte choice) {
+        return new byte[]{CHOICE, choice};
+    }
+
+    public static byte[] createDisconnect() {
+        return new byte[]{DISCONNECT};
+    }
+
+    public static byte[] createLeaderboard(byte ranking) {
+        return new byte[]{LEADERBOARD, ranking};
+    }
+
+    public static byte[] createWaiting(byte reason) {
+        return new byte[]{WAITING, reason};
+    }
+
+    public static byte[] createResult(byte outcome, byte yourChoice, byte opponentChoice) {
+        return new byte[]{RESULT, outcome, yourChoice, opponentChoice};
+    }
+
+    public static byte[] createOpponentLeft() {
+        return new byte[]{OPPONENT_LEFT};
+    }
+
+    public static byte[] createClosed() {
+        return new byte[]{CLOSED};
+    }
+
+    /**
+     * Create a frame carrying one string, cut to MAX_STRING_BYTES if needed
+     * Example: createString(WELCOME, "alice")
+     */
+    public static byte[] createString(byte type, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_STRING_BYTES);
+        byte[] frame = new byte[2 + length];
+        frame[0] = type;
+        frame[1] = (byte) length;
+        System.arraycopy(bytes, 0, frame, 2, length);
+        return frame;
+    }
+
+    /**
+     * Create a frame carrying a long text, cut to MAX_LONG_STRING_BYTES if needed
+     */
+    public static byte[] createLongString(byte type, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_LONG_STRING_BYTES);
+        byte[] frame = new byte[3 + length];
+        frame[0] = type;
+        frame[1] = (byte) (length >>> 8);
+        frame[2] = (byte) length;
+        System.arraycopy(bytes, 0, frame, 3, length);
+        return frame;
+    }
+
+    /**
+     * Map a text choice (ROCK/PAPER/SCISSORS) to its binary code, or -1
+     */
+    public static byte choiceCode(String choice) {
+        switch (choice) {
+            case Protocol.ROCK:
+                return ROCK;
+            case Protocol.PAPER:
+                return PAPER;
+            case Protocol.SCISSORS:
+                return SCISSORS;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Map a text outcome (WIN/LOSE/DRAW) to its binary code, or -1
+     */
+    public static byte outcomeCode(String outcome) {
+        switch (outcome) {
+            case Protocol.WIN:
+                return WIN;
+            case Protocol.LOSE:
+                return LOSE;
+            case Protocol.DRAW:
+                return DRAW;
+            default:
+                return -1;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram - Thread-safe, fixed-size histogram of durations in microseconds
+ *
+ * Values below 128us get a bucket each; above that every power of two is split into
+ * 64 buckets, so any recorded value is reported within about 1.5%. Recording is one
+ * atomic increment and never allocates, so many threads can share one histogram; the
+ * count and sum are striped so they do not become the contended cache line.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a duration given in nanoseconds, e.g. record(System.nanoTime() - start)
+     */
+    public void recordNanos(long nanos) {
+        record(TimeUnit.NANOSECONDS.toMicros(Math.max(nanos, 0)));
+    }
+
+    /**
+     * Record a duration given in microseconds
+     */
+    public void record(long micros) {
+        counts.incrementAndGet(bucketOf(micros));
+        count.increment();
+        sum.add(micros);
+        if (micros > max.get()) {
+            max.accumulateAndGet(micros, Math::max);
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Total of all recorded values in microseconds
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Smallest recorded value such that the given percentage of values are at or below it,
+     * e.g. getPercentile(99.9); 0 when nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = count.sum();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestValueIn(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * One-line summary, e.g. "n=2000 mean=412us p50=380us p90=610us p99=1.2ms p99.9=4.1ms max=6.0ms"
+     */
+    public String summary() {
+        return "n=" + getCount()
+            + " mean=" + format(Math.round(getMean()))
+            + " p50=" + format(getPercentile(50))
+            + " p90=" + format(getPercentile(90))
+            + " p99=" + format(getPercentile(99))
+            + " p99.9=" + format(getPercentile(99.9))
+            + " max=" + format(getMax());
+    }
+
+    private static String format(long micros) {
+        if (micros < 1000) {
+            return micros + "us";
+        }
+        if (micros < 1_000_000) {
+            return String.format("%.1fms", micros / 1000.0);
+        }
+        return String.format("%.2fs", micros / 1_000_000.0);
+    }
+
+    private static int bucketOf(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    private static long highestValueIn(int bucket) {
+        int shift = Math.max(0, bucket / SUB_BUCKETS - 1);
+        return ((long) (bucket - shift * SUB_BUCKETS + 1) << shift) - 1;
+    }
+}
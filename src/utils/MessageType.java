@@ -0,0 +1,116 @@
+package utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * MessageType - The message types of the text protocol, parsed without allocating
+ *
+ * parse() looks at the characters before the first DELIMITER of a line held in a byte array
+ * or CharSequence and returns the matching type, or UNKNOWN. The content of the line starts
+ * at contentStart(), so callers never need to split or substring the line.
+ */
+public enum MessageType {
+    // Client -> Server
+    CONNECT(Protocol.CONNECT),
+    CONNECT_BINARY(Protocol.CONNECT_BINARY),
+    CONNECT_MUX(Protocol.CONNECT_MUX),
+    CHOICE(Protocol.CHOICE),
+    DISCONNECT(Protocol.DISCONNECT),
+    RESUME(Protocol.RESUME),
+
+    // Both directions
+    LEADERBOARD(Protocol.LEADERBOARD),
+
+    // Server -> Client
+    WELCOME(Protocol.WELCOME),
+    WAITING(Protocol.WAITING),
+    OPPONENT_FOUND(Protocol.OPPONENT_FOUND),
+    RESULT(Protocol.RESULT),
+    ERROR(Protocol.ERROR),
+    OPPONENT_LEFT(Protocol.OPPONENT_LEFT),
+
+    // Anything else
+    UNKNOWN("");
+
+    private static final MessageType[] KNOWN = {
+        CONNECT, CONNECT_BINARY, CONNECT_MUX, CHOICE, DISCONNECT, RESUME, LEADERBOARD,
+        WELCOME, WAITING, OPPONENT_FOUND, RESULT, ERROR, OPPONENT_LEFT
+    };
+    private static final byte DELIMITER = (byte) Protocol.DELIMITER.charAt(0);
+
+    private final String wireName;
+    private final byte[] wireBytes;
+
+    MessageType(String wireName) {
+        this.wireName = wireName;
+        this.wireBytes = wireName.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * The type as written on the wire, e.g. "CHOICE"
+     */
+    public String wireName() {
+        return wireName;
+    }
+
+    /**
+     * Parse the type of the line in bytes[offset, offset + length)
+     * Example: "CHOICE:ROCK" returns CHOICE, "HELLO" returns UNKNOWN
+     */
+    public static MessageType parse(byte[] bytes, int offset, int length) {
+        int typeLength = 0;
+        while (typeLength < length && bytes[offset + typeLength] != DELIMITER) {
+            typeLength++;
+        }
+        for (MessageType type : KNOWN) {
+            if (type.wireBytes.length == typeLength && type.matches(bytes, offset)) {
+                return type;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Parse the type of a line held as characters
+     */
+    public static MessageType parse(CharSequence line) {
+        int length = line.length();
+        int typeLength = 0;
+        while (typeLength < length && line.charAt(typeLength) != DELIMITER) {
+            typeLength++;
+        }
+        for (MessageType type : KNOWN) {
+            if (type.wireBytes.length == typeLength && type.matches(line)) {
+                return type;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Index where the content of a line of this type starts: just after the delimiter,
+     * or the end of the line when there is no content
+     * Example: for "CHOICE:ROCK" at offset 0 this returns 7
+     */
+    public int contentStart(int offset, int length) {
+        return Math.min(offset + wireBytes.length + 1, offset + length);
+    }
+
+    private boolean matches(byte[] bytes, int offset) {
+        for (int i = 0; i < wireBytes.length; i++) {
+            if (bytes[offset + i] != wireBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(CharSequence line) {
+        for (int i = 0; i < wireBytes.length; i++) {
+            if (line.charAt(i) != wireBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
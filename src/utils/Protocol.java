@@ -7,11 +7,15 @@ package utils;
 public class Protocol {
     // Client -> Server messages
     public static final String CONNECT = "CONNECT";           // Client sends name to join
+    public static final String CONNECT_BINARY = "CONNECT_BINARY";  // Join and switch to BinaryProtocol frames
+    public static final String CONNECT_MUX = "CONNECT_MUX";   // Carry many sessions in BinaryProtocol mux frames
     public static final String CHOICE = "CHOICE";             // Client sends game choice (ROCK/PAPER/SCISSORS)
     public static final String DISCONNECT = "DISCONNECT";     // Client wants to leave
+    public static final String LEADERBOARD = "LEADERBOARD";   // Ask for (client) or carry (server) the top players
+    public static final String RESUME = "RESUME";             // Reconnect with the token from WELCOME, instead of CONNECT
 
     // Server -> Client messages
-    public static final String WELCOME = "WELCOME";           // Server confirms connection
+    public static final String WELCOME = "WELCOME";           // Server confirms connection: "WELCOME:<token>:Welcome alice!"
     public static final String WAITING = "WAITING";           // Waiting for opponent
     public static final String OPPONENT_FOUND = "OPPONENT_FOUND";  // Game can start
     public static final String RESULT = "RESULT";             // Game result
@@ -28,6 +32,14 @@ public class Protocol {
     public static final String LOSE = "LOSE";
     public static final String DRAW = "DRAW";
 
+    // Leaderboard rankings, e.g. "LEADERBOARD:STREAK"; the reply lists the top players as
+    // "LEADERBOARD:STREAK:wins,losses,draws,streak,name|wins,losses,draws,streak,name|..."
+    public static final String BY_WINS = "WINS";
+    public static final String BY_WIN_RATE = "WIN_RATE";
+    public static final String BY_STREAK = "STREAK";
+    public static final String ENTRY_DELIMITER = "|";
+    public static final String FIELD_DELIMITER = ",";
+
     // Message delimiters
     public static final String DELIMITER = ":";
 
@@ -42,12 +54,14 @@ public class Protocol {
     /**
      * Helper method to parse message type
      * Example: parseType("CHOICE:ROCK") returns "CHOICE"
+     * The server uses MessageType.parse(), which does not allocate at all
      */
     public static String parseType(String message) {
-        if (message == null || !message.contains(DELIMITER)) {
+        int delimiter = message != null ? message.indexOf(DELIMITER) : -1;
+        if (delimiter < 0) {
             return message;
         }
-        return message.split(DELIMITER)[0];
+        return message.substring(0, delimiter);
     }
 
     /**
@@ -55,10 +69,10 @@ public class Protocol {
      * Example: parseContent("CHOICE:ROCK") returns "ROCK"
      */
     public static String parseContent(String message) {
-        if (message == null || !message.contains(DELIMITER)) {
+        int delimiter = message != null ? message.indexOf(DELIMITER) : -1;
+        if (delimiter < 0) {
             return "";
         }
-        String[] parts = message.split(DELIMITER, 2);
-        return parts.length > 1 ? parts[1] : "";
+        return message.substring(delimiter + 1);
     }
 }